@@ -0,0 +1,127 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.swagger.swaggersocket.java.jsr356.client.impl.JSR356SwaggerSocketClientImpl;
+import io.swagger.swaggersocket.protocol.Encodings;
+import io.swagger.swaggersocket.protocol.Header;
+import io.swagger.swaggersocket.protocol.Response;
+import io.swagger.swaggersocket.protocol.ResponseMessage;
+import io.swagger.swaggersocket.protocol.StatusMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the Java client decoding the response messages it receives, text frames in JSON and binary frames in
+ * Smile, of <code>batchSize</code> responses whose bodies are <code>bodySize</code> characters long. The client is
+ * connected through the {@link LoopbackContainerProvider}. The responses match no pending request, so the futures of
+ * the requests are not part of what is measured.
+ * <p/>
+ * Run with <code>java -jar target/benchmarks.jar ClientDecodeBenchmark -prof gc</code>, which reports the bytes
+ * allocated per message as <code>gc.alloc.rate.norm</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ClientDecodeBenchmark {
+
+    @Param({"json", "smile"})
+    public String encoding;
+
+    @Param({"1", "16", "128"})
+    public int batchSize;
+
+    @Param({"64", "4096"})
+    public int bodySize;
+
+    private JSR356SwaggerSocketClientImpl client;
+    private String text;
+    private byte[] binary;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        boolean binaryFrames = Encodings.isBinary(encoding);
+        String identity = "01234567-89ab-4cde-8f01-23456789abcd";
+        ObjectMapper mapper = new ObjectMapper();
+        LoopbackContainerProvider.handshake(mapper.writeValueAsString(new StatusMessage.Builder()
+                .status(new StatusMessage.Status(200, "OK"))
+                .identity(identity)
+                .encoding(binaryFrames ? encoding : null)
+                .build()));
+        client = new JSR356SwaggerSocketClientImpl();
+        if (binaryFrames) {
+            client.encodings(encoding);
+        }
+        client.open("ws://127.0.0.1:8080/swaggersocket");
+
+        String body = ProtocolCodecBenchmark.body(bodySize);
+        List<Response> responses = new ArrayList<Response>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            responses.add(new Response.Builder()
+                    .uuid(String.valueOf(i))
+                    .path("/pets/" + i)
+                    .status(200, "OK")
+                    .header(new Header("Content-Type", "application/json"))
+                    .body(body)
+                    .last(true)
+                    .build());
+        }
+        ResponseMessage message = new ResponseMessage();
+        message.setIdentity(identity);
+        message.setResponses(responses);
+        if (binaryFrames) {
+            binary = Encodings.binaryMapper(encoding).writeValueAsBytes(message);
+        } else {
+            text = mapper.writeValueAsString(message);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+    }
+
+    @Benchmark
+    public void onMessage() throws IOException {
+        if (binary != null) {
+            client.onMessage(binary);
+        } else {
+            client.onMessage(text);
+        }
+    }
+}
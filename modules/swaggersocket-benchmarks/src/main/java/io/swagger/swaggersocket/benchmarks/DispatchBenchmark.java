@@ -0,0 +1,201 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.swaggersocket.protocol.Handshake;
+import io.swagger.swaggersocket.protocol.HandshakeMessage;
+import io.swagger.swaggersocket.protocol.Request;
+import io.swagger.swaggersocket.protocol.RequestMessage;
+import io.swagger.swaggersocket.server.DispatchExecutors;
+import io.swagger.swaggersocket.server.SwaggerSocketProtocolInterceptor;
+
+import org.atmosphere.cpr.Action;
+import org.atmosphere.cpr.AtmosphereFramework;
+import org.atmosphere.cpr.AtmosphereInterceptorWriter;
+import org.atmosphere.cpr.AtmosphereRequest;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.AtmosphereResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the dispatch modes of the {@link SwaggerSocketProtocolInterceptor} when a WebSocket connection sends
+ * {@value #REQUESTS} requests in messages of <code>batchSize</code>, and every one of them blocks the way a resource
+ * waiting on JDBC or on a downstream HTTP call does. The messages go through {@link
+ * SwaggerSocketProtocolInterceptor#inspect}, so every request is translated and forked with its dispatch context, and
+ * at most <code>maxInFlight</code> of them run at once, 0 leaving them unbounded. Only the resource is left out: the
+ * framework holds every request until as many as can run at once have arrived, all {@value #REQUESTS} of them when
+ * nothing bounds the dispatch, then blocks for <code>blockMillis</code> instead of dispatching. The pool of the
+ * <code>parallel</code> mode has a thread per request by default so that it holds them all too; with fewer
+ * <code>threads</code> only that many are held. The <code>serial</code> mode is left out, it runs the requests one
+ * after the other and so takes {@value #REQUESTS} times <code>blockMillis</code> whatever the executor.
+ * <p/>
+ * Run with <code>java -jar target/benchmarks.jar DispatchBenchmark</code>; the <code>virtual</code> mode only uses
+ * virtual threads on Java 21 and later.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DispatchBenchmark {
+
+    static final int REQUESTS = 10000;
+
+    @Param({"parallel", "virtual"})
+    public String dispatch;
+
+    @Param({"10000"})
+    public int threads;
+
+    @Param({"5"})
+    public long blockMillis;
+
+    @Param({"100"})
+    public int batchSize;
+
+    @Param({"0", "32"})
+    public int maxInFlight;
+
+    private ExecutorService executor;
+    private SwaggerSocketProtocolInterceptor interceptor;
+    private AtmosphereRequest request;
+    private AtmosphereResource webSocket;
+    private String message;
+    private volatile CountDownLatch arrived;
+    private volatile CountDownLatch done;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        executor = "virtual".equals(dispatch) ? DispatchExecutors.virtual() : DispatchExecutors.parallel(threads);
+        interceptor = new SwaggerSocketProtocolInterceptor().executor(executor).maxInFlight(maxInFlight).maxQueued(REQUESTS);
+
+        AtmosphereFramework framework = new AtmosphereFramework() {
+            @Override
+            public Action doCometSupport(AtmosphereRequest req, AtmosphereResponse res) {
+                CountDownLatch held = arrived;
+                held.countDown();
+                try {
+                    held.await();
+                    Thread.sleep(blockMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+                return Action.CANCELLED;
+            }
+        };
+        request = new AtmosphereRequest.Builder()
+                .requestURL("http://127.0.0.1:8080/swaggersocket")
+                .requestURI("/swaggersocket")
+                .method("POST")
+                .headers(Collections.singletonMap("SwaggerSocket", "1.0"))
+                .build();
+        // The frames written to the connection are dropped.
+        AtmosphereResponse response = new AtmosphereResponse.Builder().request(request)
+                .asyncIOWriter(new AtmosphereInterceptorWriter() {
+                    @Override
+                    protected void writeReady(AtmosphereResponse response, byte[] data) {
+                    }
+                }).build();
+        webSocket = webSocket(request, response, framework);
+
+        ObjectMapper mapper = new ObjectMapper();
+        HandshakeMessage handshake = new HandshakeMessage();
+        handshake.setHandshake(new Handshake.Builder().path("/swaggersocket").method("GET").build());
+        request.body(mapper.writeValueAsString(handshake));
+        interceptor.inspect(webSocket);
+
+        Request[] requests = new Request[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            requests[i] = new Request.Builder().uuid(String.valueOf(i)).path("/pets/" + i).method("GET").build();
+        }
+        String identity = (String) request.getAttribute("swaggersocket.identity");
+        message = mapper.writeValueAsString(new RequestMessage.Builder().identity(identity).requests(requests).build());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void blockingRequests() throws InterruptedException {
+        int held = maxInFlight > 0 ? Math.min(maxInFlight, REQUESTS) : REQUESTS;
+        if (!"virtual".equals(dispatch)) {
+            held = Math.min(held, threads);
+        }
+        arrived = new CountDownLatch(held);
+        done = new CountDownLatch(REQUESTS);
+        for (int i = 0; i < REQUESTS / batchSize; i++) {
+            request.body(message);
+            interceptor.inspect(webSocket);
+        }
+        done.await();
+    }
+
+    /**
+     * The {@link AtmosphereResource} of a WebSocket, whose messages the given framework dispatches.
+     */
+    private static AtmosphereResource webSocket(final AtmosphereRequest request, final AtmosphereResponse response,
+                                                final AtmosphereFramework framework) {
+        return Stubs.stub(AtmosphereResource.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if ("transport".equals(name)) {
+                    return AtmosphereResource.TRANSPORT.WEBSOCKET;
+                } else if ("uuid".equals(name)) {
+                    return "benchmark";
+                } else if ("getRequest".equals(name)) {
+                    return request;
+                } else if ("getResponse".equals(name)) {
+                    return response;
+                } else if ("getAtmosphereConfig".equals(name)) {
+                    return framework.getAtmosphereConfig();
+                } else if (method.getReturnType().isInstance(proxy)) {
+                    return proxy;
+                }
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.benchmarks;
+
+import io.swagger.swaggersocket.java.jsr356.client.impl.JSR356SwaggerSocketClientImpl;
+
+import javax.websocket.ContainerProvider;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import javax.websocket.WebSocketContainer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+
+/**
+ * The {@link ContainerProvider} of the benchmarks, registered as a service, whose container connects the Java client
+ * to nothing: its session discards every message written to it, and the handshake of the client is answered with the
+ * status message given to {@link #handshake(String)}.
+ */
+public class LoopbackContainerProvider extends ContainerProvider {
+
+    private static volatile String handshake;
+
+    /**
+     * The status message answering the next handshake.
+     */
+    static void handshake(String status) {
+        handshake = status;
+    }
+
+    @Override
+    protected WebSocketContainer getContainer() {
+        return Stubs.stub(WebSocketContainer.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("connectToServer".equals(method.getName()) && args[0] instanceof JSR356SwaggerSocketClientImpl) {
+                    JSR356SwaggerSocketClientImpl client = (JSR356SwaggerSocketClientImpl) args[0];
+                    Session session = session();
+                    client.onOpen(session);
+                    client.onMessage(handshake);
+                    return session;
+                }
+                return null;
+            }
+        });
+    }
+
+    private static Session session() {
+        final RemoteEndpoint.Async remote = Stubs.stub(RemoteEndpoint.Async.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (args != null && args[args.length - 1] instanceof SendHandler) {
+                    ((SendHandler) args[args.length - 1]).onResult(new SendResult());
+                }
+                return null;
+            }
+        });
+        return Stubs.stub(Session.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getAsyncRemote".equals(method.getName())) {
+                    return remote;
+                } else if ("isOpen".equals(method.getName())) {
+                    return Boolean.TRUE;
+                }
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.benchmarks;
+
+import io.swagger.swaggersocket.protocol.Encodings;
+import io.swagger.swaggersocket.protocol.Request;
+import io.swagger.swaggersocket.server.SwaggerSocketProtocolInterceptor;
+
+import org.atmosphere.cpr.AsyncIOInterceptor;
+import org.atmosphere.cpr.AtmosphereRequest;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.AtmosphereResponse;
+import org.atmosphere.cpr.FrameworkConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the {@link AsyncIOInterceptor} of the {@link SwaggerSocketProtocolInterceptor} turning the body a
+ * resource writes into the response frame of its WebSocket connection, for bodies of <code>bodySize</code> bytes in
+ * each encoding. The connection and the request being answered are given by the attributes the interceptor binds to
+ * them during the handshake and the dispatch.
+ * <p/>
+ * Run with <code>java -jar target/benchmarks.jar TransformPayloadBenchmark -prof gc</code>, which reports the bytes
+ * allocated per frame as <code>gc.alloc.rate.norm</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TransformPayloadBenchmark {
+
+    @Param({"json", "smile"})
+    public String encoding;
+
+    @Param({"64", "4096"})
+    public int bodySize;
+
+    private AsyncIOInterceptor interceptor;
+    private AtmosphereResponse response;
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws Exception {
+        // The interceptor of the writers is not exposed, it is only added to the connections it handles.
+        Field f = SwaggerSocketProtocolInterceptor.class.getDeclaredField("interceptor");
+        f.setAccessible(true);
+        interceptor = (AsyncIOInterceptor) f.get(new SwaggerSocketProtocolInterceptor());
+
+        AtmosphereRequest request = new AtmosphereRequest.Builder()
+                .requestURL("http://127.0.0.1:8080/swaggersocket/pets/42")
+                .requestURI("/swaggersocket/pets/42")
+                .build();
+        request.setAttribute(FrameworkConfig.ATMOSPHERE_RESOURCE, webSocket());
+        request.setAttribute("swaggersocket.identity", "01234567-89ab-4cde-8f01-23456789abcd");
+        request.setAttribute("swaggerSocketRequest", new Request.Builder().uuid("42").path("/pets/42").method("GET").build());
+        if (Encodings.isBinary(encoding)) {
+            request.setAttribute("swaggersocket.encoding", encoding);
+        }
+        response = new AtmosphereResponse.Builder().request(request).build();
+        response.setContentType("application/json");
+        body = ProtocolCodecBenchmark.body(bodySize).getBytes(Charset.forName("UTF-8"));
+    }
+
+    @Benchmark
+    public byte[] transformPayload() throws IOException {
+        return interceptor.transformPayload(response, body, body);
+    }
+
+    /**
+     * An {@link AtmosphereResource} of the WebSocket transport, which is all the interceptor asks of it here.
+     */
+    private static AtmosphereResource webSocket() {
+        return Stubs.stub(AtmosphereResource.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("transport".equals(method.getName())) {
+                    return AtmosphereResource.TRANSPORT.WEBSOCKET;
+                } else if ("uuid".equals(method.getName())) {
+                    return "benchmark";
+                }
+                return null;
+            }
+        });
+    }
+}
@@ -18,6 +18,7 @@ package io.swagger.swaggersocket.java.jsr356.client;
 import io.swagger.swaggersocket.protocol.Request;
 import io.swagger.swaggersocket.protocol.Response;
 
+import java.io.InputStream;
 import java.util.List;
 
 public interface JSR356SwaggerSocketClient {
@@ -36,6 +37,25 @@ public interface JSR356SwaggerSocketClient {
 
     <T> T send(Request request, Class<T> resultClass);
 
+    ResponseFuture<Response> sendAsync(Request request);
+
+    List<ResponseFuture<Response>> sendAsync(List<Request> requests);
+
+    <T> List<ResponseFuture<T>> sendAsync(List<Request> requests, Class<T> resultClass);
+
+    <T> ResponseFuture<T> sendAsync(Request request, Class<T> resultClass);
+
+    /**
+     * Send the request and hand its response to the listener chunk by chunk, as the server streams it.
+     */
+    ResponseFuture<Response> stream(Request request, ResponseChunkListener listener);
+
+    /**
+     * Send the request and read the body of its response as the server streams it. Closing the stream before its
+     * end cancels the request.
+     */
+    InputStream stream(Request request);
+
     void close();
 
 }
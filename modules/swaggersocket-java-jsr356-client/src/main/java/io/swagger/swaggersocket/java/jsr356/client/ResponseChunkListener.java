@@ -0,0 +1,40 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.java.jsr356.client;
+
+import io.swagger.swaggersocket.protocol.Response;
+
+/**
+ * Receives a streamed response chunk by chunk, as the chunks arrive. The first chunk carries the status, the path and
+ * the headers of the response, the following ones only their part of its body. A server which doesn't chunk
+ * responses sends a single chunk.
+ */
+public interface ResponseChunkListener {
+
+    void chunk(Response chunk);
+
+    /**
+     * Invoked once after the last chunk.
+     */
+    void completed();
+
+    /**
+     * Invoked once if the response can't be received, with a {@link java.util.concurrent.CancellationException} if
+     * the request has been cancelled.
+     */
+    void failed(Throwable cause);
+
+}
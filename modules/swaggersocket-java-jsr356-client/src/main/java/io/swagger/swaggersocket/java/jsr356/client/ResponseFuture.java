@@ -0,0 +1,133 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.java.jsr356.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending result of an asynchronous Swagger Socket request. Callbacks are invoked on the thread completing the
+ * future, usually the WebSocket thread which received the response, or immediately when it already is done.
+ */
+public class ResponseFuture<T> implements Future<T> {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private List<ResponseCallback<? super T>> callbacks = new ArrayList<ResponseCallback<? super T>>();
+    private T result;
+    private Throwable failure;
+    private boolean cancelled;
+
+    public boolean complete(final T result) {
+        return finish(result, null, false);
+    }
+
+    public boolean fail(final Throwable cause) {
+        return finish(null, cause, false);
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        return finish(null, new CancellationException(), true);
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        done.await();
+        return report();
+    }
+
+    @Override
+    public T get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return report();
+    }
+
+    /**
+     * Register a callback, which is invoked right away if the future already is done.
+     */
+    public ResponseFuture<T> onComplete(final ResponseCallback<? super T> callback) {
+        synchronized (this) {
+            if (callbacks != null) {
+                callbacks.add(callback);
+                return this;
+            }
+        }
+        notify(callback);
+        return this;
+    }
+
+    private boolean finish(final T result, final Throwable failure, final boolean cancelled) {
+        final List<ResponseCallback<? super T>> toNotify;
+        synchronized (this) {
+            if (callbacks == null) {
+                return false;
+            }
+            this.result = result;
+            this.failure = failure;
+            this.cancelled = cancelled;
+            toNotify = callbacks;
+            callbacks = null;
+        }
+        done.countDown();
+        for (final ResponseCallback<? super T> callback : toNotify) {
+            notify(callback);
+        }
+        return true;
+    }
+
+    private void notify(final ResponseCallback<? super T> callback) {
+        final T result;
+        final Throwable failure;
+        synchronized (this) {
+            result = this.result;
+            failure = this.failure;
+        }
+        if (failure != null) {
+            callback.failed(failure);
+        } else {
+            callback.completed(result);
+        }
+    }
+
+    private synchronized T report() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return result;
+    }
+
+}
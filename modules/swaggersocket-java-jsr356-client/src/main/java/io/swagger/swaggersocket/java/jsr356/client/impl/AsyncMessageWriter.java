@@ -0,0 +1,116 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.java.jsr356.client.impl;
+
+import io.swagger.swaggersocket.java.jsr356.client.ResponseFuture;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes messages through the asynchronous remote of a session on behalf of any number of threads. A session accepts
+ * a single asynchronous write at a time, so messages are queued and the completion of a write starts the next one.
+ */
+final class AsyncMessageWriter {
+
+    private final RemoteEndpoint.Async remote;
+    private final Queue<Pending> queue = new ConcurrentLinkedQueue<Pending>();
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    AsyncMessageWriter(final RemoteEndpoint.Async remote) {
+        this.remote = remote;
+    }
+
+    /**
+     * Queue a text or binary message.
+     *
+     * @return a future completed once the message has been written
+     */
+    ResponseFuture<Void> write(final Object message) {
+        final Pending pending = new Pending(message);
+        queue.offer(pending);
+        if (writing.compareAndSet(false, true)) {
+            drain();
+        }
+        return pending.written;
+    }
+
+    private void drain() {
+        for (;;) {
+            final Pending pending = queue.poll();
+            if (pending == null) {
+                writing.set(false);
+                // Another thread may have queued a message after the poll but before the flag was cleared
+                if (queue.isEmpty() || !writing.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            if (!send(pending)) {
+                // The handler resumes draining once the write completes
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if the write completed before returning, so the caller goes on with the next message
+     */
+    private boolean send(final Pending pending) {
+        final AtomicInteger state = new AtomicInteger();
+        final SendHandler handler = new SendHandler() {
+            @Override
+            public void onResult(final SendResult result) {
+                if (result.isOK()) {
+                    pending.written.complete(null);
+                } else {
+                    pending.written.fail(result.getException());
+                }
+                if (!state.compareAndSet(0, 1)) {
+                    drain();
+                }
+            }
+        };
+
+        try {
+            if (pending.message instanceof ByteBuffer) {
+                remote.sendBinary((ByteBuffer) pending.message, handler);
+            } else {
+                remote.sendText((String) pending.message, handler);
+            }
+        } catch (final RuntimeException e) {
+            pending.written.fail(e);
+            return true;
+        }
+        return !state.compareAndSet(0, 2);
+    }
+
+    private static final class Pending {
+        private final Object message;
+        private final ResponseFuture<Void> written = new ResponseFuture<Void>();
+
+        private Pending(final Object message) {
+            this.message = message;
+        }
+    }
+
+}
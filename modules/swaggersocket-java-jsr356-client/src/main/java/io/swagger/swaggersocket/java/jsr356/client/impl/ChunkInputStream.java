@@ -0,0 +1,254 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.java.jsr356.client.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.swaggersocket.java.jsr356.client.ResponseChunkListener;
+import io.swagger.swaggersocket.java.jsr356.client.ResponseFuture;
+import io.swagger.swaggersocket.protocol.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The body of a streamed response, readable as its chunks arrive. The credit of a chunk is granted back once it has
+ * been read, or once the stream is closed or failed.
+ * <p/>
+ * At most maxChunks chunks are kept unread. A chunk arriving past them waits for the reader, holding up the messages
+ * of the connection behind it, which is how a reader slower than the server pushes back on a connection whose
+ * responses aren't paced by credit.
+ */
+final class ChunkInputStream extends InputStream implements ResponseChunkListener {
+
+    private static final Chunk END = new Chunk(new byte[0], null);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final int MAX_CHUNKS = 16;
+
+    private final BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<Chunk>();
+    // The end of the stream always gets in, so only the chunks take room.
+    private final Semaphore room;
+    private final ObjectMapper objectMapper;
+    private volatile boolean closed;
+    private volatile Throwable failure;
+    private volatile ResponseFuture<Response> future;
+    private boolean started;
+    private Chunk current;
+    private int position;
+
+    ChunkInputStream(final ObjectMapper objectMapper) {
+        this(objectMapper, MAX_CHUNKS);
+    }
+
+    ChunkInputStream(final ObjectMapper objectMapper, final int maxChunks) {
+        this.objectMapper = objectMapper;
+        this.room = new Semaphore(maxChunks);
+    }
+
+    void future(final ResponseFuture<Response> future) {
+        this.future = future;
+    }
+
+    @Override
+    public void chunk(final Response chunk) {
+        chunk(chunk, null);
+    }
+
+    /**
+     * Queue the body of the chunk, and run consumed once it has been read. A chunk carrying a status after the first
+     * one is the failure the server ended the response with instead of its remaining chunks.
+     */
+    void chunk(final Response chunk, final Runnable consumed) {
+        if(started && chunk.getStatusCode() != 0) {
+            release(consumed);
+            failed(new IOException("Swagger Socket Response Failed: " + chunk.getStatusCode() + " " + chunk.getReasonPhrase()));
+            return;
+        }
+        started = true;
+        try {
+            final byte[] body = bytes(chunk.getMessageBody());
+            if(body.length > 0 && !closed) {
+                room.acquire();
+                if(closed) {
+                    room.release();
+                    release(consumed);
+                }
+                else {
+                    chunks.add(new Chunk(body, consumed));
+                    if(closed) {
+                        drop();
+                    }
+                }
+            }
+            else {
+                release(consumed);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            release(consumed);
+            failed(new IOException("Interrupted Queueing Swagger Socket Response"));
+        } catch (final IOException e) {
+            release(consumed);
+            failed(e);
+        }
+    }
+
+    @Override
+    public void completed() {
+        chunks.add(END);
+    }
+
+    /**
+     * The queued chunks can still be read, but no more are coming so their credit is granted back at once.
+     */
+    @Override
+    public void failed(final Throwable cause) {
+        failure = cause;
+        releaseAll();
+        chunks.add(END);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if(len == 0) {
+            return 0;
+        }
+        if(closed) {
+            throw new IOException("Swagger Socket Response Stream Closed");
+        }
+        if(current == null || position == current.body.length) {
+            if(current == END) {
+                return end();
+            }
+            try {
+                current = chunks.take();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted Reading Swagger Socket Response");
+            }
+            position = 0;
+            if(current == END) {
+                return end();
+            }
+            room.release();
+        }
+
+        final int n = Math.min(len, current.body.length - position);
+        System.arraycopy(current.body, position, b, off, n);
+        position += n;
+        if(position == current.body.length) {
+            current.release();
+        }
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current == null || current == END ? 0 : current.body.length - position;
+    }
+
+    /**
+     * Cancel the request if the response is not over yet, and drop the chunks left unread, granting back their credit
+     * and the room a chunk waiting for the reader needs.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        final ResponseFuture<Response> future = this.future;
+        if(future != null) {
+            future.cancel(false);
+        }
+        drop();
+    }
+
+    private void drop() {
+        for(Chunk chunk; (chunk = chunks.poll()) != null; ) {
+            if(chunk != END) {
+                chunk.release();
+                room.release();
+            }
+        }
+    }
+
+    private void releaseAll() {
+        for(final Chunk chunk : chunks) {
+            chunk.release();
+        }
+    }
+
+    private static void release(final Runnable consumed) {
+        if(consumed != null) {
+            consumed.run();
+        }
+    }
+
+    /**
+     * Binary encodings carry the bodies as bytes, and servers embedding raw JSON as JSON values.
+     */
+    private byte[] bytes(final Object messageBody) throws IOException {
+        if(messageBody == null) {
+            return END.body;
+        }
+        else if(messageBody instanceof byte[]) {
+            return (byte[]) messageBody;
+        }
+        else if(messageBody instanceof String) {
+            return ((String) messageBody).getBytes(UTF_8);
+        }
+        return objectMapper.writeValueAsBytes(messageBody);
+    }
+
+    private int end() throws IOException {
+        final Throwable failure = this.failure;
+        if(failure != null) {
+            throw failure instanceof IOException ? (IOException) failure
+                    : new IOException("Error Receiving Swagger Socket Response", failure);
+        }
+        return -1;
+    }
+
+    /**
+     * A queued body, whose credit is granted back once.
+     */
+    private static final class Chunk {
+        private final byte[] body;
+        private Runnable consumed;
+
+        private Chunk(final byte[] body, final Runnable consumed) {
+            this.body = body;
+            this.consumed = consumed;
+        }
+
+        private void release() {
+            final Runnable consumed;
+            synchronized (this) {
+                consumed = this.consumed;
+                this.consumed = null;
+            }
+            ChunkInputStream.release(consumed);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.java.jsr356.client.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks once their delay expired, with the precision of a tick. Timeouts are hashed by their expiration tick
+ * into the buckets of a wheel, so scheduling and cancelling are O(1) whatever the number of pending timeouts, and a
+ * single daemon thread only visits the bucket of the current tick. Cancelled timeouts are dropped as they are met.
+ */
+final class HashedTimerWheel {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HashedTimerWheel.class);
+
+    private final long tickNanos;
+    private final LinkedList<Timeout>[] wheel;
+    private final int mask;
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<Timeout>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final String name;
+    private long startTime;
+    private long tick;
+
+    @SuppressWarnings("unchecked")
+    HashedTimerWheel(final String name, final long tickDuration, final TimeUnit unit, final int ticksPerWheel) {
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.name = name;
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel = new LinkedList[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new LinkedList<Timeout>();
+        }
+        this.mask = size - 1;
+    }
+
+    Timeout schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        start();
+        final Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(delay));
+        scheduled.offer(timeout);
+        return timeout;
+    }
+
+    private void start() {
+        if (started.compareAndSet(false, true)) {
+            startTime = System.nanoTime();
+            final Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            }, name);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    private void work() {
+        for (;;) {
+            final long sleep = startTime + (tick + 1) * tickNanos - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (final InterruptedException e) {
+                    return;
+                }
+            }
+            transferScheduled();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferScheduled() {
+        for (Timeout timeout = scheduled.poll(); timeout != null; timeout = scheduled.poll()) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            // A timeout expiring before the current tick is run with it
+            final long ticks = Math.max((timeout.deadline - startTime) / tickNanos, tick);
+            timeout.rounds = (ticks - tick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expire(final LinkedList<Timeout> bucket) {
+        for (final Iterator<Timeout> it = bucket.iterator(); it.hasNext(); ) {
+            final Timeout timeout = it.next();
+            if (timeout.cancelled) {
+                it.remove();
+            } else if (timeout.rounds > 0) {
+                timeout.rounds--;
+            } else {
+                it.remove();
+                try {
+                    timeout.task.run();
+                } catch (final Throwable t) {
+                    LOG.warn("Timeout task failed", t);
+                }
+            }
+        }
+    }
+
+    static final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long rounds;
+        private volatile boolean cancelled;
+
+        private Timeout(final Runnable task, final long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+    }
+
+}
@@ -16,24 +16,35 @@
 package io.swagger.swaggersocket.java.jsr356.client.impl;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import io.swagger.swaggersocket.java.jsr356.client.JSR356SwaggerSocketClient;
+import io.swagger.swaggersocket.java.jsr356.client.ResponseCallback;
+import io.swagger.swaggersocket.java.jsr356.client.ResponseChunkListener;
+import io.swagger.swaggersocket.java.jsr356.client.ResponseFuture;
 import io.swagger.swaggersocket.java.jsr356.client.exception.JSR356SwaggerSocketException;
 import io.swagger.swaggersocket.protocol.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.websocket.*;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
 @ClientEndpoint
@@ -41,35 +52,141 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
 
     private static final String DELIMITER_PATTERN = "^\\d+<->";
     private static final Logger LOG = LoggerFactory.getLogger(JSR356SwaggerSocketClientImpl.class);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // Times requests out and flushes the request batches of every client, whose windows are as short as a tick.
+    private static final HashedTimerWheel TIMER = new HashedTimerWheel("SwaggerSocket-Timer", 1, TimeUnit.MILLISECONDS, 512);
+    private static final RequestBatcher.Timer BATCH_TIMER = new RequestBatcher.Timer() {
+        @Override
+        public void schedule(final Runnable task, final long delay, final TimeUnit unit) {
+            TIMER.schedule(task, delay, unit);
+        }
+    };
+    private static final Runnable UNPACED = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
 
-    private final Map<String, FutureCountDownLatch> messages;
+    private final Map<String, ResponseFuture<Response>> messages;
+    private final Map<String, ResponseChunkListener> streams;
+    private final Map<String, Partial> partials;
     private final ObjectMapper objectMapper;
     private final ReentrantLock reentrantLock;
     private final WebSocketContainer webSocketContainer;
 
     private CountDownLatch connectionOpenLatch = null;
 
+    private List<String> encodings = null;
+    private long timeoutMillis = 0;
+    private boolean sendDeadlines = false;
+    private ObjectMapper binaryMapper = null;
+    private Credit credit = null;
+    private boolean paced = false;
+    private int consumedResponses = 0;
+    private long consumedBytes = 0;
+    private boolean chunks = false;
+    private boolean chunked = false;
+    private boolean rawJson = false;
+
     private Handshake handshake = null;
+    private Object handshakeTraced = null;
     private String identity = null;
     private Session session = null;
+    private volatile AsyncMessageWriter writer = null;
+    private volatile RequestBatcher batcher = null;
 
     private boolean isConnected;
 
     public JSR356SwaggerSocketClientImpl() {
-        messages = new ConcurrentHashMap<String, FutureCountDownLatch>();
+        messages = new ConcurrentHashMap<String, ResponseFuture<Response>>();
+        streams = new ConcurrentHashMap<String, ResponseChunkListener>();
+        partials = new ConcurrentHashMap<String, Partial>();
         objectMapper = new ObjectMapper();
         objectMapper.getDeserializationConfig().without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
         objectMapper.getSerializationConfig().without(SerializationFeature.FAIL_ON_EMPTY_BEANS);
         objectMapper.getSerializationConfig().withSerializationInclusion(JsonInclude.Include.NON_NULL);
         objectMapper.configure(SerializationFeature.WRITE_DATE_KEYS_AS_TIMESTAMPS, false);
+        objectMapper.addMixInAnnotations(ProtocolBase.class, MessageBodyDeserializer.MixIn.class);
         reentrantLock = new ReentrantLock();
         webSocketContainer = ContainerProvider.getWebSocketContainer();
     }
 
+    /**
+     * Offer the given encodings to the server, in order of preference. A binary encoding, such as
+     * {@link Encodings#SMILE}, is used over binary frames if the server accepts it, JSON text otherwise.
+     */
+    public JSR356SwaggerSocketClientImpl encodings(final String... encodings) {
+        this.encodings = Arrays.asList(encodings);
+        return this;
+    }
+
+    /**
+     * Fail the requests that were not answered within the given time, unless they carry their own
+     * {@link Request#DEADLINE_HEADER}. Zero, the default, waits forever.
+     */
+    public JSR356SwaggerSocketClientImpl timeout(final long timeout, final TimeUnit unit) {
+        this.timeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * Send the default timeout to the server in the {@link Request#DEADLINE_HEADER} of every request, so requests
+     * which expired before being dispatched are dropped.
+     */
+    public JSR356SwaggerSocketClientImpl sendDeadlines(final boolean sendDeadlines) {
+        this.sendDeadlines = sendDeadlines;
+        return this;
+    }
+
+    /**
+     * Coalesce the requests sent within the given window into a single message, which is sent as soon as it holds
+     * maxRequests requests or the window opened by its first request elapsed, with the millisecond precision of the
+     * timer which times requests out. Every request still completes its own future. Batching is off by default.
+     */
+    public JSR356SwaggerSocketClientImpl batch(final long window, final TimeUnit unit, final int maxRequests) {
+        batcher = new RequestBatcher(new RequestBatcher.Sink() {
+            @Override
+            public void send(final Request[] requests) {
+                write(requests);
+            }
+        }, BATCH_TIMER, window, unit, maxRequests);
+        return this;
+    }
+
+    /**
+     * Let the server send at most the given number of response messages and bytes ahead of what the listeners
+     * consumed. Credit is granted back as responses are handled, by half of the window at a time. A zero count
+     * leaves that dimension unbounded. Servers which don't pace responses ignore it.
+     */
+    public JSR356SwaggerSocketClientImpl credit(final int responses, final long bytes) {
+        this.credit = new Credit(null, responses, bytes);
+        return this;
+    }
+
+    /**
+     * Ask the server to send large responses as a sequence of chunks. Streamed requests then receive the body of their
+     * response as it is written, while the other requests complete once its last chunk arrived. Off by default.
+     */
+    public JSR356SwaggerSocketClientImpl chunks(final boolean chunks) {
+        this.chunks = chunks;
+        return this;
+    }
+
+    /**
+     * Ask the server to embed <code>application/json</code> response bodies into the response messages as JSON values
+     * rather than as escaped strings. Those bodies are bound to the requested type from their tokens. Off by default.
+     */
+    public JSR356SwaggerSocketClientImpl rawJson(final boolean rawJson) {
+        this.rawJson = rawJson;
+        return this;
+    }
+
     @OnOpen
     public void onOpen(final Session session) {
         LOG.debug("JSR356 Swagger Socket Session: Connection Established, Performing Handshake...");
         this.session = session;
+        session.setMaxBinaryMessageBufferSize(session.getMaxTextMessageBufferSize());
+        writer = new AsyncMessageWriter(session.getAsyncRemote());
         performHandshake();
         LOG.debug("JSR356 Swagger Socket Session: OPEN");
     }
@@ -82,19 +199,45 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
 
         if (isConnected) {
             if(parsedMessage.startsWith("{\"heartbeat\"")){
+                heartbeat();
                 return;
             }
             else if (parsedMessage.startsWith("{\"status\"")) {
                 handleStatus(parsedMessage);
             }
             else {
-                handleResponses(parsedMessage);
+                handleResponses(parsedMessage, utf8Length(parsedMessage));
             }
         } else {
             handleHandshake(parsedMessage);
         }
     }
 
+    @OnMessage
+    public void onMessage(final byte[] message) throws IOException {
+        LOG.debug("JSR356 Swagger Socket Binary Message: {} bytes", message.length);
+
+        if (binaryMapper == null) {
+            LOG.error("JSR356 Swagger Socket ERROR: Unexpected Binary Message");
+            return;
+        }
+
+        final String type = messageType(message);
+        if ("heartbeat".equals(type)) {
+            heartbeat();
+            return;
+        }
+        else if ("status".equals(type)) {
+            final StatusMessage statusMessage = binaryMapper.readValue(message, StatusMessage.class);
+            LOG.error("JSR356 Swagger Socket Status ERROR: {} {}", statusMessage.getStatus().getStatusCode(),
+                    statusMessage.getStatus().getReasonPhrase());
+            handleStatus(statusMessage);
+        }
+        else {
+            handleResponses(binaryMapper.readValue(message, ResponseMessage.class), message.length);
+        }
+    }
+
     @OnClose
     public void onClose(final Session session) {
         LOG.debug("JSR356 Swagger Socket: Close Event Received");
@@ -106,11 +249,19 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
                 LOG.error("Error Closing JSR356 Swagger Socket Session!", e);
             } finally {
                 this.session = null;
+                writer = null;
                 isConnected = false;
                 identity = null;
+                binaryMapper = null;
+                paced = false;
+                chunked = false;
             }
         }
 
+        for(final ResponseFuture<Response> result : messages.values()) {
+            result.fail(new JSR356SwaggerSocketException("Swagger Socket Connection Closed"));
+        }
+
         LOG.debug("JSR356 Swagger Socket Session CLOSED");
     }
 
@@ -140,9 +291,14 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
                     .method(request.getMethod())
                     .path(request.getPath())
                     .body(request.getMessageBody())
+                    .encodings(encodings)
+                    .credit(credit)
+                    .chunks(chunks ? Boolean.TRUE : null)
+                    .rawJson(rawJson ? Boolean.TRUE : null)
                     .build();
 
             connectionOpenLatch = new CountDownLatch(1);
+            handshakeTraced = ProtocolTracers.get().begin(ProtocolTracer.Operation.HANDSHAKE);
 
             final String swaggerSocketUrl = request.getPath() + "?SwaggerSocket=1.0";
             session = webSocketContainer.connectToServer(this, URI.create(swaggerSocketUrl));
@@ -183,58 +339,64 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
 
     @Override
     public List<Response> send(final List<Request> requests){
-        final List<FutureCountDownLatch<Response>> resultList = new ArrayList<FutureCountDownLatch<Response>>();
-
-        try {
-            reentrantLock.lock();
-
-            final Request[] requestsArray = new Request[requests.size()];
-            requests.toArray(requestsArray);
-
-            final RequestMessage requestMessage = new RequestMessage.Builder()
-                    .requests(requestsArray)
-                    .identity(identity)
-                    .build();
-
-            for(final Request thisRequest : requestMessage.getRequests()){
-                final String uuid = UUID.randomUUID().toString();
-                thisRequest.setUuid(uuid);
-                final FutureCountDownLatch<Response> result = new FutureCountDownLatch<Response>();
-                messages.put(uuid, result);
-                resultList.add(result);
-            }
+        return await(sendAsync(requests));
+    }
 
-            final String requestJson = objectMapper.writeValueAsString(requestMessage);
-            session.getBasicRemote().sendText(requestJson);
-        } catch (final IOException e) {
-            throw new JSR356SwaggerSocketException("Error Sending Swagger Socket Request(s)", e);
-        } finally {
-            reentrantLock.unlock();
-        }
+    @Override
+    public <T> List<T> send(final List<Request> requests, final Class<T> resultClass) {
+        return await(sendAsync(requests, resultClass));
+    }
 
-        try {
-            final List<Response> responses = new ArrayList<Response>();
+    @Override
+    public <T> T send(final Request request, final Class<T> resultClass) {
+        final List<Request> requests = new ArrayList<Request>();
+        requests.add(request);
+        return send(requests, resultClass).get(0);
+    }
 
-            for(final FutureCountDownLatch<Response> resultLatches : resultList){
-	            final Response response = resultLatches.get();
-                responses.add(response);
-	            messages.remove(response.getUuid());
-            }
+    @Override
+    public ResponseFuture<Response> sendAsync(final Request request) {
+        final List<Request> requests = new ArrayList<Request>();
+        requests.add(request);
+        return sendAsync(requests).get(0);
+    }
 
-            return responses;
-        }
-        catch(final Exception e){
-            throw new JSR356SwaggerSocketException("Error Receiving Swagger Socket Response(s)", e);
+    @Override
+    public List<ResponseFuture<Response>> sendAsync(final List<Request> requests) {
+        final List<ResponseFuture<Response>> futures = new ArrayList<ResponseFuture<Response>>();
+        for(final ResponseFuture<Response> future : dispatch(requests)) {
+            futures.add(convert(future, new Conversion<Response>() {
+                @Override
+                Response convert(final Response response) throws IOException {
+                    // Binary encodings carry the bodies as bytes, and servers embedding raw JSON as JSON values
+                    final Object messageBody = response.getMessageBody();
+                    if(messageBody instanceof byte[]) {
+                        response.setMessageBody(new String((byte[]) messageBody, UTF_8));
+                    }
+                    else if(messageBody != null && !(messageBody instanceof String)) {
+                        response.setMessageBody(objectMapper.writeValueAsString(messageBody));
+                    }
+                    return response;
+                }
+            }));
         }
+        return futures;
     }
 
     @Override
-    public <T> List<T> send(final List<Request> requests, final Class<T> resultClass) {
-
+    public <T> List<ResponseFuture<T>> sendAsync(final List<Request> requests, final Class<T> resultClass) {
         for(final Request request: requests){
             final Object messageBody = request.getMessageBody();
 
-            if(!(messageBody instanceof String)) {
+            if(binaryMapper != null && !(messageBody instanceof byte[])) {
+                try {
+                    request.setMessageBody(messageBody instanceof String
+                            ? ((String) messageBody).getBytes(UTF_8) : objectMapper.writeValueAsBytes(messageBody));
+                } catch (JsonProcessingException e) {
+                    throw new JSR356SwaggerSocketException("Error Serializing Swagger Socket Request(s)", e);
+                }
+            }
+            else if(binaryMapper == null && !(messageBody instanceof String)) {
                 try {
                     request.setMessageBody(objectMapper.writeValueAsString(messageBody));
                 } catch (JsonProcessingException e) {
@@ -243,35 +405,252 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
             }
         }
 
-        final List<Response> responses = send(requests);
+        final List<ResponseFuture<T>> futures = new ArrayList<ResponseFuture<T>>();
+        for(final ResponseFuture<Response> future : dispatch(requests)) {
+            futures.add(convert(future, new Conversion<T>() {
+                @Override
+                T convert(final Response response) throws IOException {
+                    final Object responseBody = response.getMessageBody();
+                    if(responseBody instanceof byte[]) {
+                        return objectMapper.readValue((byte[]) responseBody, resultClass);
+                    }
+                    else if(responseBody instanceof String) {
+                        return objectMapper.readValue((String) responseBody, resultClass);
+                    }
+                    else if(responseBody instanceof TokenBuffer) {
+                        // Raw JSON body, whose tokens were kept with its message
+                        return objectMapper.readValue(((TokenBuffer) responseBody).asParser(objectMapper), resultClass);
+                    }
+                    return objectMapper.convertValue(responseBody, resultClass);
+                }
+            }));
+        }
+        return futures;
+    }
 
-        final List<T> resultValues = new ArrayList<T>();
+    @Override
+    public <T> ResponseFuture<T> sendAsync(final Request request, final Class<T> resultClass) {
+        final List<Request> requests = new ArrayList<Request>();
+        requests.add(request);
+        return sendAsync(requests, resultClass).get(0);
+    }
 
-        for(final Response response : responses) {
-            final String responseBody = (String) response.getMessageBody();
-            final T resultValue;
+    @Override
+    public ResponseFuture<Response> stream(final Request request, final ResponseChunkListener listener) {
+        final List<Request> requests = new ArrayList<Request>();
+        requests.add(request);
+        return dispatch(requests, listener).get(0);
+    }
 
-            try {
-                resultValue = objectMapper.readValue(responseBody, resultClass);
-            } catch (IOException e) {
-                throw new JSR356SwaggerSocketException("Error Deserializing Swagger Socket Response(s)", e);
+    @Override
+    public InputStream stream(final Request request) {
+        final ChunkInputStream in = new ChunkInputStream(objectMapper);
+        in.future(stream(request, in));
+        return in;
+    }
+
+    private List<ResponseFuture<Response>> dispatch(final List<Request> requests){
+        return dispatch(requests, null);
+    }
+
+    /**
+     * Register the requests and queue them in a single message, without waiting for anything. The chunks of their
+     * responses are handed to the listener if there is one.
+     */
+    private List<ResponseFuture<Response>> dispatch(final List<Request> requests, final ResponseChunkListener listener){
+        final AsyncMessageWriter writer = this.writer;
+        if(!isConnected || writer == null) {
+            throw new JSR356SwaggerSocketException("Error Sending Swagger Socket Request(s): Connection is Not Open!");
+        }
+
+        final Request[] requestsArray = new Request[requests.size()];
+        requests.toArray(requestsArray);
+
+        final ProtocolTracer tracer = ProtocolTracers.get();
+        final List<ResponseFuture<Response>> resultList = new ArrayList<ResponseFuture<Response>>();
+        for(int i = 0; i < requestsArray.length; i++){
+            final Request thisRequest = requestsArray[i];
+            final int index = i;
+            final Object traced = tracer.begin(ProtocolTracer.Operation.DISPATCH);
+            final String uuid = IdGenerators.next();
+            thisRequest.setUuid(uuid);
+            final ResponseFuture<Response> result = new ResponseFuture<Response>();
+            messages.put(uuid, result);
+            if(listener != null) {
+                streams.put(uuid, listener);
             }
 
-            resultValues.add(resultValue);
+            final long deadline = deadline(thisRequest);
+            final HashedTimerWheel.Timeout timeout = deadline <= 0 ? null : TIMER.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    result.fail(new JSR356SwaggerSocketException("Swagger Socket Request Timed Out", 504, new TimeoutException()));
+                }
+            }, deadline, TimeUnit.MILLISECONDS);
+
+            // Forget the request however it completes, e.g. when cancelled by the caller or timed out
+            result.onComplete(new ResponseCallback<Response>() {
+                @Override
+                public void completed(final Response response) {
+                    forget(uuid, timeout);
+                    traced(thisRequest);
+                    if(listener != null) {
+                        listener.completed();
+                    }
+                }
+
+                @Override
+                public void failed(final Throwable cause) {
+                    forget(uuid, timeout);
+                    traced(thisRequest);
+                    if(listener != null) {
+                        listener.failed(cause);
+                    }
+                }
+
+                /**
+                 * The request has been answered, successfully or not.
+                 */
+                private void traced(final Request request) {
+                    if(traced != null) {
+                        tracer.dispatch(traced, true, identity, uuid, request.getPath(), request.getMethod(), index);
+                    }
+                }
+            });
+            resultList.add(result);
         }
 
-        return resultValues;
+        final RequestBatcher batcher = this.batcher;
+        if(batcher != null) {
+            batcher.add(requestsArray);
+        }
+        else {
+            write(requestsArray);
+        }
+        return resultList;
     }
 
-    @Override
-    public <T> T send(final Request request, final Class<T> resultClass) {
-        final List<Request> requests = new ArrayList<Request>();
-        requests.add(request);
-        return send(requests, resultClass).get(0);
+    /**
+     * Write the requests in a single message, failing those still pending if it can't be sent.
+     */
+    private void write(final Request[] requests) {
+        final RequestMessage requestMessage = new RequestMessage.Builder()
+                .requests(requests)
+                .identity(identity)
+                .build();
+
+        final AsyncMessageWriter writer = this.writer;
+        ResponseFuture<Void> written;
+        try {
+            if(writer == null) {
+                throw new IOException("Connection is Not Open!");
+            }
+            written = writer.write(encode(requestMessage));
+        } catch (final IOException e) {
+            written = new ResponseFuture<Void>();
+            written.fail(e);
+        }
+
+        written.onComplete(new ResponseCallback<Void>() {
+            @Override
+            public void completed(final Void result) {
+            }
+
+            @Override
+            public void failed(final Throwable cause) {
+                for(final Request request : requests) {
+                    final ResponseFuture<Response> future = messages.get(request.getUuid());
+                    if(future != null) {
+                        future.fail(new JSR356SwaggerSocketException("Error Sending Swagger Socket Request(s)", cause));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * The time in milliseconds the response of the request is waited for, zero for ever.
+     */
+    private long deadline(final Request request) {
+        if(request.getHeaders() != null) {
+            for(final Header header : request.getHeaders()) {
+                if(Request.DEADLINE_HEADER.equalsIgnoreCase(header.getName())) {
+                    try {
+                        return Long.parseLong(header.getValue().trim());
+                    } catch (final NumberFormatException e) {
+                        throw new JSR356SwaggerSocketException("Invalid " + Request.DEADLINE_HEADER + ": " + header.getValue(), 400, e);
+                    }
+                }
+            }
+        }
+
+        if(sendDeadlines && timeoutMillis > 0) {
+            final List<Header> headers = request.getHeaders() == null
+                    ? new ArrayList<Header>() : new ArrayList<Header>(request.getHeaders());
+            headers.add(new Header(Request.DEADLINE_HEADER, String.valueOf(timeoutMillis)));
+            request.setHeaders(headers);
+        }
+        return timeoutMillis;
+    }
+
+    private void forget(final String uuid, final HashedTimerWheel.Timeout timeout) {
+        messages.remove(uuid);
+        streams.remove(uuid);
+        partials.remove(uuid);
+        if(timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    private <T> ResponseFuture<T> convert(final ResponseFuture<Response> future, final Conversion<T> conversion) {
+        final ResponseFuture<T> converted = new ResponseFuture<T>() {
+            @Override
+            public boolean cancel(final boolean mayInterruptIfRunning) {
+                future.cancel(mayInterruptIfRunning);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        future.onComplete(new ResponseCallback<Response>() {
+            @Override
+            public void completed(final Response response) {
+                try {
+                    converted.complete(conversion.convert(response));
+                } catch (final Exception e) {
+                    converted.fail(new JSR356SwaggerSocketException("Error Deserializing Swagger Socket Response(s)", e));
+                }
+            }
+
+            @Override
+            public void failed(final Throwable cause) {
+                converted.fail(cause);
+            }
+        });
+        return converted;
+    }
+
+    private static <T> List<T> await(final List<ResponseFuture<T>> futures) {
+        final List<T> results = new ArrayList<T>();
+        try {
+            for(final ResponseFuture<T> future : futures){
+                results.add(future.get());
+            }
+        }
+        catch(final ExecutionException e){
+            if(e.getCause() instanceof JSR356SwaggerSocketException) {
+                throw (JSR356SwaggerSocketException) e.getCause();
+            }
+            throw new JSR356SwaggerSocketException("Error Receiving Swagger Socket Response(s)", e.getCause());
+        }
+        catch(final Exception e){
+            throw new JSR356SwaggerSocketException("Error Receiving Swagger Socket Response(s)", e);
+        }
+        return results;
     }
 
     @Override
     public void close() {
+        final ProtocolTracer tracer = ProtocolTracers.get();
+        final Object traced = tracer.begin(ProtocolTracer.Operation.CLOSE);
         final Close close = new Close("Closed", identity);
         final CloseMessage closeMessage = new CloseMessage();
         closeMessage.setClose(close);
@@ -280,9 +659,15 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
             reentrantLock.lock();
 
             if(isConnected) {
-                final String closeJson = objectMapper.writeValueAsString(closeMessage);
-                session.getBasicRemote().sendText(closeJson);
+                if(batcher != null) {
+                    batcher.flush();
+                }
+                // Let the queued messages go out first
+                writer.write(encode(closeMessage)).get(30, TimeUnit.SECONDS);
                 onClose(session);
+                if(traced != null) {
+                    tracer.close(traced, true, close.getIdentity(), close.getReason());
+                }
             }
             else {
                 throw new JSR356SwaggerSocketException("Error Closing Swagger Socket Connection: Connection is Not Open!");
@@ -303,24 +688,197 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
         }
         else {
             identity = statusMessage.getIdentity();
+            if(Encodings.isBinary(statusMessage.getEncoding())) {
+                binaryMapper = Encodings.binaryMapper(statusMessage.getEncoding());
+            }
+            paced = credit != null && statusMessage.getCredit() != null;
+            chunked = chunks && Boolean.TRUE.equals(statusMessage.getChunks());
+            if(handshakeTraced != null) {
+                ProtocolTracers.get().handshake(handshakeTraced, true, identity, statusMessage.getEncoding());
+                handshakeTraced = null;
+            }
+            consumedResponses = 0;
+            consumedBytes = 0;
             isConnected = true;
             connectionOpenLatch.countDown();
         }
     }
 
-    private void handleResponses(final String responses) throws IOException {
-        final ResponseMessage responseMessage = objectMapper.readValue(responses, ResponseMessage.class);
+    private void handleResponses(final String responses, final long bytes) throws IOException {
+        handleResponses(objectMapper.readValue(responses, ResponseMessage.class), bytes);
+    }
+
+    /**
+     * Hand the responses of a message of the given size over. Its credit is granted back once all of them have been
+     * consumed: when their future completed, or their chunk was assembled or handed to a listener, and once a
+     * streamed body has been read.
+     */
+    private void handleResponses(final ResponseMessage responseMessage, final long messageBytes) {
         final List<Response> responseMessageList = responseMessage.getResponses();
+        final ProtocolTracer tracer = ProtocolTracers.get();
+        final Runnable consumed = paced ? new Consumed(responseMessageList.size() + 1, messageBytes) : UNPACED;
 
         for(int i = 0; i < responseMessageList.size(); i++){
             final Response thisResponse = responseMessageList.get(i);
-            final FutureCountDownLatch<Response> responseLatch = messages.get(thisResponse.getUuid());
-            responseLatch.set(thisResponse);
+            final Object traced = tracer.begin(ProtocolTracer.Operation.RESPONSE);
+            // Completing the response may assemble its chunks into it.
+            final long bytes = traced == null ? 0 : bodyLength(thisResponse.getMessageBody());
+            final boolean last = thisResponse.isLast();
+            final ResponseFuture<Response> result = messages.get(thisResponse.getUuid());
+            boolean handed = false;
+            if(result != null) {
+                final ResponseChunkListener listener = streams.get(thisResponse.getUuid());
+                if(listener instanceof ChunkInputStream) {
+                    ((ChunkInputStream) listener).chunk(thisResponse, consumed);
+                    handed = true;
+                    if(thisResponse.isLast() || !chunked) {
+                        result.complete(thisResponse);
+                    }
+                }
+                else if(listener != null) {
+                    listener.chunk(thisResponse);
+                    if(thisResponse.isLast() || !chunked) {
+                        result.complete(thisResponse);
+                    }
+                }
+                else if(!chunked) {
+                    result.complete(thisResponse);
+                }
+                else {
+                    final Response response = assemble(thisResponse);
+                    if(response != null) {
+                        result.complete(response);
+                    }
+                }
+            }
+            else {
+                LOG.debug("JSR356 Swagger Socket Response Without Pending Request: {}", thisResponse.getUuid());
+            }
+            if(!handed) {
+                consumed.run();
+            }
+            if(traced != null) {
+                tracer.response(traced, true, identity, thisResponse.getUuid(), bytes, last);
+            }
+        }
+        consumed.run();
+    }
+
+    private void heartbeat() {
+        final ProtocolTracer tracer = ProtocolTracers.get();
+        final Object traced = tracer.begin(ProtocolTracer.Operation.HEARTBEAT);
+        if(traced != null) {
+            tracer.heartbeat(traced, true, identity);
+        }
+    }
+
+    /**
+     * The number of bytes of a response body, zero for a raw JSON body, whose tokens were read with its message.
+     */
+    private static long bodyLength(final Object messageBody) {
+        if(messageBody instanceof byte[]) {
+            return ((byte[]) messageBody).length;
+        }
+        else if(messageBody instanceof String) {
+            return utf8Length((String) messageBody);
+        }
+        return 0;
+    }
+
+    /**
+     * Append the chunk to the response it belongs to, which is returned once its last chunk arrived. A chunk carrying
+     * a status after the first one is the failure the server ended the response with instead of its remaining chunks.
+     */
+    private Response assemble(final Response chunk) {
+        Partial partial = partials.get(chunk.getUuid());
+        if(partial == null) {
+            if(chunk.isLast()) {
+                return chunk;
+            }
+            partial = new Partial(chunk);
+            partials.put(chunk.getUuid(), partial);
+        }
+        else if(chunk.getStatusCode() != 0) {
+            partials.remove(chunk.getUuid());
+            return chunk;
+        }
+        else {
+            partial.append(chunk.getMessageBody());
+        }
+
+        if(!chunk.isLast()) {
+            return null;
+        }
+        partials.remove(chunk.getUuid());
+        return partial.response();
+    }
+
+    /**
+     * Count a consumed response message, and grant the credit consumed since the last grant once it reaches half of
+     * the window.
+     */
+    private synchronized void consumed(final long bytes) {
+        if(!paced) {
+            return;
+        }
+
+        consumedResponses++;
+        consumedBytes += bytes;
+        if((credit.getResponses() > 0 && consumedResponses * 2 >= credit.getResponses())
+                || (credit.getBytes() > 0 && consumedBytes * 2 >= credit.getBytes())) {
+            final CreditMessage creditMessage = new CreditMessage(new Credit(identity, consumedResponses, consumedBytes));
+            consumedResponses = 0;
+            consumedBytes = 0;
+
+            final AsyncMessageWriter writer = this.writer;
+            try {
+                if(writer != null) {
+                    writer.write(encode(creditMessage));
+                }
+            } catch (final IOException e) {
+                LOG.error("Error Granting Swagger Socket Credit", e);
+            }
+        }
+    }
+
+    /**
+     * The length of the string encoded in UTF-8, which is what the server counts.
+     */
+    private static long utf8Length(final String s) {
+        long length = 0;
+        for(int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if(c < 0x80) {
+                length++;
+            }
+            else if(c < 0x800) {
+                length += 2;
+            }
+            else if(Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            }
+            else {
+                length += 3;
+            }
         }
+        return length;
     }
 
     private void handleStatus(final String status) throws IOException {
         LOG.error("JSR356 Swagger Socket Status ERROR: {}", status);
+        handleStatus(objectMapper.readValue(status, StatusMessage.class));
+    }
+
+    /**
+     * A status carrying the uuid of a request reports its failure
+     */
+    private void handleStatus(final StatusMessage statusMessage) {
+        final ResponseFuture<Response> result = statusMessage.getIdentity() == null ? null : messages.get(statusMessage.getIdentity());
+        if(result != null) {
+            result.fail(new JSR356SwaggerSocketException(statusMessage.getStatus().getReasonPhrase(),
+                    statusMessage.getStatus().getStatusCode(), null));
+        }
     }
 
     private void performHandshake() {
@@ -336,6 +894,40 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
         }
     }
 
+    /**
+     * The type of a binary message, given by the first of its top level fields that identifies one.
+     */
+    private String messageType(final byte[] message) throws IOException {
+        final JsonParser parser = binaryMapper.getFactory().createParser(message);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                if ("heartbeat".equals(name) || "status".equals(name) || "responses".equals(name)) {
+                    return name;
+                }
+                parser.nextToken();
+                parser.skipChildren();
+            }
+            return null;
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Encode a message for the {@link AsyncMessageWriter}, as a binary frame when a binary encoding was negotiated.
+     */
+    private Object encode(final Object message) throws IOException {
+        if (binaryMapper != null) {
+            return ByteBuffer.wrap(binaryMapper.writeValueAsBytes(message));
+        } else {
+            return objectMapper.writeValueAsString(message);
+        }
+    }
+
     private boolean writeMessage(final String message) {
         try {
             session.getBasicRemote().sendText(message);
@@ -346,44 +938,58 @@ public class JSR356SwaggerSocketClientImpl implements JSR356SwaggerSocketClient
         return true;
     }
 
-    private class FutureCountDownLatch<T> implements Future<T> {
-
-        private CountDownLatch countDownLatch = new CountDownLatch(1);
-        private T result = null;
-
-        @Override
-        public boolean cancel(boolean mayInterruptIfRunning) {
-            countDownLatch.countDown();
-            return true;
+    /**
+     * A response whose chunks are being received. Their bodies are all text, or all bytes with a binary encoding.
+     */
+    private static class Partial {
+        private final Response response;
+        private final StringBuilder text = new StringBuilder();
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private Partial(final Response first) {
+            response = first;
+            append(first.getMessageBody());
         }
 
-        @Override
-        public boolean isCancelled() {
-            return countDownLatch.getCount() == 0 && result == null;
+        private void append(final Object messageBody) {
+            if(messageBody instanceof byte[]) {
+                final byte[] b = (byte[]) messageBody;
+                bytes.write(b, 0, b.length);
+            }
+            else if(messageBody != null) {
+                text.append(messageBody);
+            }
         }
 
-        @Override
-        public boolean isDone() {
-            return result != null;
+        private Response response() {
+            response.setMessageBody(bytes.size() > 0 ? bytes.toByteArray() : text.toString());
+            response.setLast(true);
+            return response;
         }
+    }
 
-        @Override
-        public T get() throws InterruptedException, ExecutionException {
-            countDownLatch.await();
-            return result;
-        }
+    /**
+     * Counts down the responses of a message still to be consumed, and the message itself until it has been handled.
+     */
+    private final class Consumed implements Runnable {
+        private final AtomicInteger pending;
+        private final long bytes;
 
-        @Override
-        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-            countDownLatch.await(timeout, unit);
-            return result;
+        private Consumed(final int pending, final long bytes) {
+            this.pending = new AtomicInteger(pending);
+            this.bytes = bytes;
         }
 
-        public void set(final T result) {
-            this.result = result;
-            countDownLatch.countDown();
+        @Override
+        public void run() {
+            if(pending.decrementAndGet() == 0) {
+                consumed(bytes);
+            }
         }
+    }
 
+    private abstract static class Conversion<T> {
+        abstract T convert(Response response) throws IOException;
     }
 
 }
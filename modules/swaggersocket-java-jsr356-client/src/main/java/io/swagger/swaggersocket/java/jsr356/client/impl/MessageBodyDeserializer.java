@@ -0,0 +1,72 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.java.jsr356.client.impl;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+
+/**
+ * Reads the body of a response of a JSON message. A body sent as a string stays a String, while a body the server
+ * embedded as a JSON value is kept as the {@link TokenBuffer} of its tokens, so it is bound straight to the type the
+ * caller asks for, without building a tree of maps and lists first. Floating point numbers are kept as decimals, so
+ * no precision is lost whatever they are bound to.
+ */
+final class MessageBodyDeserializer extends JsonDeserializer<Object> {
+
+    @Override
+    public Object deserialize(final JsonParser parser, final DeserializationContext context) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+
+        final TokenBuffer tokens = new TokenBuffer(parser.getCodec(), false);
+        int depth = 0;
+        for (;;) {
+            if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+                tokens.writeNumber(parser.getDecimalValue());
+            } else {
+                tokens.copyCurrentEvent(parser);
+            }
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                depth++;
+            } else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                depth--;
+            }
+            if (depth == 0) {
+                return tokens;
+            }
+            token = parser.nextToken();
+            if (token == null) {
+                throw context.mappingException("Unexpected end of the message body");
+            }
+        }
+    }
+
+    /**
+     * Applies the deserializer to the body of the protocol messages.
+     */
+    abstract static class MixIn {
+        @JsonDeserialize(using = MessageBodyDeserializer.class)
+        public abstract void setMessageBody(Object messageBody);
+    }
+}
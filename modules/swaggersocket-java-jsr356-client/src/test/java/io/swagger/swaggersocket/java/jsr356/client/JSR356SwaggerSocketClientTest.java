@@ -17,27 +17,39 @@ package io.swagger.swaggersocket.java.jsr356.client;
 
 import io.swagger.swaggersocket.java.jsr356.client.exception.JSR356SwaggerSocketException;
 import io.swagger.swaggersocket.java.jsr356.client.impl.JSR356SwaggerSocketClientImpl;
+import io.swagger.swaggersocket.protocol.Encodings;
+import io.swagger.swaggersocket.protocol.ProtocolTracer;
+import io.swagger.swaggersocket.protocol.ProtocolTracers;
 import io.swagger.swaggersocket.protocol.Request;
 import io.swagger.swaggersocket.protocol.Response;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class JSR356SwaggerSocketClientTest extends EmbeddedTomcatTestBase {
 
     private static JSR356SwaggerSocketClient jsr356SwaggerSocketClient;
+    private static JSR356SwaggerSocketClient rawJsonClient;
 
     @BeforeClass
     public static void setUp(){
         jsr356SwaggerSocketClient = new JSR356SwaggerSocketClientImpl();
         jsr356SwaggerSocketClient.open(String.format("ws://localhost:%d/test", port));
+        rawJsonClient = new JSR356SwaggerSocketClientImpl().rawJson(true);
+        rawJsonClient.open(String.format("ws://localhost:%d/test", port));
     }
 
     @Test
@@ -133,6 +145,45 @@ public class JSR356SwaggerSocketClientTest extends EmbeddedTomcatTestBase {
         assertEquals("Test Json Object 3 Text Doesn't Match!", requestJsonObject3.getTest(), responseJsonObjects.get(2).getTest());
     }
 
+    @Test
+    public void testRawJsonClientWithTestJsonObjectAndAutoDeserialize(){
+        final TestJsonObject requestJsonObject = new TestJsonObject();
+        requestJsonObject.setTest("raw json object");
+
+        final TestJsonObject responseJsonObject = rawJsonClient.send(new Request.Builder()
+                .path("/testJsonObject")
+                .method("POST")
+                .body(requestJsonObject)
+                .build(), TestJsonObject.class);
+
+        assertEquals("Test Json Object Text Doesn't Match!", requestJsonObject.getTest(), responseJsonObject.getTest());
+    }
+
+    @Test
+    public void testRawJsonClientWithJsonWrittenInSeveralWrites(){
+        final TestJsonObject requestJsonObject = new TestJsonObject();
+        requestJsonObject.setTest("json written in several writes");
+
+        final TestJsonObject responseJsonObject = rawJsonClient.send(new Request.Builder()
+                .path("/testJsonObjectInWrites")
+                .method("POST")
+                .body(requestJsonObject)
+                .build(), TestJsonObject.class);
+
+        assertEquals("Test Json Object Text Doesn't Match!", requestJsonObject.getTest(), responseJsonObject.getTest());
+    }
+
+    @Test
+    public void testRawJsonClientWithRawJsonBodyAsText(){
+        final Response response = rawJsonClient.send(new Request.Builder()
+                .path("/testJsonObject")
+                .method("POST")
+                .body("{\"test\":\"raw json\"}")
+                .build());
+
+        assertEquals("Raw Json Text Doesn't Match!", "{\"test\":\"raw json\"}", response.getMessageBody());
+    }
+
     @Test(expected=JSR356SwaggerSocketException.class)
     public void testClientConnectingWithInvalidProtocolThrowsException(){
         final JSR356SwaggerSocketClientImpl jsr356SwaggerSocketClient = new JSR356SwaggerSocketClientImpl();
@@ -168,9 +219,222 @@ public class JSR356SwaggerSocketClientTest extends EmbeddedTomcatTestBase {
         assertEquals("Echo Text Doesn't Match!", "echo this...", response2.getMessageBody());
     }
 
+    @Test
+    public void testPipelinedAsyncCallsToEchoService() throws Exception {
+        final List<ResponseFuture<Response>> futures = new ArrayList<ResponseFuture<Response>>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(jsr356SwaggerSocketClient.sendAsync(new Request.Builder()
+                    .path("/echo")
+                    .method("POST")
+                    .body("echo this... " + i)
+                    .build()));
+        }
+
+        final TestJsonObject requestJsonObject = new TestJsonObject();
+        requestJsonObject.setTest("test json object");
+        final ResponseFuture<TestJsonObject> typedFuture = jsr356SwaggerSocketClient.sendAsync(new Request.Builder()
+                .path("/testJsonObject")
+                .method("POST")
+                .body(requestJsonObject)
+                .build(), TestJsonObject.class);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Echo Text Doesn't Match!", "echo this... " + i, futures.get(i).get(30, TimeUnit.SECONDS).getMessageBody());
+        }
+        assertEquals("Test Json Object Text Doesn't Match!", requestJsonObject.getTest(), typedFuture.get(30, TimeUnit.SECONDS).getTest());
+    }
+
+    @Test
+    public void testUnansweredRequestTimesOut() throws Exception {
+        final JSR356SwaggerSocketClientImpl timingOutClient = new JSR356SwaggerSocketClientImpl()
+                .timeout(200, TimeUnit.MILLISECONDS);
+        timingOutClient.open(String.format("ws://localhost:%d/test", port));
+
+        try {
+            final ResponseFuture<Response> future = timingOutClient.sendAsync(new Request.Builder()
+                    .path("/sleep")
+                    .method("POST")
+                    .body("2000")
+                    .build());
+
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail("Request Should Have Timed Out!");
+            } catch (final ExecutionException e) {
+                assertEquals("Unexpected Timeout Status!", 504, ((JSR356SwaggerSocketException) e.getCause()).getStatus());
+            }
+        } finally {
+            timingOutClient.close();
+        }
+    }
+
+    @Test
+    public void testSmileEncodedConnectionWithEchoServiceAndTestJsonObject(){
+        final JSR356SwaggerSocketClient smileClient = new JSR356SwaggerSocketClientImpl().encodings(Encodings.SMILE);
+        smileClient.open(String.format("ws://localhost:%d/test", port));
+
+        try {
+            final Response response = smileClient.send(new Request.Builder()
+                    .path("/echo")
+                    .method("POST")
+                    .body("echo this...")
+                    .build());
+
+            assertEquals("Echo Text Doesn't Match!", "echo this...", response.getMessageBody());
+
+            final TestJsonObject requestJsonObject = new TestJsonObject();
+            requestJsonObject.setTest("test json object");
+
+            final TestJsonObject responseJsonObject = smileClient.send(new Request.Builder()
+                    .path("/testJsonObject")
+                    .method("POST")
+                    .body(requestJsonObject)
+                    .build(), TestJsonObject.class);
+
+            assertEquals("Test Json Object Text Doesn't Match!", requestJsonObject.getTest(), responseJsonObject.getTest());
+        } finally {
+            smileClient.close();
+        }
+    }
+
+
+    @Test
+    public void testCreditPacesStreamedResponseByWhatIsRead() throws Exception {
+        final JSR356SwaggerSocketClientImpl pacedClient = new JSR356SwaggerSocketClientImpl().credit(2, 0).chunks(true);
+        pacedClient.open(String.format("ws://localhost:%d/test", port));
+        final ProtocolTracer previous = ProtocolTracers.get();
+        final CountingTracer delivered = new CountingTracer();
+        ProtocolTracers.set(delivered);
+
+        try {
+            final String echo = largeText();
+            final InputStream in = pacedClient.stream(new Request.Builder()
+                    .path("/echo")
+                    .method("POST")
+                    .body(echo)
+                    .build());
+
+            // The credit runs out after two chunks, and stays so while nothing is read.
+            delivered.await(2);
+            Thread.sleep(300);
+            assertEquals("Chunks Delivered Past The Credit!", 2, delivered.responses.get());
+
+            // Reading the first chunk grants it back.
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[64 * 1024];
+            body.write(buffer, 0, in.read(buffer));
+            delivered.await(3);
+
+            for (int n; (n = in.read(buffer)) != -1; ) {
+                body.write(buffer, 0, n);
+            }
+            assertEquals("Echo Text Doesn't Match!", echo, body.toString("UTF-8"));
+        } finally {
+            ProtocolTracers.set(previous);
+            pacedClient.close();
+        }
+    }
+
+    @Test
+    public void testChunkedResponseIsAssembled() throws Exception {
+        final JSR356SwaggerSocketClientImpl chunkedClient = new JSR356SwaggerSocketClientImpl().chunks(true);
+        chunkedClient.open(String.format("ws://localhost:%d/test", port));
+
+        try {
+            final String echo = largeText();
+            final Response response = chunkedClient.send(new Request.Builder()
+                    .path("/echo")
+                    .method("POST")
+                    .body(echo)
+                    .build());
+            assertEquals("Echo Text Doesn't Match!", echo, response.getMessageBody());
+            assertEquals("Status Code Doesn't Match!", 200, response.getStatusCode());
+        } finally {
+            chunkedClient.close();
+        }
+    }
+
+    @Test
+    public void testChunkedResponseIsStreamed() throws Exception {
+        final JSR356SwaggerSocketClientImpl chunkedClient = new JSR356SwaggerSocketClientImpl().chunks(true);
+        chunkedClient.open(String.format("ws://localhost:%d/test", port));
+
+        try {
+            final String echo = largeText();
+            final InputStream in = chunkedClient.stream(new Request.Builder()
+                    .path("/echo")
+                    .method("POST")
+                    .body(echo)
+                    .build());
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            for (int n; (n = in.read(buffer)) != -1; ) {
+                body.write(buffer, 0, n);
+            }
+            assertEquals("Echo Text Doesn't Match!", echo, body.toString("UTF-8"));
+        } finally {
+            chunkedClient.close();
+        }
+    }
+
+    /**
+     * Counts the responses the clients receive.
+     */
+    private static class CountingTracer implements ProtocolTracer {
+        private final AtomicInteger responses = new AtomicInteger();
+
+        private void await(final int count) throws InterruptedException {
+            for (int i = 0; i < 100 && responses.get() < count; i++) {
+                Thread.sleep(50);
+            }
+            assertTrue("Only " + responses.get() + " Chunks Delivered!", responses.get() >= count);
+        }
+
+        @Override
+        public Object begin(final Operation operation) {
+            return operation;
+        }
+
+        @Override
+        public void handshake(final Object token, final boolean client, final String identity, final String encoding) {
+        }
+
+        @Override
+        public void dispatch(final Object token, final boolean client, final String identity, final String uuid,
+                             final String path, final String method, final int index) {
+        }
+
+        @Override
+        public void response(final Object token, final boolean client, final String identity, final String uuid,
+                             final long bytes, final boolean last) {
+            if (client) {
+                responses.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void heartbeat(final Object token, final boolean client, final String identity) {
+        }
+
+        @Override
+        public void close(final Object token, final boolean client, final String identity, final String reason) {
+        }
+    }
+
+    /**
+     * A body of several chunks, with multi-byte characters across their boundaries.
+     */
+    private static String largeText() {
+        final StringBuilder b = new StringBuilder();
+        for (int i = 0; b.length() < 40000; i++) {
+            b.append("chunk ").append(i).append(" \u00e9\u20ac ");
+        }
+        return b.toString();
+    }
 
     @AfterClass
     public static void tearDown(){
         jsr356SwaggerSocketClient.close();
+        rawJsonClient.close();
     }
 }
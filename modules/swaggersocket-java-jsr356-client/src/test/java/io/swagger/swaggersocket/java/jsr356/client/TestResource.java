@@ -20,6 +20,9 @@ import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
 
 @Path("/test")
 public class TestResource {
@@ -37,4 +40,28 @@ public class TestResource {
     public Response testJsonObject(final TestJsonObject testJsonObject){
         return Response.ok().entity(testJsonObject).build();
     }
+
+    @Path("/testJsonObjectInWrites")
+    @Produces(MediaType.APPLICATION_JSON)
+    @POST
+    public Response testJsonObjectInWrites(final TestJsonObject testJsonObject) throws IOException {
+        final byte[] json = ("{\"test\":\"" + testJsonObject.getTest() + "\"}").getBytes("UTF-8");
+        return Response.ok().entity(new StreamingOutput() {
+            @Override
+            public void write(final OutputStream out) throws IOException {
+                // Neither half is a JSON value.
+                out.write(json, 0, json.length / 2);
+                out.flush();
+                out.write(json, json.length / 2, json.length - json.length / 2);
+            }
+        }).build();
+    }
+
+    @Path("/sleep")
+    @Produces(MediaType.TEXT_PLAIN)
+    @POST
+    public Response sleep(final String millis) throws InterruptedException {
+        Thread.sleep(Long.parseLong(millis));
+        return Response.ok().entity(millis).build();
+    }
 }
@@ -0,0 +1,39 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("io.swagger.swaggersocket.Dispatch")
+@Label("SwaggerSocket Dispatch")
+@Description("A request has been dispatched to the framework by the server, or sent and answered for the client")
+final class DispatchEvent extends SwaggerSocketEvent {
+
+    @Label("UUID")
+    String uuid;
+
+    @Label("Path")
+    String path;
+
+    @Label("Method")
+    String method;
+
+    @Label("Batch Index")
+    @Description("The position of the request in its message")
+    int index;
+}
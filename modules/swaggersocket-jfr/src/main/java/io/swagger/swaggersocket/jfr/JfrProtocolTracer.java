@@ -0,0 +1,120 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.jfr;
+
+import io.swagger.swaggersocket.protocol.ProtocolTracer;
+import jdk.jfr.Event;
+
+/**
+ * Records the operations of the protocol as Java Flight Recorder events. It is registered as a service, so adding this
+ * module to the class path of the server or of the Java client is enough. An operation is only timed when its event is
+ * enabled in the running recordings, otherwise it costs the allocation of an event the JIT usually eliminates.
+ */
+public class JfrProtocolTracer implements ProtocolTracer {
+
+    @Override
+    public Object begin(Operation operation) {
+        Event event;
+        switch (operation) {
+            case HANDSHAKE:
+                event = new HandshakeEvent();
+                break;
+            case DISPATCH:
+                event = new DispatchEvent();
+                break;
+            case RESPONSE:
+                event = new ResponseEvent();
+                break;
+            case HEARTBEAT:
+                event = new HeartbeatEvent();
+                break;
+            case CLOSE:
+                event = new CloseEvent();
+                break;
+            default:
+                return null;
+        }
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void handshake(Object token, boolean client, String identity, String encoding) {
+        HandshakeEvent event = (HandshakeEvent) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.client = client;
+            event.identity = identity;
+            event.encoding = encoding;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void dispatch(Object token, boolean client, String identity, String uuid, String path, String method, int index) {
+        DispatchEvent event = (DispatchEvent) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.client = client;
+            event.identity = identity;
+            event.uuid = uuid;
+            event.path = path;
+            event.method = method;
+            event.index = index;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void response(Object token, boolean client, String identity, String uuid, long bytes, boolean last) {
+        ResponseEvent event = (ResponseEvent) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.client = client;
+            event.identity = identity;
+            event.uuid = uuid;
+            event.bytes = bytes;
+            event.last = last;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void heartbeat(Object token, boolean client, String identity) {
+        HeartbeatEvent event = (HeartbeatEvent) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.client = client;
+            event.identity = identity;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void close(Object token, boolean client, String identity, String reason) {
+        CloseEvent event = (CloseEvent) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.client = client;
+            event.identity = identity;
+            event.reason = reason;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("io.swagger.swaggersocket.Response")
+@Label("SwaggerSocket Response")
+@Description("A response has been encoded and written by the server, or handed over to the caller by the client")
+final class ResponseEvent extends SwaggerSocketEvent {
+
+    @Label("UUID")
+    String uuid;
+
+    @Label("Body Size")
+    @DataAmount
+    long bytes;
+
+    @Label("Last")
+    @Description("Whether the response is complete, rather than a chunk or a partial write of a longer one")
+    boolean last;
+}
@@ -0,0 +1,39 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * The fields shared by the events of the protocol. Their stack traces are off by default, as requests and responses
+ * are frequent and their stacks tell little.
+ */
+@Category("SwaggerSocket")
+@StackTrace(false)
+abstract class SwaggerSocketEvent extends Event {
+
+    @Label("Client")
+    @Description("Whether the event happened in the Java client rather than on the server")
+    boolean client;
+
+    @Label("Identity")
+    @Description("The identity of the connection")
+    String identity;
+}
@@ -0,0 +1,70 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.protocol;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Credit granted by a client for the responses the server may send it. A client opts in by sending its initial credit
+ * in its {@link Handshake}, and grants more in a {@link CreditMessage} as it consumes responses. A zero count leaves
+ * that dimension unbounded in the handshake, and grants nothing in a credit message.
+ */
+@JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+public class Credit {
+
+    private String identity;
+    private int responses;
+    private long bytes;
+
+    public Credit() {
+    }
+
+    public Credit(String identity, int responses, long bytes) {
+        this.identity = identity;
+        this.responses = responses;
+        this.bytes = bytes;
+    }
+
+    public String getIdentity() {
+        return identity;
+    }
+
+    public void setIdentity(String identity) {
+        this.identity = identity;
+    }
+
+    /**
+     * The number of response messages granted.
+     */
+    public int getResponses() {
+        return responses;
+    }
+
+    public void setResponses(int responses) {
+        this.responses = responses;
+    }
+
+    /**
+     * The number of encoded bytes granted, excluding any message length prefix.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+}
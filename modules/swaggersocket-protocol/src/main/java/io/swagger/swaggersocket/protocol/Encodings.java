@@ -0,0 +1,74 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.protocol;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+import java.util.List;
+
+/**
+ * The encodings a SwaggerSocket connection can negotiate in its {@link Handshake}. JSON text is the default and is
+ * used unless both sides agree on a binary encoding, which is then used in both directions once the handshake
+ * {@link StatusMessage} has been received.
+ */
+public final class Encodings {
+
+    public static final String JSON = "json";
+    public static final String SMILE = "smile";
+
+    private Encodings() {
+    }
+
+    /**
+     * Select the first encoding offered by the client that is also supported, or null if none is.
+     */
+    public static String negotiate(List<String> offered, List<String> supported) {
+        if (offered != null) {
+            for (String e : offered) {
+                if (supported.contains(e)) {
+                    return e;
+                }
+            }
+        }
+        return null;
+    }
+
+    public static boolean isBinary(String encoding) {
+        return SMILE.equals(encoding);
+    }
+
+    /**
+     * Create the {@link ObjectMapper} of a binary encoding. Byte arrays, like message bodies, are written as raw
+     * binary as the encoded messages are only sent in binary frames.
+     */
+    public static ObjectMapper binaryMapper(String encoding) {
+        if (!SMILE.equals(encoding)) {
+            throw new IllegalArgumentException("Not a binary encoding: " + encoding);
+        }
+        SmileFactory factory = new SmileFactory();
+        factory.disable(SmileGenerator.Feature.ENCODE_BINARY_AS_7BIT);
+        return new ObjectMapper(factory);
+    }
+
+    /**
+     * Whether the bytes start with the Smile header.
+     */
+    public static boolean isSmile(byte[] b, int off, int len) {
+        return len >= 3 && b[off] == ':' && b[off + 1] == ')' && b[off + 2] == '\n';
+    }
+}
@@ -27,6 +27,10 @@ public class Handshake extends ProtocolBase {
     private String protocolName = "SwaggerSocket";
     private String protocolVersion = "1.0";
     private String dataFormat = "application/json";
+    private List<String> encodings;
+    private Credit credit;
+    private Boolean chunks;
+    private Boolean rawJson;
 
     public Handshake() {
     }
@@ -41,6 +45,10 @@ public class Handshake extends ProtocolBase {
         uuid = b.uuid;
         method = b.method;
         messageBody = b.body;
+        encodings = b.encodings;
+        credit = b.credit;
+        chunks = b.chunks;
+        rawJson = b.rawJson;
     }
 
     public String getProtocolName() {
@@ -59,6 +67,51 @@ public class Handshake extends ProtocolBase {
         this.protocolVersion = protocolVersion;
     }
 
+    /**
+     * The encodings the client accepts, in order of preference. JSON is used when absent.
+     */
+    public List<String> getEncodings() {
+        return encodings;
+    }
+
+    public void setEncodings(List<String> encodings) {
+        this.encodings = encodings;
+    }
+
+    /**
+     * The initial {@link Credit} of a client pacing the responses it receives, absent if it doesn't.
+     */
+    public Credit getCredit() {
+        return credit;
+    }
+
+    public void setCredit(Credit credit) {
+        this.credit = credit;
+    }
+
+    /**
+     * Whether the client takes a response as a sequence of chunks, of which only the last one has last set to true.
+     */
+    public Boolean getChunks() {
+        return chunks;
+    }
+
+    public void setChunks(Boolean chunks) {
+        this.chunks = chunks;
+    }
+
+    /**
+     * Whether the client takes <code>application/json</code> response bodies embedded as JSON values rather than as
+     * escaped strings.
+     */
+    public Boolean getRawJson() {
+        return rawJson;
+    }
+
+    public void setRawJson(Boolean rawJson) {
+        this.rawJson = rawJson;
+    }
+
     public final static class Builder {
         private String protocolName = "SwaggerSocket";
         private String protocolVersion = "1.0";
@@ -69,6 +122,10 @@ public class Handshake extends ProtocolBase {
         private String uuid;
         private String method;
         private Object body;
+        private List<String> encodings;
+        private Credit credit;
+        private Boolean chunks;
+        private Boolean rawJson;
 
         public Builder format(String dataFormat) {
             this.dataFormat = dataFormat;
@@ -115,6 +172,26 @@ public class Handshake extends ProtocolBase {
             return this;
         }
 
+        public Builder encodings(List<String> encodings) {
+            this.encodings = encodings;
+            return this;
+        }
+
+        public Builder credit(Credit credit) {
+            this.credit = credit;
+            return this;
+        }
+
+        public Builder chunks(Boolean chunks) {
+            this.chunks = chunks;
+            return this;
+        }
+
+        public Builder rawJson(Boolean rawJson) {
+            this.rawJson = rawJson;
+            return this;
+        }
+
         public Handshake build() {
             return new Handshake(this);
         }
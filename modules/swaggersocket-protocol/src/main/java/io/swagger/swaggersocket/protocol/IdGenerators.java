@@ -0,0 +1,125 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.protocol;
+
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.ServiceLoader;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the {@link IdGenerator} in use, the first one registered as a service in
+ * META-INF/services/io.swagger.swaggersocket.protocol.IdGenerator or the {@link #defaultGenerator()} otherwise.
+ */
+public final class IdGenerators {
+
+    /**
+     * The number of counter values the default generator reserves for a thread at a time.
+     */
+    static final int BLOCK = 1024;
+
+    private static volatile IdGenerator generator = load();
+
+    private IdGenerators() {
+    }
+
+    public static IdGenerator get() {
+        return generator;
+    }
+
+    public static void set(IdGenerator generator) {
+        IdGenerators.generator = generator != null ? generator : defaultGenerator();
+    }
+
+    /**
+     * A shortcut for {@code get().next()}.
+     */
+    public static String next() {
+        return generator.next();
+    }
+
+    /**
+     * A generator whose identifiers are a random prefix, drawn once per process, followed by a counter. Every thread
+     * reserves blocks of the counter, so the threads never contend for it. Unguessable identifiers are random UUIDs,
+     * drawn from a {@link SecureRandom} per thread rather than from the one all {@link UUID#randomUUID()} calls share.
+     */
+    public static IdGenerator defaultGenerator() {
+        return DefaultIdGenerator.INSTANCE;
+    }
+
+    private static IdGenerator load() {
+        try {
+            Iterator<IdGenerator> it = ServiceLoader.load(IdGenerator.class, IdGenerator.class.getClassLoader()).iterator();
+            if (it.hasNext()) {
+                return it.next();
+            }
+        } catch (Throwable t) {
+            // Misconfigured service, keep the default.
+        }
+        return defaultGenerator();
+    }
+
+    private final static class DefaultIdGenerator implements IdGenerator {
+        private static final DefaultIdGenerator INSTANCE = new DefaultIdGenerator();
+
+        private final String prefix;
+        private final AtomicLong blocks = new AtomicLong();
+        private final ThreadLocal<long[]> counters = new ThreadLocal<long[]>() {
+            @Override
+            protected long[] initialValue() {
+                // next, end of the reserved block
+                return new long[2];
+            }
+        };
+        private final ThreadLocal<SecureRandom> randoms = new ThreadLocal<SecureRandom>() {
+            @Override
+            protected SecureRandom initialValue() {
+                return new SecureRandom();
+            }
+        };
+
+        private DefaultIdGenerator() {
+            prefix = Long.toString(new SecureRandom().nextLong() & Long.MAX_VALUE, 36) + "-";
+        }
+
+        @Override
+        public String next() {
+            long[] c = counters.get();
+            if (c[0] == c[1]) {
+                c[0] = blocks.getAndIncrement() * BLOCK;
+                c[1] = c[0] + BLOCK;
+            }
+            return prefix + Long.toString(c[0]++, 36);
+        }
+
+        @Override
+        public String nextUnguessable() {
+            byte[] b = new byte[16];
+            randoms.get().nextBytes(b);
+            // Version 4, IETF variant, like UUID.randomUUID()
+            b[6] = (byte) ((b[6] & 0x0f) | 0x40);
+            b[8] = (byte) ((b[8] & 0x3f) | 0x80);
+            long msb = 0;
+            long lsb = 0;
+            for (int i = 0; i < 8; i++) {
+                msb = (msb << 8) | (b[i] & 0xff);
+                lsb = (lsb << 8) | (b[i + 8] & 0xff);
+            }
+            return new UUID(msb, lsb).toString();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.protocol;
+
+/**
+ * Records the operations of the protocol on the server and in the Java client, e.g. as Java Flight Recorder events.
+ * Implementations are found with the {@link java.util.ServiceLoader}, see {@link ProtocolTracers}.
+ * <p/>
+ * An operation is begun before it runs and reported once it is over, with the token returned by {@link #begin}. A null
+ * token means operations of that kind are not recorded, and the operation is not reported at all.
+ */
+public interface ProtocolTracer {
+
+    enum Operation {
+        HANDSHAKE, DISPATCH, RESPONSE, HEARTBEAT, CLOSE
+    }
+
+    Object begin(Operation operation);
+
+    void handshake(Object token, boolean client, String identity, String encoding);
+
+    /**
+     * A request has been dispatched by the server, or answered for the client.
+     *
+     * @param index the position of the request in its message
+     */
+    void dispatch(Object token, boolean client, String identity, String uuid, String path, String method, int index);
+
+    /**
+     * A response has been written by the server, or received by the client.
+     */
+    void response(Object token, boolean client, String identity, String uuid, long bytes, boolean last);
+
+    void heartbeat(Object token, boolean client, String identity);
+
+    void close(Object token, boolean client, String identity, String reason);
+}
@@ -0,0 +1,87 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.protocol;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+
+/**
+ * Holds the {@link ProtocolTracer} in use, the first one registered as a service in
+ * META-INF/services/io.swagger.swaggersocket.protocol.ProtocolTracer or one recording nothing otherwise.
+ */
+public final class ProtocolTracers {
+
+    private static volatile ProtocolTracer tracer = load();
+
+    private ProtocolTracers() {
+    }
+
+    public static ProtocolTracer get() {
+        return tracer;
+    }
+
+    public static void set(ProtocolTracer tracer) {
+        ProtocolTracers.tracer = tracer != null ? tracer : noTracer();
+    }
+
+    /**
+     * A tracer which begins no operation, so it costs a call per operation.
+     */
+    public static ProtocolTracer noTracer() {
+        return NoTracer.INSTANCE;
+    }
+
+    private static ProtocolTracer load() {
+        try {
+            Iterator<ProtocolTracer> it = ServiceLoader.load(ProtocolTracer.class, ProtocolTracer.class.getClassLoader()).iterator();
+            if (it.hasNext()) {
+                return it.next();
+            }
+        } catch (Throwable t) {
+            // Misconfigured service, or one which doesn't run on this JVM.
+        }
+        return noTracer();
+    }
+
+    private final static class NoTracer implements ProtocolTracer {
+        private static final NoTracer INSTANCE = new NoTracer();
+
+        @Override
+        public Object begin(Operation operation) {
+            return null;
+        }
+
+        @Override
+        public void handshake(Object token, boolean client, String identity, String encoding) {
+        }
+
+        @Override
+        public void dispatch(Object token, boolean client, String identity, String uuid, String path, String method, int index) {
+        }
+
+        @Override
+        public void response(Object token, boolean client, String identity, String uuid, long bytes, boolean last) {
+        }
+
+        @Override
+        public void heartbeat(Object token, boolean client, String identity) {
+        }
+
+        @Override
+        public void close(Object token, boolean client, String identity, String reason) {
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.protocol;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * A message body that already is a UTF-8 encoded JSON value, and is written as is into the enclosing message instead
+ * of as an escaped string. The bytes are neither validated nor copied.
+ */
+public final class RawJson implements JsonSerializable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final byte[] json;
+
+    public RawJson(byte[] json) {
+        this.json = json;
+    }
+
+    public byte[] getBytes() {
+        return json;
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider provider) throws IOException {
+        Object target = gen.getOutputTarget();
+        if (target instanceof OutputStream) {
+            // Let the generator account for the value and write its separator, then append the bytes after it.
+            gen.writeRawValue("");
+            gen.flush();
+            ((OutputStream) target).write(json);
+        } else {
+            gen.writeRawValue(new String(json, UTF_8));
+        }
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider provider, TypeSerializer typeSer) throws IOException {
+        serialize(gen, provider);
+    }
+
+    @Override
+    public String toString() {
+        return new String(json, UTF_8);
+    }
+}
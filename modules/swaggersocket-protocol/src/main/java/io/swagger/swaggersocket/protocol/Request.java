@@ -17,10 +17,15 @@ package io.swagger.swaggersocket.protocol;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.UUID;
 
 public class Request extends ProtocolBase {
 
+    /**
+     * The header carrying the time, in milliseconds, the client still waits for the response of a request. A server
+     * may drop a request whose deadline expired before it was dispatched.
+     */
+    public static final String DEADLINE_HEADER = "X-SwaggerSocket-Deadline";
+
     private Object attachment;
 
     public Request() {
@@ -30,7 +35,7 @@ public class Request extends ProtocolBase {
         headers = b.headers;
         queryString = b.queryString;
         path = b.path;
-        uuid = b.uuid;
+        uuid = b.uuid != null ? b.uuid : IdGenerators.next();
         method = b.method;
         dataFormat = b.dataFormat;
         messageBody = b.messageBody;
@@ -51,7 +56,7 @@ public class Request extends ProtocolBase {
         private List<Header> headers = Collections.<Header>emptyList();
         private List<QueryString> queryString = Collections.<QueryString>emptyList();
         private String path = "/";
-        private String uuid = UUID.randomUUID().toString();
+        private String uuid;
         private String method = "POST";
         private Object messageBody = "";
         private Object attachment;
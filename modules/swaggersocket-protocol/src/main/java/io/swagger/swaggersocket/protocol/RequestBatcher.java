@@ -0,0 +1,123 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.protocol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the requests a client issues within a short window into a single {@link RequestMessage}. A batch is
+ * handed to the {@link Sink} once the window opened by its first request elapsed, or as soon as it holds the maximum
+ * number of requests, whichever comes first. Batches are handed over one at a time, in the order of their requests.
+ */
+public class RequestBatcher {
+
+    /**
+     * Sends a batch of requests as one {@link RequestMessage}.
+     */
+    public interface Sink {
+        void send(Request[] requests);
+    }
+
+    /**
+     * Runs a task once its delay elapsed, like the timer a client already has.
+     */
+    public interface Timer {
+        void schedule(Runnable task, long delay, TimeUnit unit);
+    }
+
+    private final Sink sink;
+    private final Timer timer;
+    private final long window;
+    private final int maxRequests;
+    private final Object sending = new Object();
+    private List<Request> pending = new ArrayList<Request>();
+    private boolean scheduled;
+    // The number of batches sent, which tells a window elapsing after its batch was sent.
+    private long sent;
+
+    public RequestBatcher(Sink sink, final ScheduledExecutorService timer, long window, TimeUnit unit, int maxRequests) {
+        this(sink, new Timer() {
+            @Override
+            public void schedule(Runnable task, long delay, TimeUnit unit) {
+                timer.schedule(task, delay, unit);
+            }
+        }, window, unit, maxRequests);
+    }
+
+    public RequestBatcher(Sink sink, Timer timer, long window, TimeUnit unit, int maxRequests) {
+        if (maxRequests < 1) {
+            throw new IllegalArgumentException("maxRequests must be positive: " + maxRequests);
+        }
+        this.sink = sink;
+        this.timer = timer;
+        this.window = unit.toNanos(window);
+        this.maxRequests = maxRequests;
+    }
+
+    public void add(Request... requests) {
+        boolean full;
+        synchronized (this) {
+            Collections.addAll(pending, requests);
+            full = pending.size() >= maxRequests;
+            if (!full && !scheduled) {
+                scheduled = true;
+                final long batch = sent;
+                timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        send(batch);
+                    }
+                }, window, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full) {
+            send(-1);
+        }
+    }
+
+    /**
+     * Send the pending requests now.
+     */
+    public void flush() {
+        send(-1);
+    }
+
+    /**
+     * Send the pending requests, unless they are not the given batch any more.
+     *
+     * @param batch the number of batches sent before the pending one, -1 for whichever is pending
+     */
+    private void send(long batch) {
+        // The batch is taken while holding the send lock, so batches are sent in the order they are taken.
+        synchronized (sending) {
+            Request[] requests;
+            synchronized (this) {
+                if (pending.isEmpty() || batch >= 0 && batch != sent) {
+                    return;
+                }
+                requests = pending.toArray(new Request[pending.size()]);
+                pending = new ArrayList<Request>();
+                scheduled = false;
+                sent++;
+            }
+            sink.send(requests);
+        }
+    }
+}
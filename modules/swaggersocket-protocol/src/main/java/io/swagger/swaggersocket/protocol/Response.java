@@ -18,7 +18,6 @@ package io.swagger.swaggersocket.protocol;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
 
 @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
 public class Response extends ProtocolBase {
@@ -31,7 +30,7 @@ public class Response extends ProtocolBase {
     public Response() {}
 
     private Response(Builder b) {
-        uuid = b.uuid;
+        uuid = b.uuid != null ? b.uuid : IdGenerators.next();
         last = b.last;
         path = b.path;
         status = b.status;
@@ -81,7 +80,7 @@ public class Response extends ProtocolBase {
     }
 
     public final static class Builder {
-        private String uuid = UUID.randomUUID().toString();
+        private String uuid;
         private boolean last;
         private String path = "/";
         private String reasonPhrase;
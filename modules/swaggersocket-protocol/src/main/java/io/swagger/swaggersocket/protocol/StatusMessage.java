@@ -15,10 +15,16 @@
  */
 package io.swagger.swaggersocket.protocol;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
 public class StatusMessage {
 
     private Status status;
     private String identity;
+    private String encoding;
+    private Credit credit;
+    private Boolean chunks;
+    private Boolean rawJson;
 
     public StatusMessage(){
         this.status = new Status(200,"OK");
@@ -46,6 +52,55 @@ public class StatusMessage {
         this.identity = identity;
     }
 
+    /**
+     * The encoding selected by the server in reply to a {@link Handshake}, absent for JSON.
+     */
+    @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * The initial {@link Credit} of the {@link Handshake}, echoed by a server which paces its responses with it.
+     */
+    @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+    public Credit getCredit() {
+        return credit;
+    }
+
+    public void setCredit(Credit credit) {
+        this.credit = credit;
+    }
+
+    /**
+     * Set by a server which answers the {@link Handshake} chunks request with chunked responses, absent otherwise.
+     */
+    @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+    public Boolean getChunks() {
+        return chunks;
+    }
+
+    public void setChunks(Boolean chunks) {
+        this.chunks = chunks;
+    }
+
+    /**
+     * Set by a server which embeds <code>application/json</code> response bodies as JSON values, as the
+     * {@link Handshake} asked, absent otherwise.
+     */
+    @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+    public Boolean getRawJson() {
+        return rawJson;
+    }
+
+    public void setRawJson(Boolean rawJson) {
+        this.rawJson = rawJson;
+    }
+
     public final static class Status {
 
         public static final int NO_STATUS = -1;
@@ -81,6 +136,10 @@ public class StatusMessage {
 
         private Status status;
         private String identity;
+        private String encoding;
+        private Credit credit;
+        private Boolean chunks;
+        private Boolean rawJson;
 
         public Builder status(Status status) {
             this.status = status;
@@ -92,11 +151,35 @@ public class StatusMessage {
             return this;
         }
 
+        public Builder encoding(String encoding) {
+            this.encoding = encoding;
+            return this;
+        }
+
+        public Builder credit(Credit credit) {
+            this.credit = credit;
+            return this;
+        }
+
+        public Builder chunks(Boolean chunks) {
+            this.chunks = chunks;
+            return this;
+        }
+
+        public Builder rawJson(Boolean rawJson) {
+            this.rawJson = rawJson;
+            return this;
+        }
+
         public StatusMessage build(){
             // Jackson bark
             StatusMessage s = new StatusMessage();
             s.setIdentity(identity);
             s.setStatus(status);
+            s.setEncoding(encoding);
+            s.setCredit(credit);
+            s.setChunks(chunks);
+            s.setRawJson(rawJson);
             return s;
         }
 
@@ -0,0 +1,148 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.protocol;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The test resources register {@link SequenceIdGenerator} as the {@link IdGenerator} service.
+ */
+public class IdGeneratorsTest {
+
+    @After
+    public void restore() {
+        IdGenerators.set(new SequenceIdGenerator());
+    }
+
+    @Test
+    public void testRegisteredServiceIsUsed() {
+        assertTrue(IdGenerators.get() instanceof SequenceIdGenerator);
+        assertTrue(IdGenerators.next().startsWith("seq-"));
+    }
+
+    @Test
+    public void testDefaultIsRestoredBySettingNull() {
+        IdGenerators.set(null);
+        assertSame(IdGenerators.defaultGenerator(), IdGenerators.get());
+    }
+
+    @Test
+    public void testIdsAreUniqueAcrossThreads() throws Exception {
+        final IdGenerator generator = IdGenerators.defaultGenerator();
+        final ConcurrentHashMap<String, Boolean> ids = new ConcurrentHashMap<String, Boolean>();
+        final AtomicInteger duplicates = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final int perThread = 3 * IdGenerators.BLOCK + 7;
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < perThread; j++) {
+                        if (ids.putIfAbsent(generator.next(), Boolean.TRUE) != null) {
+                            duplicates.incrementAndGet();
+                        }
+                        if (ids.putIfAbsent(generator.nextUnguessable(), Boolean.TRUE) != null) {
+                            duplicates.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(0, duplicates.get());
+        assertEquals(2 * 8 * perThread, ids.size());
+    }
+
+    @Test
+    public void testThreadMovesOnToAnotherBlockOnceItsOwnIsUsedUp() throws Exception {
+        final IdGenerator generator = IdGenerators.defaultGenerator();
+        final List<String> ids = new ArrayList<String>();
+        // A thread of its own starts a block of its own.
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 2 * IdGenerators.BLOCK + 1; i++) {
+                    ids.add(generator.next());
+                }
+            }
+        });
+        t.start();
+        t.join();
+
+        String prefix = ids.get(0).substring(0, ids.get(0).indexOf('-') + 1);
+        Set<Long> blocks = new HashSet<Long>();
+        long previous = -1;
+        for (String id : ids) {
+            assertTrue(id, id.startsWith(prefix));
+            long counter = Long.parseLong(id.substring(prefix.length()), 36);
+            if (blocks.add(counter / IdGenerators.BLOCK)) {
+                // A new block is used from its start.
+                assertEquals(0, counter % IdGenerators.BLOCK);
+            } else {
+                assertEquals(previous + 1, counter);
+            }
+            previous = counter;
+        }
+        assertEquals(3, blocks.size());
+    }
+
+    @Test
+    public void testUnguessableIdsAreRandomUuids() {
+        UUID uuid = UUID.fromString(IdGenerators.defaultGenerator().nextUnguessable());
+        assertEquals(4, uuid.version());
+        assertEquals(2, uuid.variant());
+    }
+
+    public static final class SequenceIdGenerator implements IdGenerator {
+        private final AtomicInteger next = new AtomicInteger();
+
+        @Override
+        public String next() {
+            return "seq-" + next.incrementAndGet();
+        }
+
+        @Override
+        public String nextUnguessable() {
+            return UUID.randomUUID().toString();
+        }
+    }
+}
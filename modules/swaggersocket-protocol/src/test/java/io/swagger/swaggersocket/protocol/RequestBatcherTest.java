@@ -0,0 +1,193 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.protocol;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestBatcherTest {
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final List<List<String>> sent = new ArrayList<List<String>>();
+    private final RequestBatcher.Sink sink = new RequestBatcher.Sink() {
+        @Override
+        public void send(Request[] requests) {
+            List<String> batch = new ArrayList<String>();
+            for (Request r : requests) {
+                batch.add(r.getPath());
+            }
+            synchronized (sent) {
+                sent.add(batch);
+                sent.notifyAll();
+            }
+        }
+    };
+
+    @After
+    public void stop() {
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void testBatchIsSentOnceItHoldsMaxRequests() {
+        RequestBatcher batcher = new RequestBatcher(sink, timer, 1, TimeUnit.HOURS, 3);
+        batcher.add(request("/1"), request("/2"));
+        assertTrue(sent().isEmpty());
+
+        batcher.add(request("/3"));
+        assertEquals(1, sent().size());
+        assertEquals(paths("/1", "/2", "/3"), sent().get(0));
+    }
+
+    @Test
+    public void testBatchIsSentOnceItsWindowElapsed() throws Exception {
+        RequestBatcher batcher = new RequestBatcher(sink, timer, 20, TimeUnit.MILLISECONDS, 64);
+        long start = System.nanoTime();
+        batcher.add(request("/1"));
+        batcher.add(request("/2"));
+
+        List<List<String>> batches = await(1);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(paths("/1", "/2"), batches.get(0));
+        Thread.sleep(50);
+        assertEquals(1, sent().size());
+    }
+
+    @Test
+    public void testWindowOfABatchSentEarlyDoesNotCutTheNextOneShort() throws Exception {
+        final List<Runnable> windows = new ArrayList<Runnable>();
+        RequestBatcher batcher = new RequestBatcher(sink, new RequestBatcher.Timer() {
+            @Override
+            public void schedule(Runnable task, long delay, TimeUnit unit) {
+                windows.add(task);
+            }
+        }, 1, TimeUnit.SECONDS, 2);
+        batcher.add(request("/1"));
+        batcher.add(request("/2"));
+        batcher.add(request("/3"));
+        assertEquals(1, sent().size());
+
+        // The window of the first batch elapses, the second batch has a window of its own.
+        windows.get(0).run();
+        assertEquals(1, sent().size());
+        assertEquals(2, windows.size());
+        windows.get(1).run();
+        assertEquals(paths("/3"), sent().get(1));
+    }
+
+    @Test
+    public void testFlushSendsThePendingRequests() {
+        RequestBatcher batcher = new RequestBatcher(sink, timer, 1, TimeUnit.HOURS, 64);
+        batcher.flush();
+        assertTrue(sent().isEmpty());
+
+        batcher.add(request("/1"));
+        batcher.flush();
+        batcher.flush();
+        assertEquals(1, sent().size());
+        assertEquals(paths("/1"), sent().get(0));
+    }
+
+    @Test
+    public void testBatchesAreSentInTheOrderOfTheirRequests() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final RequestBatcher batcher = new RequestBatcher(new RequestBatcher.Sink() {
+            @Override
+            public void send(Request[] requests) {
+                if ("/1".equals(requests[0].getPath())) {
+                    entered.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                sink.send(requests);
+            }
+        }, timer, 1, TimeUnit.HOURS, 1);
+
+        Thread first = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                batcher.add(request("/1"));
+            }
+        });
+        first.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        // The second batch is taken while the first one is being sent, it waits for it.
+        Thread second = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                batcher.add(request("/2"));
+            }
+        });
+        second.start();
+        Thread.sleep(50);
+        release.countDown();
+        first.join();
+        second.join();
+
+        assertEquals(2, sent().size());
+        assertEquals(paths("/1"), sent().get(0));
+        assertEquals(paths("/2"), sent().get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxRequestsMustBePositive() {
+        new RequestBatcher(sink, timer, 1, TimeUnit.MILLISECONDS, 0);
+    }
+
+    private static Request request(String path) {
+        return new Request.Builder().path(path).method("GET").build();
+    }
+
+    private static List<String> paths(String... paths) {
+        List<String> l = new ArrayList<String>();
+        for (String p : paths) {
+            l.add(p);
+        }
+        return l;
+    }
+
+    private List<List<String>> sent() {
+        synchronized (sent) {
+            return new ArrayList<List<String>>(sent);
+        }
+    }
+
+    private List<List<String>> await(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        synchronized (sent) {
+            while (sent.size() < count && System.currentTimeMillis() < deadline) {
+                sent.wait(100);
+            }
+        }
+        assertTrue(sent().size() >= count);
+        return sent();
+    }
+}
@@ -20,9 +20,9 @@ import org.slf4j.{Logger, LoggerFactory}
 import org.jfarcand.wcs.{TextListener, WebSocket}
 import io.swagger.swaggersocket.protocol.RequestMessage.Builder
 import io.swagger.swaggersocket.protocol.StatusMessage.Status
-import java.util.concurrent.{ConcurrentHashMap, TimeoutException, TimeUnit, CountDownLatch}
+import java.util.concurrent.{ConcurrentHashMap, CountDownLatch, Executors, ScheduledExecutorService, ThreadFactory, TimeoutException, TimeUnit}
 import java.util.concurrent.atomic.AtomicInteger
-import io.swagger.swaggersocket.protocol.{Close, StatusMessage, Handshake, Request}
+import io.swagger.swaggersocket.protocol.{Close, StatusMessage, Handshake, Request, RequestBatcher}
 
 /**
  * A WebSocket connection supporting the SwaggerSocket protocol. As simple as:
@@ -45,6 +45,17 @@ object SwaggerSocket {
   def apply(): SwaggerSocket = {
     new SwaggerSocket("0", 30, false, null, WebSocket())
   }
+
+  /**
+   * The timer flushing the request batches of every connection.
+   */
+  lazy val batchTimer: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory {
+    override def newThread(r: Runnable): Thread = {
+      val t = new Thread(r, "SwaggerSocket-Batcher")
+      t.setDaemon(true)
+      t
+    }
+  })
 }
 
 case class SwaggerSocket(uniqueId : String, timeoutInSeconds: Int, isConnected: Boolean, activeRequests: ConcurrentHashMap[String, Request], w: WebSocket) {
@@ -55,6 +66,7 @@ case class SwaggerSocket(uniqueId : String, timeoutInSeconds: Int, isConnected:
   var path: String = "ws://localhost"
   var ws: WebSocket = null
   var identity : String = uniqueId
+  @volatile var batcher: RequestBatcher = null
   def DELIMITER_PATTERN = "^\\d+<->".r;
 
     /**
@@ -153,12 +165,26 @@ case class SwaggerSocket(uniqueId : String, timeoutInSeconds: Int, isConnected:
    * CloseMessage the underlying WebSocket connection.
    */
   def close: SwaggerSocket = {
+    if (batcher != null) batcher.flush()
     val close: Close = new Close("Closed", identity);
     ws.send(serializer.serializeClose(close))
     ws.close
     this
   }
 
+  /**
+   * Coalesce the requests sent within the window into a single message, which is sent as soon as it holds
+   * maxRequests requests or the window opened by its first request elapsed. Batching is off by default.
+   */
+  def batch(window: Long, unit: TimeUnit, maxRequests: Int): SwaggerSocket = {
+    batcher = new RequestBatcher(new RequestBatcher.Sink {
+      override def send(requests: Array[Request]) {
+        w.send(serializer.serializeRequests(new Builder().requests(requests).identity(identity).build))
+      }
+    }, SwaggerSocket.batchTimer, window, unit, maxRequests)
+    this
+  }
+
   /**
    * Send a request.
    * @param r a {@link Request}
@@ -243,7 +269,6 @@ case class SwaggerSocket(uniqueId : String, timeoutInSeconds: Int, isConnected:
    */
   def send(r: Array[Request], l: SwaggerSocketListener): SwaggerSocket = {
 
-    val requestMessage = new Builder().requests(r).identity(identity).build
     val callback: AtomicInteger = new AtomicInteger(r.size)
 
     //	will we have race conditions here?
@@ -296,7 +321,11 @@ case class SwaggerSocket(uniqueId : String, timeoutInSeconds: Int, isConnected:
         }
       })
     }
-    w.send(serializer.serializeRequests(requestMessage))
+    if (batcher != null) {
+      batcher.add(r: _*)
+    } else {
+      w.send(serializer.serializeRequests(new Builder().requests(r).identity(identity).build))
+    }
     this
   }
 
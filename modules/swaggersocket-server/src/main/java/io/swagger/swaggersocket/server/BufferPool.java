@@ -0,0 +1,138 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of byte arrays in power of two size classes, from 512 bytes up to a maximum size. Arrays larger than the
+ * maximum are allocated and dropped as usual. The pool retains at most its capacity in bytes of released arrays; the
+ * arrays released beyond it are left to the garbage collector.
+ */
+public final class BufferPool {
+
+    private static final int MIN_SHIFT = 9;
+
+    private final int maxSize;
+    private final long capacity;
+    private final ConcurrentLinkedQueue<byte[]>[] classes;
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong outstandingBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public BufferPool(int maxSize, long capacity) {
+        if (maxSize < 1 << MIN_SHIFT) {
+            throw new IllegalArgumentException("maxSize must be at least " + (1 << MIN_SHIFT) + ": " + maxSize);
+        }
+        int n = classOf(maxSize) + 1;
+        this.maxSize = (1 << MIN_SHIFT) << (n - 1);
+        this.capacity = capacity;
+        this.classes = new ConcurrentLinkedQueue[n];
+        for (int i = 0; i < n; i++) {
+            classes[i] = new ConcurrentLinkedQueue<byte[]>();
+        }
+    }
+
+    /**
+     * An array of at least the given size, which should be handed back with {@link #release(byte[])}.
+     */
+    public byte[] acquire(int size) {
+        if (size > maxSize) {
+            misses.incrementAndGet();
+            return new byte[size];
+        }
+        int c = classOf(size);
+        byte[] b = classes[c].poll();
+        if (b != null) {
+            hits.incrementAndGet();
+            pooledBytes.addAndGet(-b.length);
+        } else {
+            misses.incrementAndGet();
+            b = new byte[(1 << MIN_SHIFT) << c];
+        }
+        outstandingBytes.addAndGet(b.length);
+        return b;
+    }
+
+    public void release(byte[] b) {
+        if (b == null || b.length > maxSize || b.length < 1 << MIN_SHIFT || Integer.bitCount(b.length) != 1) {
+            return;
+        }
+        outstandingBytes.addAndGet(-b.length);
+        if (pooledBytes.addAndGet(b.length) > capacity) {
+            pooledBytes.addAndGet(-b.length);
+            return;
+        }
+        classes[classOf(b.length)].offer(b);
+    }
+
+    /**
+     * Drop every array the pool retains.
+     */
+    public void clear() {
+        for (ConcurrentLinkedQueue<byte[]> c : classes) {
+            for (byte[] b; (b = c.poll()) != null; ) {
+                pooledBytes.addAndGet(-b.length);
+            }
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * The bytes of the arrays retained by the pool.
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * The bytes of the pooled arrays that have been acquired and not released yet.
+     */
+    public long getOutstandingBytes() {
+        return outstandingBytes.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * The share of acquisitions served by a retained array, between 0 and 1.
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    private static int classOf(int size) {
+        return Math.max(0, 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1) - MIN_SHIFT);
+    }
+}
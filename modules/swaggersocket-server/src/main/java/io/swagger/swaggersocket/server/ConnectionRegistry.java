@@ -0,0 +1,173 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the state of the SwaggerSocket connections whose transport, like long-polling, spreads them over many
+ * HTTP requests, so that state doesn't need an HttpSession.
+ * <p/>
+ * A connection is found by the Atmosphere uuid its requests carry, and by its SwaggerSocket identity once it has
+ * completed its handshake. It lives until it is closed, or until none of its requests has been seen for the
+ * time-to-live, when the sweep evicts it.
+ */
+final class ConnectionRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionRegistry.class);
+
+    private final ConcurrentHashMap<String, Connection> byUuid = new ConcurrentHashMap<String, Connection>();
+    private final ConcurrentHashMap<String, Connection> byIdentity = new ConcurrentHashMap<String, Connection>();
+    private final long ttl;
+    private ScheduledFuture<?> task;
+
+    ConnectionRegistry(long ttl, TimeUnit unit) {
+        this.ttl = unit.toNanos(ttl);
+    }
+
+    synchronized ConnectionRegistry start(ScheduledExecutorService timer) {
+        if (task == null) {
+            long period = Math.max(1000, TimeUnit.NANOSECONDS.toMillis(ttl) / 4);
+            task = timer.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    sweep();
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        byUuid.clear();
+        byIdentity.clear();
+    }
+
+    /**
+     * The connection of the Atmosphere uuid, created if it doesn't exist yet and create is true.
+     */
+    Connection lookup(String uuid, boolean create) {
+        Connection c = byUuid.get(uuid);
+        if (c == null && create) {
+            Connection nc = new Connection(uuid);
+            c = byUuid.putIfAbsent(uuid, nc);
+            if (c == null) {
+                c = nc;
+            }
+        }
+        if (c != null) {
+            c.touch();
+        }
+        return c;
+    }
+
+    /**
+     * The connection of the SwaggerSocket identity, which is also bound to the Atmosphere uuid, if it differs.
+     */
+    Connection identify(String identity, String uuid) {
+        Connection c = byIdentity.get(identity);
+        if (c != null) {
+            if (c.uuids.add(uuid)) {
+                byUuid.put(uuid, c);
+            }
+            c.touch();
+        }
+        return c;
+    }
+
+    /**
+     * The connection of the SwaggerSocket identity, if any, without recording activity on it.
+     */
+    Connection find(String identity) {
+        return byIdentity.get(identity);
+    }
+
+    void bind(Connection c, String identity) {
+        c.identity = identity;
+        byIdentity.put(identity, c);
+    }
+
+    void remove(Connection c) {
+        if (c.identity != null) {
+            byIdentity.remove(c.identity, c);
+        }
+        for (String uuid : c.uuids) {
+            byUuid.remove(uuid, c);
+        }
+    }
+
+    int size() {
+        return byUuid.size();
+    }
+
+    void sweep() {
+        long now = System.nanoTime();
+        for (Iterator<Connection> it = byUuid.values().iterator(); it.hasNext(); ) {
+            Connection c = it.next();
+            if (now - c.lastActivity > ttl) {
+                logger.debug("Evicting idle connection {}", c.identity);
+                it.remove();
+                remove(c);
+            }
+        }
+    }
+
+    final static class Connection {
+        // Every Atmosphere uuid bound to the connection, so it is removed without scanning the registry.
+        private final Set<String> uuids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        private final ConcurrentHashMap<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+        private volatile String identity;
+        private volatile long lastActivity;
+
+        private Connection(String uuid) {
+            this.uuids.add(uuid);
+            touch();
+        }
+
+        Object get(String name) {
+            return attributes.get(name);
+        }
+
+        Object putIfAbsent(String name, Object value) {
+            return attributes.putIfAbsent(name, value);
+        }
+
+        void set(String name, Object value) {
+            if (value == null) {
+                attributes.remove(name);
+            } else {
+                attributes.put(name, value);
+            }
+        }
+
+        private void touch() {
+            lastActivity = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import io.swagger.swaggersocket.protocol.Credit;
+
+/**
+ * Accounts for the {@link Credit} the client of a WebSocket connection grants, which paces the response messages of
+ * its {@link OutboundQueue}.
+ * <p/>
+ * Every message consumes one response and its size in bytes from the credit. A message that doesn't end a response
+ * is not admitted while the credit is exhausted, that is while no response or no byte is left. A message ending a
+ * response is always admitted: it may take the credit below zero, which the client's next grants make up for.
+ * <p/>
+ * The gate is not thread safe, the queue pacing it guards it.
+ */
+final class CreditGate {
+
+    private final boolean countResponses;
+    private final boolean countBytes;
+    private long responses;
+    private long bytes;
+
+    CreditGate(Credit initial) {
+        this.countResponses = initial.getResponses() > 0;
+        this.countBytes = initial.getBytes() > 0;
+        this.responses = initial.getResponses();
+        this.bytes = initial.getBytes();
+    }
+
+    /**
+     * Whether a message may be written now.
+     *
+     * @param last true if the message ends a response, or if it can't be told
+     */
+    boolean admits(boolean last) {
+        return last || (!countResponses || responses > 0) && (!countBytes || bytes > 0);
+    }
+
+    /**
+     * Take an admitted message of the given size from the credit.
+     */
+    void consume(int length) {
+        responses--;
+        bytes -= length;
+    }
+
+    /**
+     * Add the credit the client granted.
+     */
+    void grant(Credit credit) {
+        responses += Math.max(0, credit.getResponses());
+        bytes += Math.max(0, credit.getBytes());
+    }
+}
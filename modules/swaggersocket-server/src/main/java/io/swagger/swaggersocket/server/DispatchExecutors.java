@@ -0,0 +1,73 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@link ExecutorService}s backing the dispatch modes of the {@link SwaggerSocketProtocolInterceptor}.
+ */
+public final class DispatchExecutors {
+
+    private static final Logger logger = LoggerFactory.getLogger(DispatchExecutors.class);
+
+    private DispatchExecutors() {
+    }
+
+    /**
+     * A fixed pool of daemon threads, for the <code>parallel</code> dispatch mode.
+     */
+    public static ExecutorService parallel(int threads) {
+        return Executors.newFixedThreadPool(threads, new DaemonThreadFactory("SwaggerSocket-Dispatch-"));
+    }
+
+    /**
+     * One virtual thread per request, for the <code>virtual</code> dispatch mode. Virtual threads are looked up at
+     * runtime so this module still runs on older JVMs, which get an unbounded pool of daemon threads instead.
+     */
+    public static ExecutorService virtual() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (Exception e) {
+            logger.warn("Virtual threads are not available on this JVM, falling back to a cached thread pool");
+            return Executors.newCachedThreadPool(new DaemonThreadFactory("SwaggerSocket-Dispatch-"));
+        }
+    }
+
+    private final static class DaemonThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread t = new Thread(runnable, prefix + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
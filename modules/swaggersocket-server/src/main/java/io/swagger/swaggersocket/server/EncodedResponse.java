@@ -0,0 +1,57 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import io.swagger.swaggersocket.protocol.RawJson;
+import io.swagger.swaggersocket.protocol.Response;
+
+import java.io.IOException;
+
+/**
+ * A {@link Response} the interceptor already encoded in JSON, straight from the bytes of its body. It is held by the
+ * {@link ResponseCoalescer} and the {@link ResponseAggregator} like any other response, and the mapper copies its
+ * encoding into the message they write instead of serializing its fields. Only the fields those classes read are set.
+ */
+final class EncodedResponse extends Response implements JsonSerializable {
+
+    private final RawJson json;
+
+    EncodedResponse(String uuid, boolean last, int status, byte[] json) {
+        setUuid(uuid);
+        setLast(last);
+        setStatusCode(status);
+        this.json = new RawJson(json);
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider provider) throws IOException {
+        json.serialize(gen, provider);
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider provider, TypeSerializer typeSer) throws IOException {
+        serialize(gen, provider);
+    }
+
+    @Override
+    public String toString() {
+        return json.toString();
+    }
+}
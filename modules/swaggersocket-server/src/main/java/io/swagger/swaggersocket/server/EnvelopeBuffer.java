@@ -0,0 +1,70 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The buffer an outbound message is encoded into. Buffers are pooled rather than bound to a thread, so the many
+ * threads a dispatch executor may run don't each retain one. At most {@link #MAX_POOLED} buffers are kept, and a
+ * buffer a large message made grow past {@link #MAX_RETAINED} bytes shrinks back when it is released.
+ */
+final class EnvelopeBuffer extends ByteArrayOutputStream {
+
+    private static final int INITIAL = 1024;
+    private static final int MAX_RETAINED = 64 * 1024;
+    static final int MAX_POOLED = 64;
+
+    private static final ConcurrentLinkedQueue<EnvelopeBuffer> pool = new ConcurrentLinkedQueue<EnvelopeBuffer>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    private EnvelopeBuffer() {
+        super(INITIAL);
+    }
+
+    /**
+     * A pooled buffer, or a new one if none is free. It must be handed back with {@link #release()}.
+     */
+    static EnvelopeBuffer acquire() {
+        EnvelopeBuffer b = pool.poll();
+        if (b == null) {
+            return new EnvelopeBuffer();
+        }
+        pooled.decrementAndGet();
+        return b;
+    }
+
+    /**
+     * The number of free buffers in the pool.
+     */
+    static int pooled() {
+        return pooled.get();
+    }
+
+    void release() {
+        reset();
+        if (buf.length > MAX_RETAINED) {
+            buf = new byte[INITIAL];
+        }
+        if (pooled.incrementAndGet() <= MAX_POOLED) {
+            pool.offer(this);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+}
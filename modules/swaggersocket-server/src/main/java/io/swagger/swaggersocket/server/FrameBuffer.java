@@ -0,0 +1,289 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The frames an {@link OutboundQueue} or a {@link Mailbox} holds, bounded by a maximum number of bytes and messages.
+ * <p/>
+ * A frame that doesn't fit is handled by the {@link OutboundQueue.Policy}. Frames that end a response are never
+ * dropped, and neither is part of a response: the response fails as a whole instead. The frames ending failed
+ * responses are not counted, so failing a response always makes room.
+ * <p/>
+ * The buffer is not thread safe, its owner guards it with the monitor it is given, which a producer blocked by the
+ * policy waits on. The owner notifies it whenever it takes frames out.
+ */
+final class FrameBuffer implements Iterable<FrameBuffer.Frame> {
+
+    private static final Logger logger = LoggerFactory.getLogger(FrameBuffer.class);
+
+    private final Object lock;
+    private final String name;
+    private final FrameWriter.Failure failure;
+    private final byte[] closeFrame;
+    private final long maxBytes;
+    private final int maxMessages;
+    private final OutboundQueue.Policy policy;
+    private final long blockTimeout;
+    private final LinkedList<Frame> frames = new LinkedList<Frame>();
+    private final Set<String> failed = new HashSet<String>();
+    private long bytes;
+    private int messages;
+    private boolean closing;
+
+    /**
+     * @param lock the monitor of the owner
+     * @param name what the buffer is called in the logs and errors
+     */
+    FrameBuffer(Object lock, String name, FrameWriter.Failure failure, byte[] closeFrame, long maxBytes, int maxMessages,
+                OutboundQueue.Policy policy, long blockTimeout, TimeUnit unit) {
+        this.lock = lock;
+        this.name = name;
+        this.failure = failure;
+        this.closeFrame = closeFrame;
+        this.maxBytes = maxBytes;
+        this.maxMessages = maxMessages;
+        this.policy = policy;
+        this.blockTimeout = unit.toNanos(blockTimeout);
+    }
+
+    boolean isWritable() {
+        return !closing && bytes < maxBytes && messages < maxMessages;
+    }
+
+    /**
+     * Whether the policy has closed the connection, leaving the close frame alone in the buffer.
+     */
+    boolean isClosing() {
+        return closing;
+    }
+
+    boolean isEmpty() {
+        return frames.isEmpty();
+    }
+
+    int size() {
+        return frames.size();
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    boolean fits(int length) {
+        return !closing && (messages == 0 || bytes + length <= maxBytes && messages < maxMessages);
+    }
+
+    /**
+     * Whether the frame belongs to a failed response, which is over with its last frame.
+     */
+    boolean failed(String uuid, boolean last) {
+        if (uuid == null || !failed.contains(uuid)) {
+            return false;
+        }
+        logger.trace("Dropping a frame of failed response {}", uuid);
+        if (last) {
+            failed.remove(uuid);
+        }
+        return true;
+    }
+
+    void add(Frame f) {
+        frames.addLast(f);
+        counted(f);
+    }
+
+    /**
+     * Put a frame taken out back in front of the others.
+     */
+    void addFirst(Frame f) {
+        frames.addFirst(f);
+        counted(f);
+    }
+
+    Frame peekFirst() {
+        return frames.peekFirst();
+    }
+
+    Frame pollFirst() {
+        Frame f = frames.pollFirst();
+        if (f != null) {
+            removed(f);
+        }
+        return f;
+    }
+
+    /**
+     * Take the frame out, which must be in the buffer.
+     */
+    void remove(Frame f) {
+        frames.remove(f);
+        removed(f);
+    }
+
+    void clear() {
+        frames.clear();
+        bytes = 0;
+        messages = 0;
+    }
+
+    /**
+     * The frames, oldest first, which must not be removed while iterating.
+     */
+    @Override
+    public Iterator<Frame> iterator() {
+        return frames.iterator();
+    }
+
+    /**
+     * Apply the policy to a frame which doesn't fit. Closing leaves the close frame alone in the buffer.
+     *
+     * @return false if the frame must not be added
+     */
+    boolean makeRoom(int length, String uuid, boolean last) throws IOException {
+        if (closing) {
+            logger.debug("Dropping a frame of {} bytes, {} is closing", length, name);
+            return false;
+        }
+
+        switch (policy) {
+            case BLOCK:
+                long deadline = System.nanoTime() + blockTimeout;
+                try {
+                    for (long remaining = blockTimeout; !fits(length); remaining = deadline - System.nanoTime()) {
+                        if (closing) {
+                            return false;
+                        }
+                        if (remaining <= 0) {
+                            throw new IOException(name + " still full after "
+                                    + TimeUnit.NANOSECONDS.toMillis(blockTimeout) + " ms");
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for room in " + name);
+                }
+                return true;
+            case DROP:
+                for (Frame f; !fits(length) && (f = inProgress()) != null; ) {
+                    if (f.uuid != null) {
+                        fail(f.uuid);
+                    } else {
+                        remove(f);
+                        logger.debug("Dropping a frame of {} bytes held by {}", f.data.length, name);
+                    }
+                }
+                if (!fits(length) && !last) {
+                    if (uuid != null) {
+                        fail(uuid);
+                    } else {
+                        logger.debug("Dropping a frame of {} bytes for {}", length, name);
+                    }
+                    return false;
+                }
+                return true;
+            default:
+                logger.warn("{} full, closing the connection", name);
+                clear();
+                frames.add(new Frame(closeFrame, null, true, false, false, System.nanoTime()));
+                closing = true;
+                lock.notifyAll();
+                return false;
+        }
+    }
+
+    /**
+     * The oldest frame which doesn't end its response.
+     */
+    private Frame inProgress() {
+        for (Frame f : frames) {
+            if (!f.last) {
+                return f;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drop the frames of the response, and the following ones unless its last frame was held, and end it with its
+     * failure.
+     */
+    private void fail(String uuid) throws IOException {
+        boolean ended = false;
+        for (Iterator<Frame> it = frames.iterator(); it.hasNext(); ) {
+            Frame f = it.next();
+            if (uuid.equals(f.uuid)) {
+                it.remove();
+                removed(f);
+                ended |= f.last;
+            }
+        }
+        if (!ended) {
+            failed.add(uuid);
+        }
+        add(new Frame(failure.frame(uuid), null, true, false, true, System.nanoTime()));
+        logger.debug("{} full, failing response {}", name, uuid);
+    }
+
+    private void counted(Frame f) {
+        if (f.counted) {
+            bytes += f.data.length;
+            messages++;
+        }
+    }
+
+    private void removed(Frame f) {
+        if (f.counted) {
+            bytes -= f.data.length;
+            messages--;
+        }
+    }
+
+    final static class Frame {
+        final byte[] data;
+        final String uuid;
+        final boolean last;
+        final boolean counted;
+        final boolean paced;
+        final long createdAt;
+
+        /**
+         * @param uuid    the uuid of the response the frame belongs to, null if it carries none or several
+         * @param last    true if the frame ends a response, or if it can't be told
+         * @param counted whether the frame counts against the maximum
+         * @param paced   whether the credit of the client holds the frame
+         */
+        Frame(byte[] data, String uuid, boolean last, boolean counted, boolean paced, long createdAt) {
+            this.data = data;
+            this.uuid = uuid;
+            this.last = last;
+            this.counted = counted;
+            this.paced = paced;
+            this.createdAt = createdAt;
+        }
+    }
+}
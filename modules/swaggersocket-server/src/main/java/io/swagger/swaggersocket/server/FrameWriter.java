@@ -0,0 +1,36 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.atmosphere.cpr.AtmosphereResource;
+
+import java.io.IOException;
+
+/**
+ * Writes the frames an {@link OutboundQueue} or a {@link Mailbox} lets go to the connection of an
+ * {@link AtmosphereResource}.
+ */
+interface FrameWriter {
+
+    void write(AtmosphereResource r, byte[] frame) throws IOException;
+
+    /**
+     * Encodes the frame which ends a response the queue or the mailbox failed, instead of dropping part of its body.
+     */
+    interface Failure {
+        byte[] frame(String uuid) throws IOException;
+    }
+}
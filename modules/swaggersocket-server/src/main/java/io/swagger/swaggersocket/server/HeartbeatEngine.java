@@ -0,0 +1,358 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.AtmosphereResourceEvent;
+import org.atmosphere.cpr.AtmosphereResourceEventListenerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.swagger.swaggersocket.protocol.Heartbeat;
+import io.swagger.swaggersocket.protocol.ProtocolTracer;
+import io.swagger.swaggersocket.protocol.ProtocolTracers;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends the SwaggerSocket heartbeat to every live connection of this node.
+ * <p/>
+ * Connections are spread over the slots of a timer wheel which is advanced by a single timer task, so every
+ * connection is visited exactly once per interval and receives its own precomputed heartbeat frame. The frame is
+ * encoded when the connection registers, so the timestamp it carries is the time of registration and stays the same
+ * for every heartbeat of the connection. Closed connections are dropped from the registry as they are met. When
+ * adaptive mode is on, a connection that carried outbound traffic during the last interval is skipped, as that
+ * traffic already proves it alive.
+ * <p/>
+ * The heartbeats are written by a small pool of threads of their own, so a slow connection never holds up the timer,
+ * which the other tasks of the protocol share, nor the heartbeats of the other connections. A connection whose
+ * previous heartbeat is still being written skips the next; once that write has lasted a whole interval it is
+ * cancelled and the connection dropped from the registry.
+ */
+public class HeartbeatEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeartbeatEngine.class);
+
+    /**
+     * The number of threads writing heartbeats, which as many stalled connections may hold up for an interval.
+     */
+    static final int WRITERS = 4;
+
+    private final ScheduledExecutorService timer;
+    private final FrameWriter frames;
+    private final ExecutorService writer = Executors.newFixedThreadPool(WRITERS, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread t = new Thread(runnable, "SwaggerSocket-Heartbeat-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    private final ObjectMapper mapper;
+    private final long interval;
+    private final boolean adaptive;
+    private final ConcurrentHashMap<String, Entry> connections = new ConcurrentHashMap<String, Entry>();
+    private final ConcurrentHashMap<String, Entry>[] wheel;
+    private final AtomicInteger next = new AtomicInteger();
+    private SwaggerSocketMetrics.Counter beats = SwaggerSocketMetrics.NONE.counter(SwaggerSocketMetrics.HEARTBEATS);
+    private ScheduledFuture<?> task;
+    private int cursor;
+
+    public HeartbeatEngine(ScheduledExecutorService timer, ObjectMapper mapper, long interval, TimeUnit unit, int slots, boolean adaptive) {
+        this(timer, SwaggerSocketProtocolInterceptor.CONTROL_WRITER, mapper, interval, unit, slots, adaptive);
+    }
+
+    @SuppressWarnings("unchecked")
+    HeartbeatEngine(ScheduledExecutorService timer, FrameWriter frames, ObjectMapper mapper, long interval, TimeUnit unit,
+                    int slots, boolean adaptive) {
+        if (slots < 1) {
+            throw new IllegalArgumentException("slots must be positive: " + slots);
+        }
+        this.timer = timer;
+        this.frames = frames;
+        this.mapper = mapper;
+        this.interval = unit.toNanos(interval);
+        this.adaptive = adaptive;
+        this.wheel = new ConcurrentHashMap[slots];
+        for (int i = 0; i < slots; i++) {
+            wheel[i] = new ConcurrentHashMap<String, Entry>();
+        }
+    }
+
+    /**
+     * Count the heartbeats sent in the given {@link SwaggerSocketMetrics}.
+     */
+    public HeartbeatEngine metrics(SwaggerSocketMetrics metrics) {
+        this.beats = metrics.counter(SwaggerSocketMetrics.HEARTBEATS);
+        return this;
+    }
+
+    public synchronized HeartbeatEngine start() {
+        if (task == null) {
+            long tick = Math.max(1, TimeUnit.NANOSECONDS.toMillis(interval) / wheel.length);
+            task = timer.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    tick();
+                }
+            }, tick, tick, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        writer.shutdownNow();
+        connections.clear();
+        for (ConcurrentHashMap<String, Entry> slot : wheel) {
+            slot.clear();
+        }
+    }
+
+    /**
+     * Register the {@link AtmosphereResource} that heartbeats of the given identity must be written to. A long-polling
+     * connection registers every suspended poll, which replaces the previously registered one.
+     */
+    public void register(String identity, AtmosphereResource r) {
+        register(identity, r, mapper);
+    }
+
+    /**
+     * Register the {@link AtmosphereResource} of the identity, whose heartbeats are encoded with the given
+     * {@link ObjectMapper} when it is first registered. Their timestamp is the time of that registration.
+     */
+    public void register(final String identity, AtmosphereResource r, ObjectMapper encoder) {
+        if (identity == null) {
+            return;
+        }
+
+        Entry e = connections.get(identity);
+        if (e == null) {
+            Entry ne;
+            try {
+                ne = new Entry(identity, encoder.writeValueAsBytes(new Heartbeat(String.valueOf(System.nanoTime()), identity)),
+                        (next.getAndIncrement() & Integer.MAX_VALUE) % wheel.length);
+            } catch (IOException ex) {
+                logger.warn("Unable to create the heartbeat of {}", identity, ex);
+                return;
+            }
+            e = connections.putIfAbsent(identity, ne);
+            if (e == null) {
+                e = ne;
+                wheel[e.slot].put(identity, e);
+            }
+        }
+        AtmosphereResource previous = e.resource;
+        e.resource = r;
+        e.touch();
+
+        // Polls and WebSockets register again and again, each resource only needs to be listened to once.
+        if (previous != r) {
+            r.addEventListener(new AtmosphereResourceEventListenerAdapter() {
+                @Override
+                public void onDisconnect(AtmosphereResourceEvent event) {
+                    unregister(identity, event.getResource());
+                }
+            });
+        }
+    }
+
+    /**
+     * Remove the identity from the registry, unless another {@link AtmosphereResource} has been registered since.
+     */
+    public void unregister(String identity, AtmosphereResource r) {
+        Entry e = identity == null ? null : connections.get(identity);
+        if (e != null && (r == null || e.resource == r)) {
+            remove(e);
+        }
+    }
+
+    /**
+     * Record outbound traffic for the identity, which postpones its next heartbeat when adaptive mode is on.
+     */
+    public void touch(String identity) {
+        if (adaptive && identity != null) {
+            Entry e = connections.get(identity);
+            if (e != null) {
+                e.touch();
+            }
+        }
+    }
+
+    public int size() {
+        return connections.size();
+    }
+
+    /**
+     * Whether the identity has a live connection.
+     */
+    boolean isLive(String identity) {
+        return connections.containsKey(identity);
+    }
+
+    /**
+     * The live connections.
+     */
+    Collection<Entry> entries() {
+        return connections.values();
+    }
+
+    /**
+     * How long the heartbeat of the connection is overdue, in nanoseconds, zero if it has been alive within the last
+     * interval.
+     */
+    long lag(Entry e, long now) {
+        return Math.max(0, now - e.lastActivity - interval);
+    }
+
+    void tick() {
+        ConcurrentHashMap<String, Entry> slot = wheel[cursor];
+        cursor = (cursor + 1) % wheel.length;
+
+        long now = System.nanoTime();
+        for (Iterator<Entry> it = slot.values().iterator(); it.hasNext(); ) {
+            Entry e = it.next();
+            AtmosphereResource r = e.resource;
+            try {
+                if (r == null || r.isCancelled()) {
+                    remove(e);
+                } else if (r.transport() != AtmosphereResource.TRANSPORT.WEBSOCKET) {
+                    if (!r.isSuspended()) {
+                        // The poll has been answered and the client has not come back for two intervals.
+                        if (now - e.lastActivity > 2 * interval) {
+                            remove(e);
+                        }
+                    } else if (now - e.lastActivity >= interval) {
+                        // A heartbeat resumes the poll, so it is only sent to polls idle for a full interval.
+                        beat(e, r, now);
+                    }
+                } else if (!adaptive || now - e.lastActivity >= interval) {
+                    beat(e, r, now);
+                }
+            } catch (Exception ex) {
+                logger.debug("Heartbeat failed for {}", e.identity, ex);
+                remove(e);
+            }
+        }
+    }
+
+    /**
+     * Hand the heartbeat of the connection to the writing threads, unless its previous one is still pending. A write
+     * pending for a whole interval is cancelled and the connection dropped.
+     */
+    private void beat(final Entry e, final AtmosphereResource r, long now) {
+        if (!e.beating.compareAndSet(false, true)) {
+            long started = e.writing;
+            if (started != 0 && now - started >= interval) {
+                logger.debug("Heartbeat of {} timed out", e.identity);
+                Future<?> pending = e.pending;
+                if (pending != null) {
+                    pending.cancel(true);
+                }
+                remove(e);
+            } else {
+                logger.trace("Heartbeat {} still pending", e.identity);
+            }
+            return;
+        }
+        try {
+            e.pending = writer.submit(new Runnable() {
+                @Override
+                public void run() {
+                    e.writing = System.nanoTime();
+                    try {
+                        write(e, r);
+                    } catch (Exception ex) {
+                        logger.debug("Heartbeat failed for {}", e.identity, ex);
+                        remove(e);
+                    } finally {
+                        e.writing = 0;
+                        e.beating.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // Stopped
+            e.beating.set(false);
+        }
+    }
+
+    private void write(Entry e, AtmosphereResource r) throws IOException {
+        logger.trace("Heartbeat {}", e.identity);
+        ProtocolTracer tracer = ProtocolTracers.get();
+        Object traced = tracer.begin(ProtocolTracer.Operation.HEARTBEAT);
+        frames.write(r, e.frame);
+        beats.increment();
+        if (traced != null) {
+            tracer.heartbeat(traced, false, e.identity);
+        }
+        e.touch();
+    }
+
+    private void remove(Entry e) {
+        connections.remove(e.identity, e);
+        wheel[e.slot].remove(e.identity, e);
+    }
+
+    final static class Entry {
+        private final String identity;
+        private final byte[] frame;
+        private final int slot;
+        private final AtomicBoolean beating = new AtomicBoolean();
+        private volatile Future<?> pending;
+        private volatile long writing;
+        private volatile AtmosphereResource resource;
+        private volatile long lastActivity;
+
+        private Entry(String identity, byte[] frame, int slot) {
+            this.identity = identity;
+            this.frame = frame;
+            this.slot = slot;
+        }
+
+        String identity() {
+            return identity;
+        }
+
+        AtmosphereResource resource() {
+            return resource;
+        }
+
+        private void touch() {
+            lastActivity = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Bounds the requests of a connection running at once on the dispatch executor, without ever making the thread
+ * reading the messages of the connection wait: the requests past the limit are queued and run, in order, as the
+ * running ones complete, and those past the backlog are refused.
+ */
+final class InFlightLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(InFlightLimiter.class);
+
+    private final Executor executor;
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final ArrayDeque<Runnable> queued = new ArrayDeque<Runnable>();
+    private int running;
+
+    InFlightLimiter(Executor executor, int maxInFlight, int maxQueued) {
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Run the task on the executor, or queue it until a running one completes.
+     *
+     * @return false if the task has been refused, the backlog being full
+     */
+    boolean submit(Runnable task) {
+        synchronized (this) {
+            if (running >= maxInFlight) {
+                if (queued.size() >= maxQueued) {
+                    return false;
+                }
+                queued.addLast(task);
+                return true;
+            }
+            running++;
+        }
+        execute(task);
+        return true;
+    }
+
+    synchronized int running() {
+        return running;
+    }
+
+    synchronized int queued() {
+        return queued.size();
+    }
+
+    /**
+     * Run the task, on the current thread if the executor rejects it, and then the next queued one.
+     */
+    private void execute(final Runnable task) {
+        Runnable r = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    completed();
+                }
+            }
+        };
+        try {
+            executor.execute(r);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Dispatch executor rejected a request, running it on the current thread");
+            r.run();
+        }
+    }
+
+    private void completed() {
+        Runnable next;
+        synchronized (this) {
+            next = queued.pollFirst();
+            if (next == null) {
+                running--;
+                return;
+            }
+        }
+        execute(next);
+    }
+}
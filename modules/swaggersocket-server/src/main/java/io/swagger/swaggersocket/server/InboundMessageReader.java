@@ -0,0 +1,176 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.swagger.swaggersocket.protocol.Close;
+import io.swagger.swaggersocket.protocol.Credit;
+import io.swagger.swaggersocket.protocol.Encodings;
+import io.swagger.swaggersocket.protocol.Handshake;
+import io.swagger.swaggersocket.protocol.Request;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Decodes an inbound SwaggerSocket message in a single pass over its bytes. The message type is identified by its
+ * first field and every {@link Request} of a request message is handed to the {@link Handler} as soon as its array
+ * element has been parsed, so a large batch starts executing before the tail of the frame has been decoded.
+ */
+final class InboundMessageReader {
+
+    /**
+     * Receives the parts of an inbound message, in the order they are decoded.
+     */
+    interface Handler {
+
+        void onHandshake(Handshake handshake) throws IOException;
+
+        void onClose(Close close) throws IOException;
+
+        void onCredit(Credit credit) throws IOException;
+
+        /**
+         * Invoked once with the identity of a request message, before any of its {@link Request} is delivered, or
+         * with null if the message has none.
+         *
+         * @return false to skip the requests of the message
+         */
+        boolean onIdentity(String identity) throws IOException;
+
+        void onRequest(Request request) throws IOException;
+
+        /**
+         * Invoked after the last {@link Request} of a request message.
+         */
+        void onRequestsEnd() throws IOException;
+    }
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper smileMapper;
+
+    InboundMessageReader(ObjectMapper jsonMapper, ObjectMapper smileMapper) {
+        this.jsonMapper = jsonMapper;
+        this.smileMapper = smileMapper;
+    }
+
+    /**
+     * Decode the message, in JSON or in Smile when it starts with the Smile header.
+     *
+     * @return false if the stream was empty
+     */
+    boolean read(InputStream in, Handler handler) throws IOException {
+        PushbackInputStream pin = new PushbackInputStream(in, 3);
+        byte[] header = new byte[3];
+        int n = 0;
+        for (int c; n < header.length && (c = pin.read(header, n, header.length - n)) != -1; ) {
+            n += c;
+        }
+        pin.unread(header, 0, n);
+
+        ObjectMapper mapper = Encodings.isSmile(header, 0, n) ? smileMapper : jsonMapper;
+        JsonParser parser = mapper.getFactory().createParser(pin);
+        try {
+            if (parser.nextToken() == null) {
+                return false;
+            }
+            expect(parser, JsonToken.START_OBJECT);
+            if (parser.nextToken() != JsonToken.FIELD_NAME) {
+                throw new JsonParseException("Empty SwaggerSocket message", parser.getCurrentLocation());
+            }
+
+            String name = parser.getCurrentName();
+            if ("handshake".equals(name)) {
+                parser.nextToken();
+                handler.onHandshake(mapper.readValue(parser, Handshake.class));
+            } else if ("close".equals(name)) {
+                parser.nextToken();
+                handler.onClose(mapper.readValue(parser, Close.class));
+            } else if ("credit".equals(name)) {
+                parser.nextToken();
+                handler.onCredit(mapper.readValue(parser, Credit.class));
+            } else {
+                readRequests(mapper, parser, handler);
+            }
+            return true;
+        } finally {
+            parser.close();
+        }
+    }
+
+    private void readRequests(ObjectMapper mapper, JsonParser parser, Handler handler) throws IOException {
+        // Requests are buffered only if a client sends them before its identity.
+        List<Request> pending = null;
+        boolean identified = false;
+
+        for (; parser.getCurrentToken() == JsonToken.FIELD_NAME; parser.nextToken()) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("identity".equals(name)) {
+                identified = true;
+                if (!handler.onIdentity(value == JsonToken.VALUE_NULL ? null : parser.getText())) {
+                    return;
+                }
+                if (pending != null) {
+                    for (Request request : pending) {
+                        handler.onRequest(request);
+                    }
+                    pending = null;
+                }
+            } else if ("requests".equals(name) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    Request request = mapper.readValue(parser, Request.class);
+                    if (identified) {
+                        handler.onRequest(request);
+                    } else {
+                        if (pending == null) {
+                            pending = new LinkedList<Request>();
+                        }
+                        pending.add(request);
+                    }
+                }
+                expect(parser, JsonToken.END_ARRAY);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (!identified) {
+            if (!handler.onIdentity(null)) {
+                return;
+            }
+            if (pending != null) {
+                for (Request request : pending) {
+                    handler.onRequest(request);
+                }
+            }
+        }
+        handler.onRequestsEnd();
+    }
+
+    private static void expect(JsonParser parser, JsonToken token) throws JsonParseException {
+        if (parser.getCurrentToken() != token) {
+            throw new JsonParseException("Expected " + token + " but was " + parser.getCurrentToken(), parser.getCurrentLocation());
+        }
+    }
+}
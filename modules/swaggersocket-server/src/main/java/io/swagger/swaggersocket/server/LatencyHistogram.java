@@ -0,0 +1,123 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of non-negative values with a precision of two significant decimal digits, in the way of
+ * HdrHistogram: the values below 128 are counted exactly, the larger ones in buckets whose width doubles every 64
+ * buckets. Recording is a couple of atomic increments and never allocates. Values above the highest trackable one are
+ * counted in its bucket.
+ */
+public final class LatencyHistogram implements SwaggerSocketMetrics.Recorder {
+
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_COUNT = SUB_COUNT >> 1;
+
+    private final long highest;
+    private final AtomicLongArray buckets;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * A histogram tracking up to a minute in nanoseconds.
+     */
+    public LatencyHistogram() {
+        this(TimeUnit.MINUTES.toNanos(1));
+    }
+
+    public LatencyHistogram(long highest) {
+        if (highest < 1) {
+            throw new IllegalArgumentException("highest must be positive: " + highest);
+        }
+        this.highest = highest;
+        this.buckets = new AtomicLongArray(index(highest) + 1);
+    }
+
+    @Override
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(index(Math.min(value, highest)));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        for (long m = max.get(); value > m && !max.compareAndSet(m, value); m = max.get()) {
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    public long getMedian() {
+        return getValueAtPercentile(50);
+    }
+
+    public long get99thPercentile() {
+        return getValueAtPercentile(99);
+    }
+
+    /**
+     * The value below which the given percentage of the recorded values fall, within the precision of the histogram.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(highestEquivalent(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    static int index(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return SUB_COUNT + (shift - 1) * HALF_COUNT + (int) (value >>> shift) - HALF_COUNT;
+    }
+
+    static long highestEquivalent(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_COUNT) / HALF_COUNT + 1;
+        long top = (index - SUB_COUNT) % HALF_COUNT + HALF_COUNT;
+        return ((top + 1) << shift) - 1;
+    }
+}
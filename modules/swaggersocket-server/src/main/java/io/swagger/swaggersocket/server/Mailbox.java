@@ -0,0 +1,171 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.atmosphere.cpr.AtmosphereResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers the messages of a long-polling connection to its polls without blocking the threads writing them.
+ * <p/>
+ * A message answers the oldest suspended poll, or is kept until a poll arrives if none is waiting. Every poll takes
+ * a single message. Kept messages expire after the time-to-live. A message that would take the kept messages over
+ * the maximum number of bytes or messages is handled by the {@link OutboundQueue.Policy}, as described by
+ * {@link FrameBuffer}, or refused if there is none.
+ */
+final class Mailbox implements Writability {
+
+    private static final Logger logger = LoggerFactory.getLogger(Mailbox.class);
+
+    private final LinkedList<AtmosphereResource> polls = new LinkedList<AtmosphereResource>();
+    private final FrameBuffer messages;
+    private final FrameWriter writer;
+    private final OutboundQueue.Policy policy;
+    private final long ttl;
+
+    Mailbox(FrameWriter writer, FrameWriter.Failure failure, long maxBytes, int maxMessages, OutboundQueue.Policy policy,
+            byte[] closeFrame, long blockTimeout, long ttl, TimeUnit unit) {
+        this.writer = writer;
+        this.policy = policy;
+        this.messages = new FrameBuffer(this, "Long-polling mailbox", failure, closeFrame, maxBytes, maxMessages, policy,
+                blockTimeout, unit);
+        this.ttl = unit.toNanos(ttl);
+    }
+
+    /**
+     * Write the message to a waiting poll, or keep it for the next one.
+     *
+     * @param uuid the uuid of the response the message belongs to, null if it carries none or several
+     * @param last true if the message ends a response, or if it can't be told
+     */
+    void deliver(byte[] data, String uuid, boolean last) throws IOException {
+        for (;;) {
+            AtmosphereResource poll;
+            synchronized (this) {
+                if (messages.failed(uuid, last)) {
+                    return;
+                }
+                poll = nextPoll();
+                if (poll == null) {
+                    long now = System.nanoTime();
+                    expire(now);
+                    if (!messages.fits(data.length)) {
+                        if (policy == null) {
+                            throw new IOException("Long-polling mailbox full, " + messages.bytes()
+                                    + " bytes are waiting for a poll");
+                        }
+                        // Making room may fail the response of the message.
+                        if (!messages.makeRoom(data.length, uuid, last) || messages.failed(uuid, last)) {
+                            return;
+                        }
+                        if (policy == OutboundQueue.Policy.BLOCK) {
+                            // A poll may have arrived while waiting.
+                            continue;
+                        }
+                    }
+                    messages.add(new FrameBuffer.Frame(data, uuid, last, true, false, now));
+                    return;
+                }
+            }
+            if (write(poll, data)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Answer the suspended poll with the oldest kept message, or keep it waiting for the next message.
+     */
+    void poll(AtmosphereResource r) {
+        FrameBuffer.Frame m;
+        synchronized (this) {
+            expire(System.nanoTime());
+            m = messages.pollFirst();
+            notifyAll();
+            if (m == null) {
+                for (Iterator<AtmosphereResource> it = polls.iterator(); it.hasNext(); ) {
+                    if (!it.next().isSuspended()) {
+                        it.remove();
+                    }
+                }
+                polls.addLast(r);
+                return;
+            }
+        }
+
+        if (!write(r, m.data)) {
+            // The poll is gone, the message goes back for the next one.
+            synchronized (this) {
+                messages.addFirst(m);
+            }
+        }
+    }
+
+    synchronized int size() {
+        return messages.size();
+    }
+
+    /**
+     * The number of bytes waiting for a poll.
+     */
+    synchronized long bytes() {
+        return messages.bytes();
+    }
+
+    @Override
+    public synchronized boolean isWritable() {
+        return messages.isWritable();
+    }
+
+    /**
+     * The oldest poll which is still suspended, e.g. not answered by a heartbeat or timed out.
+     */
+    private AtmosphereResource nextPoll() {
+        AtmosphereResource r;
+        while ((r = polls.pollFirst()) != null) {
+            if (r.isSuspended()) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    private void expire(long now) {
+        FrameBuffer.Frame m;
+        while ((m = messages.peekFirst()) != null && now - m.createdAt > ttl) {
+            messages.pollFirst();
+            logger.debug("Dropping a message of {} bytes not polled in time", m.data.length);
+        }
+    }
+
+    private boolean write(AtmosphereResource r, byte[] data) {
+        logger.trace("Resuming {}", r.uuid());
+        try {
+            writer.write(r, data);
+            r.resume();
+            return true;
+        } catch (IOException ex) {
+            logger.warn("", ex);
+            return false;
+        }
+    }
+}
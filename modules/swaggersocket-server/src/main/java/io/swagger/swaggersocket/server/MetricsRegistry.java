@@ -0,0 +1,114 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The default {@link SwaggerSocketMetrics}, which keeps the metrics in memory. Counters are striped over threads so
+ * concurrent increments don't contend, and recorders are {@link LatencyHistogram}s.
+ */
+public class MetricsRegistry implements SwaggerSocketMetrics, MetricsRegistryMXBean {
+
+    private final ConcurrentMap<String, StripedCounter> counters = new ConcurrentHashMap<String, StripedCounter>();
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+
+    @Override
+    public Counter counter(String name) {
+        StripedCounter c = counters.get(name);
+        if (c == null) {
+            StripedCounter nc = new StripedCounter();
+            c = counters.putIfAbsent(name, nc);
+            if (c == null) {
+                c = nc;
+            }
+        }
+        return c;
+    }
+
+    @Override
+    public Recorder recorder(String name) {
+        return histogram(name);
+    }
+
+    @Override
+    public void gauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram h = histograms.get(name);
+        if (h == null) {
+            LatencyHistogram nh = new LatencyHistogram();
+            h = histograms.putIfAbsent(name, nh);
+            if (h == null) {
+                h = nh;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * The current values of the counters and of the gauges, by name.
+     */
+    @Override
+    public Map<String, Long> getValues() {
+        Map<String, Long> values = new TreeMap<String, Long>();
+        for (Map.Entry<String, StripedCounter> e : counters.entrySet()) {
+            values.put(e.getKey(), e.getValue().sum());
+        }
+        for (Map.Entry<String, Gauge> e : gauges.entrySet()) {
+            values.put(e.getKey(), e.getValue().value());
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, LatencyHistogram> getHistograms() {
+        return new TreeMap<String, LatencyHistogram>(histograms);
+    }
+
+    private final static class StripedCounter implements Counter {
+        private static final int STRIPES = 16;
+        // Keeps every stripe on its own cache line.
+        private static final int PADDING = 8;
+
+        private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+        @Override
+        public void increment() {
+            add(1);
+        }
+
+        @Override
+        public void add(long delta) {
+            cells.addAndGet((int) (Thread.currentThread().getId() & (STRIPES - 1)) * PADDING, delta);
+        }
+
+        private long sum() {
+            long sum = 0;
+            for (int i = 0; i < STRIPES; i++) {
+                sum += cells.get(i * PADDING);
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import java.util.Map;
+
+/**
+ * The JMX view of a {@link MetricsRegistry}, registered when the JMX option of the
+ * {@link SwaggerSocketProtocolInterceptor} is on.
+ */
+public interface MetricsRegistryMXBean {
+
+    /**
+     * The current values of the counters and of the gauges, by name.
+     */
+    Map<String, Long> getValues();
+
+    /**
+     * The count, mean, median, 99th percentile and maximum of every recorder, by name.
+     */
+    Map<String, LatencyHistogram> getHistograms();
+}
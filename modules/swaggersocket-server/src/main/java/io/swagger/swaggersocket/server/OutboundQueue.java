@@ -0,0 +1,210 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import io.swagger.swaggersocket.protocol.Credit;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the frames a WebSocket connection has produced and not written yet.
+ * <p/>
+ * Frames are written in order by one thread at a time: the thread offering a frame to an idle queue writes it, along
+ * with the frames other threads queue meanwhile, while those threads return at once. When the queued frames reach
+ * the maximum number of bytes or messages, the {@link Policy} applies, as described by {@link FrameBuffer}.
+ * <p/>
+ * A queue {@link #pace(Credit) paced} by the credit of its client holds the frames of responses past the credit, in
+ * order, until the client grants more. Held frames count against the maximum like the others, so a client that
+ * stops granting credit makes the queue full rather than growing it. Control frames, like heartbeats, pass the held
+ * frames.
+ */
+final class OutboundQueue implements Writability {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboundQueue.class);
+
+    /**
+     * What happens to a frame offered to a full queue.
+     */
+    enum Policy {
+        /** The producer waits until the queue has room, or fails after the block timeout. */
+        BLOCK,
+        /**
+         * The oldest responses in progress fail to make room, or the response of the frame itself if there isn't
+         * enough. A failed response loses its queued and following frames, and ends with a 503 response instead.
+         */
+        DROP,
+        /** The queued frames are dropped and the connection is closed after a status message. */
+        CLOSE;
+
+        /**
+         * The policy of the given name, or null for <code>none</code>.
+         */
+        static Policy of(String name) {
+            name = name.trim().toUpperCase();
+            return "NONE".equals(name) ? null : valueOf(name);
+        }
+    }
+
+    private final AtmosphereResource r;
+    private final FrameWriter writer;
+    private final FrameBuffer frames;
+    private CreditGate gate;
+    private boolean draining;
+
+    OutboundQueue(AtmosphereResource r, FrameWriter writer, FrameWriter.Failure failure, byte[] closeFrame,
+                  long maxBytes, int maxMessages, Policy policy, long blockTimeout, TimeUnit unit) {
+        this.r = r;
+        this.writer = writer;
+        this.frames = new FrameBuffer(this, "Outbound queue of " + r.uuid(), failure, closeFrame, maxBytes,
+                maxMessages, policy, blockTimeout, unit);
+    }
+
+    /**
+     * Pace the frames of responses by the credit the client grants, starting with the given one.
+     */
+    synchronized OutboundQueue pace(Credit initial) {
+        gate = new CreditGate(initial);
+        return this;
+    }
+
+    /**
+     * Queue the frame and write the queue if no other thread does.
+     *
+     * @param uuid the uuid of the response the frame belongs to, null if it carries none or several
+     * @param last true if the frame ends a response, or if it can't be told
+     */
+    void offer(byte[] data, String uuid, boolean last) throws IOException {
+        synchronized (this) {
+            if (frames.failed(uuid, last)) {
+                return;
+            }
+            // Making room may fail the response of the frame.
+            if ((frames.fits(data.length) || frames.makeRoom(data.length, uuid, last)) && !frames.failed(uuid, last)) {
+                frames.add(new FrameBuffer.Frame(data, uuid, last, true, true, 0));
+            }
+            if (draining || frames.isEmpty()) {
+                return;
+            }
+            draining = true;
+        }
+        drain();
+    }
+
+    /**
+     * Queue a frame which doesn't carry responses, like a heartbeat, so the credit doesn't hold it. The frame is
+     * dropped rather than waiting when the queue is full, since what is queued proves the connection alive already.
+     */
+    void offerControl(byte[] data) throws IOException {
+        synchronized (this) {
+            if (!frames.fits(data.length)) {
+                logger.trace("Dropping a control frame of {} bytes for {}, the queue is full", data.length, r.uuid());
+                return;
+            }
+            frames.add(new FrameBuffer.Frame(data, null, true, true, false, 0));
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        drain();
+    }
+
+    /**
+     * Add the credit the client granted and write the frames it releases.
+     */
+    void grant(Credit credit) throws IOException {
+        synchronized (this) {
+            if (gate == null) {
+                return;
+            }
+            gate.grant(credit);
+            if (draining || frames.isEmpty()) {
+                return;
+            }
+            draining = true;
+        }
+        drain();
+    }
+
+    @Override
+    public synchronized boolean isWritable() {
+        return frames.isWritable();
+    }
+
+    synchronized int size() {
+        return frames.size();
+    }
+
+    private void drain() throws IOException {
+        for (;;) {
+            FrameBuffer.Frame f;
+            boolean close = false;
+            synchronized (this) {
+                f = next();
+                if (f == null) {
+                    draining = false;
+                    close = frames.isClosing() && frames.isEmpty();
+                } else {
+                    notifyAll();
+                }
+            }
+
+            if (f == null) {
+                if (close) {
+                    r.close();
+                }
+                return;
+            }
+
+            try {
+                writer.write(r, f.data);
+            } catch (IOException e) {
+                synchronized (this) {
+                    frames.clear();
+                    draining = false;
+                    notifyAll();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Take out the frame to write next, if any: the oldest one unless the credit holds it, in which case only control
+     * frames pass it.
+     */
+    private FrameBuffer.Frame next() {
+        if (gate == null) {
+            return frames.pollFirst();
+        }
+        boolean head = true;
+        for (FrameBuffer.Frame f : frames) {
+            if (!f.paced || head && gate.admits(f.last)) {
+                frames.remove(f);
+                if (f.paced) {
+                    gate.consume(f.data.length);
+                }
+                return f;
+            }
+            head = false;
+        }
+        return null;
+    }
+}
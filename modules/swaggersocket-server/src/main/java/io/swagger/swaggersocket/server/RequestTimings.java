@@ -0,0 +1,131 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+/**
+ * Where the time of a dispatched request went. Timestamps are taken as the request goes through the phases of the
+ * interceptor: its message is received, the request is decoded, translated into an {@link
+ * org.atmosphere.cpr.AtmosphereRequest}, handed to the framework, and its response is encoded and written, possibly
+ * in several frames whose encoding and writing times add up.
+ */
+final class RequestTimings {
+
+    private final long received;
+    private final long decoded;
+    private volatile long translated;
+    private volatile long started;
+    private volatile long firstWrite;
+    private volatile long encoded;
+    private volatile long serialize;
+    private volatile long write;
+    private volatile long done;
+
+    RequestTimings(long received) {
+        this.received = received;
+        this.decoded = System.nanoTime();
+    }
+
+    void translated() {
+        translated = System.nanoTime();
+    }
+
+    void started() {
+        started = System.nanoTime();
+    }
+
+    /**
+     * A frame of the response is about to be encoded, the first one ends the time spent in the resource.
+     */
+    void writing(long now) {
+        if (firstWrite == 0) {
+            firstWrite = now;
+        }
+    }
+
+    void serialized(long nanos) {
+        serialize += nanos;
+        encoded = System.nanoTime();
+    }
+
+    /**
+     * The frame encoded last has been handed to the connection.
+     */
+    void written() {
+        if (encoded != 0) {
+            write += System.nanoTime() - encoded;
+            encoded = 0;
+        }
+    }
+
+    /**
+     * The last frame of the response has been written.
+     *
+     * @return false if it already had been
+     */
+    synchronized boolean done() {
+        if (done != 0) {
+            return false;
+        }
+        done = System.nanoTime();
+        return true;
+    }
+
+    long total() {
+        return (done != 0 ? done : System.nanoTime()) - received;
+    }
+
+    /**
+     * The phases known when the response starts being written, in the syntax of the Server-Timing header.
+     */
+    String serverTiming() {
+        StringBuilder b = new StringBuilder();
+        phase(b.append("parse;dur="), decoded - received);
+        phase(b.append(", translate;dur="), since(decoded, translated));
+        phase(b.append(", queue;dur="), since(translated, started));
+        phase(b.append(", service;dur="), since(started, firstWrite));
+        return b.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        phase(b.append("parse="), decoded - received).append("ms");
+        phase(b.append(" translate="), since(decoded, translated)).append("ms");
+        phase(b.append(" queue="), since(translated, started)).append("ms");
+        phase(b.append(" service="), since(started, firstWrite)).append("ms");
+        phase(b.append(" serialize="), serialize).append("ms");
+        phase(b.append(" write="), write).append("ms");
+        phase(b.append(" total="), total()).append("ms");
+        return b.toString();
+    }
+
+    private static long since(long from, long to) {
+        return from == 0 || to == 0 ? 0 : to - from;
+    }
+
+    /**
+     * Append the duration in milliseconds, with three decimals.
+     */
+    private static StringBuilder phase(StringBuilder b, long nanos) {
+        long micros = Math.max(nanos, 0) / 1000;
+        long fraction = micros % 1000;
+        b.append(micros / 1000).append('.');
+        if (fraction < 100) {
+            b.append(fraction < 10 ? "00" : "0");
+        }
+        return b.append(fraction);
+    }
+}
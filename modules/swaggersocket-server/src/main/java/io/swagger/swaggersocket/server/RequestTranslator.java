@@ -0,0 +1,296 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.atmosphere.cpr.AtmosphereRequest;
+
+import io.swagger.swaggersocket.protocol.Header;
+import io.swagger.swaggersocket.protocol.ProtocolBase;
+import io.swagger.swaggersocket.protocol.QueryString;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Translates the requests of a SwaggerSocket connection into {@link AtmosphereRequest}s.
+ * <p/>
+ * The URL and URI of the connection are read once, and the normalized path, URL and URI of the paths the connection
+ * requests are cached. The headers and query strings of a request are handed to Atmosphere as maps which look their
+ * values up in the lists of the request, and are only built if the application enumerates or modifies them.
+ */
+public final class RequestTranslator {
+
+    static final int MAX_CACHED_PATHS = 256;
+
+    private final AtmosphereRequest base;
+    private final String requestURL;
+    private final String requestURI;
+    private final ConcurrentHashMap<String, Target> targets = new ConcurrentHashMap<String, Target>();
+
+    public RequestTranslator(AtmosphereRequest base) {
+        this.base = base;
+        this.requestURL = base.getRequestURL().toString();
+        this.requestURI = base.getRequestURI();
+    }
+
+    public AtmosphereRequest translate(ProtocolBase request) {
+        Target t = target(request.getPath());
+        HeaderMap headers = new HeaderMap(request.getHeaders());
+
+        // get the content-type
+        String contentType = request.getDataFormat();
+        if (contentType == null) {
+            contentType = headers.get("Content-Type");
+        }
+
+        AtmosphereRequest.Builder b = new AtmosphereRequest.Builder();
+        b.pathInfo(t.pathInfo)
+                .contentType(contentType)
+                .headers(headers)
+                .method(request.getMethod())
+                .queryStrings(new QueryStringMap(request.getQueryString()))
+                .requestURI(t.requestURI)
+                .requestURL(t.requestURL)
+                .request(base);
+        // add the body only if it is present
+        if (request.getMessageBody() instanceof byte[]) {
+            b.body((byte[]) request.getMessageBody());
+        } else if (request.getMessageBody() != null) {
+            b.body(request.getMessageBody().toString());
+        }
+
+        return b.build();
+    }
+
+    /**
+     * The number of paths whose translation is cached.
+     */
+    int cachedPaths() {
+        return targets.size();
+    }
+
+    private Target target(String path) {
+        Target t = targets.get(path);
+        if (t == null) {
+            if (targets.size() >= MAX_CACHED_PATHS) {
+                // Paths carrying ids are rarely requested twice, start over rather than track their use.
+                targets.clear();
+            }
+            t = new Target(normalize(path));
+            targets.put(path, t);
+        }
+        return t;
+    }
+
+    /**
+     * Replace every run of whitespace by %20, like {@code path.replaceAll("\\s+", "%20").trim()}.
+     */
+    static String normalize(String path) {
+        int i = 0;
+        int n = path.length();
+        while (i < n && !isWhitespace(path.charAt(i))) {
+            i++;
+        }
+        if (i == n) {
+            return path.trim();
+        }
+
+        StringBuilder sb = new StringBuilder(n + 8).append(path, 0, i);
+        while (i < n) {
+            char c = path.charAt(i++);
+            if (isWhitespace(c)) {
+                sb.append("%20");
+                while (i < n && isWhitespace(path.charAt(i))) {
+                    i++;
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString().trim();
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    private final class Target {
+        private final String pathInfo;
+        private final String requestURL;
+        private final String requestURI;
+
+        private Target(String p) {
+            requestURL = RequestTranslator.this.requestURL.endsWith("/") && p.startsWith("/")
+                    ? RequestTranslator.this.requestURL + p.substring(1) : RequestTranslator.this.requestURL + p;
+            requestURI = RequestTranslator.this.requestURI.endsWith("/") && p.startsWith("/")
+                    ? RequestTranslator.this.requestURI + p.substring(1) : RequestTranslator.this.requestURI + p;
+            pathInfo = p.startsWith("/") ? p : "/" + p;
+        }
+    }
+
+    /**
+     * The headers of a request, case insensitive. The map is only built when it is enumerated or modified.
+     */
+    private final static class HeaderMap extends AbstractMap<String, String> {
+        private final List<Header> headers;
+        private Map<String, String> map;
+
+        private HeaderMap(List<Header> headers) {
+            this.headers = headers != null ? headers : Collections.<Header>emptyList();
+        }
+
+        @Override
+        public String get(Object key) {
+            if (map != null) {
+                return map.get(key);
+            }
+            String value = null;
+            if (key instanceof String) {
+                // The last one wins, as it would in the map.
+                for (Header h : headers) {
+                    if (h.getName().equalsIgnoreCase((String) key)) {
+                        value = h.getValue();
+                    }
+                }
+            }
+            return value;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return map != null ? map.containsKey(key) : get(key) != null;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return map != null ? map.isEmpty() : headers.isEmpty();
+        }
+
+        @Override
+        public String put(String key, String value) {
+            return map().put(key, value);
+        }
+
+        @Override
+        public String remove(Object key) {
+            return map().remove(key);
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return map().entrySet();
+        }
+
+        private Map<String, String> map() {
+            if (map == null) {
+                Map<String, String> m = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+                for (Header h : headers) {
+                    m.put(h.getName(), h.getValue());
+                }
+                map = m;
+            }
+            return map;
+        }
+    }
+
+    /**
+     * The query strings of a request, by name. The map is only built when it is enumerated or modified.
+     */
+    private final static class QueryStringMap extends AbstractMap<String, String[]> {
+        private final List<QueryString> queryStrings;
+        private Map<String, String[]> map;
+
+        private QueryStringMap(List<QueryString> queryStrings) {
+            this.queryStrings = queryStrings != null ? queryStrings : Collections.<QueryString>emptyList();
+        }
+
+        @Override
+        public String[] get(Object key) {
+            if (map != null) {
+                return map.get(key);
+            }
+            List<String> values = null;
+            for (QueryString q : queryStrings) {
+                if (q.getName().equals(key)) {
+                    if (values == null) {
+                        values = new ArrayList<String>(1);
+                    }
+                    values.add(q.getValue());
+                }
+            }
+            return values != null ? values.toArray(new String[values.size()]) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            if (map != null) {
+                return map.containsKey(key);
+            }
+            for (QueryString q : queryStrings) {
+                if (q.getName().equals(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return map != null ? map.isEmpty() : queryStrings.isEmpty();
+        }
+
+        @Override
+        public String[] put(String key, String[] value) {
+            return map().put(key, value);
+        }
+
+        @Override
+        public String[] remove(Object key) {
+            return map().remove(key);
+        }
+
+        @Override
+        public Set<Entry<String, String[]>> entrySet() {
+            return map().entrySet();
+        }
+
+        private Map<String, String[]> map() {
+            if (map == null) {
+                Map<String, String[]> m = new HashMap<String, String[]>();
+                for (QueryString q : queryStrings) {
+                    String[] s = m.get(q.getName());
+                    if (s != null) {
+                        String[] s1 = new String[s.length + 1];
+                        System.arraycopy(s, 0, s1, 0, s.length);
+                        s1[s.length] = q.getValue();
+                        m.put(q.getName(), s1);
+                    } else {
+                        m.put(q.getName(), new String[]{q.getValue()});
+                    }
+                }
+                map = m;
+            }
+            return map;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import io.swagger.swaggersocket.protocol.Request;
+import io.swagger.swaggersocket.protocol.Response;
+import io.swagger.swaggersocket.protocol.ResponseMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Aggregates the responses of the requests of a long-polling message into a single {@link ResponseMessage}.
+ * <p/>
+ * Every request owns the slot of its index in the message, which its response fills atomically, whichever thread it
+ * completes on, so requests without a uuid or sharing one are aggregated all the same. The message is complete when
+ * the last slot is filled. If it isn't complete in time, the responses received so far are flushed,
+ * along with a 504 response for every request still running; the responses completing after that, like a second
+ * response of a request, are written on their own.
+ */
+final class ResponseAggregator {
+
+    /**
+     * Writes a message the aggregator completed on its own, i.e. when it timed out.
+     */
+    interface Sink {
+        void flush(ResponseMessage message);
+    }
+
+    private static final Response TIMED_OUT = new Response();
+
+    private final String identity;
+    private final Request[] requests;
+    private final AtomicReferenceArray<Response> slots;
+    private final AtomicInteger remaining;
+    private final AtomicBoolean done = new AtomicBoolean();
+    private volatile ScheduledFuture<?> timeout;
+
+    ResponseAggregator(String identity, List<Request> requests) {
+        this.identity = identity;
+        this.requests = requests.toArray(new Request[requests.size()]);
+        this.slots = new AtomicReferenceArray<Response>(this.requests.length);
+        this.remaining = new AtomicInteger(this.requests.length);
+    }
+
+    /**
+     * Flush the message to the sink if it isn't complete within the timeout.
+     */
+    void expire(ScheduledExecutorService timer, long delay, TimeUnit unit, final Sink sink) {
+        timeout = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (done.compareAndSet(false, true)) {
+                    sink.flush(drain());
+                }
+            }
+        }, delay, unit);
+    }
+
+    /**
+     * Add the response of one of the requests.
+     *
+     * @param index the index of the request in the message
+     * @return the complete message, null if other responses are still expected, or a message holding only this
+     * response when it can't be aggregated anymore
+     */
+    ResponseMessage add(int index, Response response) {
+        if (index < 0 || index >= requests.length || !slots.compareAndSet(index, null, response)) {
+            return new ResponseMessage(identity, response);
+        }
+
+        if (remaining.decrementAndGet() == 0 && done.compareAndSet(false, true)) {
+            ScheduledFuture<?> t = timeout;
+            if (t != null) {
+                t.cancel(false);
+            }
+            return drain();
+        }
+        return null;
+    }
+
+    private ResponseMessage drain() {
+        List<Response> responses = new ArrayList<Response>(requests.length);
+        for (int i = 0; i < requests.length; i++) {
+            Response response = slots.getAndSet(i, TIMED_OUT);
+            if (response == null) {
+                response = new Response.Builder().status(504, "Gateway Timeout")
+                        .uuid(requests[i].getUuid()).path(requests[i].getPath()).build();
+            }
+            responses.add(response);
+        }
+
+        ResponseMessage m = new ResponseMessage();
+        m.setIdentity(identity);
+        m.setResponses(responses);
+        return m;
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Cuts the body of a response into chunks of a fixed size, whatever the sizes of the writes of the resource. Every
+ * chunk becomes a response message of its own: the first one carries the metadata of the response, the following ones
+ * are compact and the one written on close is flagged last, even if it is empty. Text bodies are only cut between
+ * UTF-8 characters.
+ */
+final class ResponseChunker {
+
+    private final int size;
+    private final boolean text;
+    private final BufferPool pool;
+    private byte[] buffer;
+    private int count;
+    private int chunks;
+    private boolean compact;
+    private boolean last;
+
+    ResponseChunker(int size, boolean text, BufferPool pool) {
+        this.size = size;
+        this.text = text;
+        this.pool = pool;
+    }
+
+    void write(OutputStream out, byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (buffer == null) {
+                buffer = pool != null ? pool.acquire(size) : new byte[size];
+            }
+            int n = Math.min(len, size - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == size) {
+                emit(out, cut(), false);
+            }
+        }
+    }
+
+    /**
+     * Write what has been buffered as a chunk, so that it reaches the client without waiting for the chunk to fill.
+     */
+    void flush(OutputStream out) throws IOException {
+        if (count > 0) {
+            emit(out, cut(), false);
+        }
+    }
+
+    void close(OutputStream out) throws IOException {
+        if (last) {
+            return;
+        }
+        try {
+            emit(out, count, true);
+        } finally {
+            if (buffer != null && pool != null) {
+                pool.release(buffer);
+            }
+            buffer = null;
+            count = 0;
+        }
+    }
+
+    /**
+     * Whether the chunk being written is not the first one of the response.
+     */
+    boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Whether the chunk being written ends the response.
+     */
+    boolean isLast() {
+        return last;
+    }
+
+    /**
+     * The length of the buffered bytes which make complete characters.
+     */
+    private int cut() {
+        if (!text) {
+            return count;
+        }
+        // Look for the lead byte of the last character, at most 3 bytes back.
+        for (int i = count - 1; i >= 0 && i >= count - 4; i--) {
+            int c = buffer[i] & 0xFF;
+            if ((c & 0xC0) != 0x80) {
+                int length = c < 0x80 ? 1 : c >= 0xF0 ? 4 : c >= 0xE0 ? 3 : 2;
+                // A chunk must make progress, even over invalid UTF-8.
+                return i + length <= count || i == 0 ? count : i;
+            }
+        }
+        return count;
+    }
+
+    private void emit(OutputStream out, int length, boolean end) throws IOException {
+        compact = chunks++ > 0;
+        last = end;
+        out.write(buffer != null ? buffer : new byte[0], 0, length);
+        if (length < count) {
+            System.arraycopy(buffer, length, buffer, 0, count - length);
+        }
+        count -= length;
+    }
+}
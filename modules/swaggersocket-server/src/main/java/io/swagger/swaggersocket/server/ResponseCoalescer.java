@@ -0,0 +1,228 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.atmosphere.cpr.AtmosphereResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.swagger.swaggersocket.protocol.Response;
+import io.swagger.swaggersocket.protocol.ResponseMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges the responses of a WebSocket connection into as few {@link ResponseMessage}s as possible.
+ * <p/>
+ * While the connection is busy, i.e. a message is being read or some of its requests are still executing, responses
+ * are held and written together once it becomes idle, as soon as maxResponses are held, or when the first of them
+ * was held for maxDelay, whichever comes first. A response of an idle connection is written at once.
+ * <p/>
+ * The held responses are taken under the lock and written outside of it, by one thread at a time: the thread finding
+ * no write in progress writes them, along with the responses held meanwhile, so the responses of a connection are
+ * written in order. The merged messages go to the {@link OutboundQueue} of the connection if it has one, so its
+ * policy and the credit of the client apply to them. A merged message either carries the parts of a single response,
+ * or ends every response it carries, which tells the queue which response it belongs to and whether it may be
+ * dropped. Without a queue, all the held responses are merged at once.
+ */
+final class ResponseCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCoalescer.class);
+
+    private final AtmosphereResource r;
+    private final OutboundQueue queue;
+    private final ObjectMapper mapper;
+    private final String identity;
+    private final ScheduledExecutorService timer;
+    private final int maxResponses;
+    private final long maxDelay;
+    private final Runnable flusher = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+    private List<Held> pending = new ArrayList<Held>();
+    private ScheduledFuture<?> scheduled;
+    private int busy;
+    private boolean writing;
+
+    /**
+     * @param queue the {@link OutboundQueue} of the connection, null if its frames are written at once
+     */
+    ResponseCoalescer(AtmosphereResource r, OutboundQueue queue, ObjectMapper mapper, String identity,
+                      ScheduledExecutorService timer, int maxResponses, long maxDelay, TimeUnit unit) {
+        this.r = r;
+        this.queue = queue;
+        this.mapper = mapper;
+        this.identity = identity;
+        this.timer = timer;
+        this.maxResponses = Math.max(1, maxResponses);
+        this.maxDelay = unit.toNanos(maxDelay);
+    }
+
+    /**
+     * Mark the connection busy until the matching {@link #release()}.
+     */
+    synchronized void hold() {
+        busy++;
+    }
+
+    /**
+     * Write the held responses if the connection became idle.
+     */
+    void release() {
+        synchronized (this) {
+            if (--busy > 0) {
+                return;
+            }
+            busy = 0;
+            if (!claim()) {
+                return;
+            }
+        }
+        write();
+    }
+
+    /**
+     * Write the responses now, or hold them until the connection is idle.
+     *
+     * @param uuid the uuid of the request the responses answer
+     * @param last true if they end the response to the request
+     */
+    void offer(List<Response> responses, String uuid, boolean last) {
+        synchronized (this) {
+            for (Response response : responses) {
+                pending.add(new Held(response, uuid, last));
+            }
+            if (busy > 0 && pending.size() < maxResponses) {
+                if (scheduled == null) {
+                    scheduled = timer.schedule(flusher, maxDelay, TimeUnit.NANOSECONDS);
+                }
+                return;
+            }
+            if (!claim()) {
+                return;
+            }
+        }
+        write();
+    }
+
+    void flush() {
+        synchronized (this) {
+            if (!claim()) {
+                return;
+            }
+        }
+        write();
+    }
+
+    /**
+     * Take over the writing of the held responses, unless another thread writes them already or none is held.
+     */
+    private boolean claim() {
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+        if (writing || pending.isEmpty()) {
+            return false;
+        }
+        writing = true;
+        return true;
+    }
+
+    private void write() {
+        for (;;) {
+            List<Held> held;
+            synchronized (this) {
+                if (scheduled != null) {
+                    scheduled.cancel(false);
+                    scheduled = null;
+                }
+                if (pending.isEmpty()) {
+                    writing = false;
+                    return;
+                }
+                held = pending;
+                pending = new ArrayList<Held>();
+            }
+
+            try {
+                if (queue == null) {
+                    SwaggerSocketProtocolInterceptor.writeFrame(r, encode(held, 0, held.size()));
+                } else {
+                    offer(held);
+                }
+            } catch (IOException e) {
+                logger.warn("Unable to write " + held.size() + " responses of " + identity, e);
+            }
+        }
+    }
+
+    /**
+     * Offer the responses to the queue in as few messages as the queue can still tell apart.
+     */
+    private void offer(List<Held> held) throws IOException {
+        for (int from = 0; from < held.size(); ) {
+            String uuid = held.get(from).uuid;
+            boolean last = held.get(from).last;
+            int to = from + 1;
+            for (; to < held.size(); to++) {
+                Held h = held.get(to);
+                if (uuid != null && uuid.equals(h.uuid)) {
+                    last = h.last;
+                } else if (last && h.last) {
+                    uuid = null;
+                } else {
+                    break;
+                }
+            }
+            queue.offer(encode(held, from, to), uuid, last);
+            from = to;
+        }
+    }
+
+    private byte[] encode(List<Held> held, int from, int to) throws IOException {
+        List<Response> responses = new ArrayList<Response>(to - from);
+        for (Held h : held.subList(from, to)) {
+            responses.add(h.response);
+        }
+        ResponseMessage m = new ResponseMessage();
+        m.setIdentity(identity);
+        m.setResponses(responses);
+        return mapper.writeValueAsBytes(m);
+    }
+
+    private final static class Held {
+        private final Response response;
+        private final String uuid;
+        private final boolean last;
+
+        private Held(Response response, String uuid, boolean last) {
+            this.response = response;
+            this.uuid = uuid;
+            this.last = last;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+/**
+ * Where the {@link SwaggerSocketProtocolInterceptor} reports what it does. {@link MetricsRegistry}, the default, keeps
+ * the metrics in memory; implement this interface to bridge them to another monitoring system instead. The instruments
+ * are looked up once, when the interceptor is configured, except the per path dispatch recorders which are looked up
+ * the first time their path is dispatched.
+ */
+public interface SwaggerSocketMetrics {
+
+    String HANDSHAKES = "swaggersocket.handshakes";
+    String CLOSES = "swaggersocket.closes";
+    String REJECTED = "swaggersocket.rejected";
+    String REQUESTS = "swaggersocket.requests";
+    String ERRORS = "swaggersocket.errors";
+    String EXPIRED = "swaggersocket.expired";
+    String RESPONSES = "swaggersocket.responses";
+    String HEARTBEATS = "swaggersocket.heartbeats";
+    /**
+     * Nanoseconds spent in {@link SwaggerSocketProtocolInterceptor#inspect} reading and dispatching a message.
+     */
+    String INSPECT = "swaggersocket.inspect";
+    /**
+     * Number of requests per message.
+     */
+    String BATCH_SIZE = "swaggersocket.batch.size";
+    /**
+     * Nanoseconds a request spends in the framework, followed by its path for the recorder of that path.
+     */
+    String DISPATCH = "swaggersocket.dispatch";
+    /**
+     * Nanoseconds spent encoding a response message.
+     */
+    String SERIALIZE = "swaggersocket.serialize";
+    /**
+     * Nanoseconds spent attaching the SwaggerSocket writer to a connection.
+     */
+    String ATTACH_WRITER = "swaggersocket.attachwriter";
+    /**
+     * Number of messages waiting in the mailbox of a long-polling connection, every time one is delivered.
+     */
+    String MAILBOX_DEPTH = "swaggersocket.mailbox.depth";
+    String CONNECTIONS = "swaggersocket.connections";
+    /**
+     * Acquisitions of the {@link BufferPool} served by a retained buffer, and those which allocated one.
+     */
+    String BUFFER_POOL_HITS = "swaggersocket.bufferpool.hits";
+    String BUFFER_POOL_MISSES = "swaggersocket.bufferpool.misses";
+    /**
+     * Bytes of the buffers the {@link BufferPool} retains, and of those acquired and not released yet.
+     */
+    String BUFFER_POOL_POOLED = "swaggersocket.bufferpool.pooled";
+    String BUFFER_POOL_OUTSTANDING = "swaggersocket.bufferpool.outstanding";
+
+    /**
+     * Reports nothing.
+     */
+    SwaggerSocketMetrics NONE = new SwaggerSocketMetrics() {
+        private final Counter counter = new Counter() {
+            @Override
+            public void increment() {
+            }
+
+            @Override
+            public void add(long delta) {
+            }
+        };
+        private final Recorder recorder = new Recorder() {
+            @Override
+            public void record(long value) {
+            }
+        };
+
+        @Override
+        public Counter counter(String name) {
+            return counter;
+        }
+
+        @Override
+        public Recorder recorder(String name) {
+            return recorder;
+        }
+
+        @Override
+        public void gauge(String name, Gauge gauge) {
+        }
+    };
+
+    Counter counter(String name);
+
+    Recorder recorder(String name);
+
+    void gauge(String name, Gauge gauge);
+
+    interface Counter {
+
+        void increment();
+
+        void add(long delta);
+    }
+
+    /**
+     * Records the distribution of a value, a latency in nanoseconds or a size.
+     */
+    interface Recorder {
+
+        void record(long value);
+    }
+
+    /**
+     * Reads a value when the metrics are collected.
+     */
+    interface Gauge {
+
+        long value();
+    }
+}
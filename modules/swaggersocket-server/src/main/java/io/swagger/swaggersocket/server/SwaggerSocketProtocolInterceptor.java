@@ -15,6 +15,7 @@
  */
 package io.swagger.swaggersocket.server;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.atmosphere.client.TrackMessageSizeInterceptor;
@@ -32,41 +33,47 @@ import org.atmosphere.cpr.AtmosphereResource;
 import org.atmosphere.cpr.AtmosphereResourceEvent;
 import org.atmosphere.cpr.AtmosphereResourceEventListenerAdapter;
 import org.atmosphere.cpr.AtmosphereResponse;
-import org.atmosphere.cpr.Broadcaster;
-import org.atmosphere.cpr.DefaultBroadcaster;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import io.swagger.swaggersocket.protocol.CloseMessage;
-import io.swagger.swaggersocket.protocol.HandshakeMessage;
+import io.swagger.swaggersocket.protocol.Close;
+import io.swagger.swaggersocket.protocol.Credit;
+import io.swagger.swaggersocket.protocol.Encodings;
+import io.swagger.swaggersocket.protocol.Handshake;
 import io.swagger.swaggersocket.protocol.Header;
 import io.swagger.swaggersocket.protocol.Heartbeat;
-import io.swagger.swaggersocket.protocol.Message;
+import io.swagger.swaggersocket.protocol.IdGenerators;
 import io.swagger.swaggersocket.protocol.ProtocolBase;
-import io.swagger.swaggersocket.protocol.QueryString;
+import io.swagger.swaggersocket.protocol.ProtocolTracer;
+import io.swagger.swaggersocket.protocol.ProtocolTracers;
+import io.swagger.swaggersocket.protocol.RawJson;
 import io.swagger.swaggersocket.protocol.Request;
 import io.swagger.swaggersocket.protocol.Response;
 import io.swagger.swaggersocket.protocol.ResponseMessage;
 import io.swagger.swaggersocket.protocol.StatusMessage;
 import io.swagger.swaggersocket.protocol.Response.Builder;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.util.Enumeration;
-import java.util.HashMap;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 
@@ -77,34 +84,93 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
 
     private final static String SWAGGER_SOCKET_DISPATCHED = "request.dispatched";
     private final static String IDENTITY = "swaggersocket.identity";
-    private final static String RESPONSE_COUNTER = "-ResponseCountNumber";
-    private final static String SUSPENDED_RESPONSE = "-PendingResource";
-
+    private final static String IN_FLIGHT = "swaggersocket.inflight";
+    private final static String SWAGGER_SOCKET_REQUEST = "swaggerSocketRequest";
+    private final static String DISPATCH_CONTEXT = DispatchContext.class.getName();
+    private final static String ENCODING = "swaggersocket.encoding";
+    private final static String COALESCER = ResponseCoalescer.class.getName();
+    private final static String MAILBOX = Mailbox.class.getName();
+    private final static String TRANSLATOR = RequestTranslator.class.getName();
+    private final static String OUTBOUND = OutboundQueue.class.getName();
+    private final static String WRITABILITY = Writability.class.getName();
+    private final static String CHUNKS = "swaggersocket.chunks";
+    private final static String RAW_JSON = "swaggersocket.rawjson";
+    private final static String CHUNKER = ResponseChunker.class.getName();
+    // What a WebSocket connection negotiated in its handshake, which is forgotten when it handshakes again.
+    private final static String[] CONNECTION_VALUES = {IDENTITY, IN_FLIGHT, ENCODING, CHUNKS, RAW_JSON, COALESCER, OUTBOUND};
+    private final static String SERVER_TIMING = "Server-Timing";
+    private final static String STATS_PATH = "/swaggersocket.stats";
+
+
+    private final static byte[] HEARTBEAT_PREFIX = {'h', 'e', 'a', 'r', 't', 'b', 'e', 'a', 't', '-'};
 
     private static final Logger logger = LoggerFactory.getLogger(SwaggerSocketProtocolInterceptor.class);
     private final ObjectMapper mapper;
+    private final ObjectMapper smileMapper;
     private final AsyncIOInterceptor interceptor = new Interceptor();
-    private final ThreadLocal<Request> ssRequest = new ThreadLocal<Request>();
-    private final ThreadLocal<String> transactionIdentity = new ThreadLocal<String>();
-    private Broadcaster heartbeat;
+    private final InboundMessageReader inboundReader;
+    private static final ThreadLocal<Boolean> encodedWrite = new ThreadLocal<Boolean>();
+    private ScheduledExecutorService timer;
+    private HeartbeatEngine heartbeat;
+    private ConnectionRegistry connections;
+    private BufferPool bufferPool;
+    private SwaggerSocketStats stats;
+    private Instruments instruments = new Instruments(SwaggerSocketMetrics.NONE, 0, null);
 
     private boolean lazywrite;
+    private int lazywriteMaxBuffer = 64 * 1024;
+    private int lazywritePoolCapacity = 16 * 1024 * 1024;
     private boolean emptyentity;
+    private boolean rawjson = true;
     private Pattern includedheaders;
     private Pattern excludedheaders;
+    private int heartbeatInterval = 60;
+    private int heartbeatSlots = 60;
+    private boolean heartbeatAdaptive = true;
+    private String dispatch = "serial";
+    private int dispatchThreads = Runtime.getRuntime().availableProcessors() * 2;
+    private int maxInFlight = 32;
+    private int maxQueued = 256;
+    private ExecutorService executor;
+    private List<String> encodings = Arrays.asList(Encodings.SMILE, Encodings.JSON);
+    private boolean coalesce;
+    private int coalesceMaxResponses = 64;
+    private int coalesceMaxDelay = 1000;
+    private int connectionTtl = 300;
+    private int mailboxMaxBytes = 1024 * 1024;
+    private int mailboxTtl = 60;
+    private boolean aggregate = true;
+    private int aggregateTimeout = 30;
+    private OutboundQueue.Policy outboundPolicy;
+    private int outboundMaxBytes = 1024 * 1024;
+    private int outboundMaxMessages = 256;
+    private int outboundBlockTimeout = 30;
+    private boolean credit = true;
+    private int chunkSize = 8 * 1024;
+    private SwaggerSocketMetrics metrics;
+    private int metricsMaxPaths = 100;
+    private int slowRequestThreshold;
+    private boolean timingHeader;
+    private boolean jmx;
+    private boolean statsPath;
 
     public SwaggerSocketProtocolInterceptor() {
         this.mapper = new ObjectMapper();
+        this.smileMapper = Encodings.binaryMapper(Encodings.SMILE);
+        this.inboundReader = new InboundMessageReader(mapper, smileMapper);
     }
 
     @Override
     public void configure(AtmosphereConfig config) {
-        heartbeat = config.getBroadcasterFactory().lookup(DefaultBroadcaster.class, "/swaggersocket.heartbeat");
-        if (heartbeat == null) {
-            heartbeat = config.getBroadcasterFactory().get(DefaultBroadcaster.class, "/swaggersocket.heartbeat");
-        }
         lazywrite = config.getInitParameter("io.swagger.swaggersocket.protocol.lazywrite", false);
+        lazywriteMaxBuffer = intParameter(config, "io.swagger.swaggersocket.protocol.lazywrite.maxbuffer", lazywriteMaxBuffer);
+        lazywritePoolCapacity = intParameter(config, "io.swagger.swaggersocket.protocol.lazywrite.poolcapacity", lazywritePoolCapacity);
+        chunkSize = intParameter(config, "io.swagger.swaggersocket.protocol.chunk.size", chunkSize);
+        if (lazywrite || chunkSize > 0) {
+            bufferPool = new BufferPool(lazywriteMaxBuffer, lazywritePoolCapacity);
+        }
         emptyentity = config.getInitParameter("io.swagger.swaggersocket.protocol.emptyentity", false);
+        rawjson = config.getInitParameter("io.swagger.swaggersocket.protocol.rawjson", rawjson);
 
         String p = config.getInitParameter("io.swagger.swaggersocket.protocol.includedheaders");
         if (p != null) {
@@ -114,6 +180,112 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
         if (p != null) {
             excludedheaders = Pattern.compile(p, Pattern.CASE_INSENSITIVE);
         }
+
+        p = config.getInitParameter("io.swagger.swaggersocket.protocol.encodings");
+        if (p != null) {
+            encodings(p);
+        }
+
+        heartbeatInterval = intParameter(config, "io.swagger.swaggersocket.protocol.heartbeat.interval", heartbeatInterval);
+        heartbeatSlots = intParameter(config, "io.swagger.swaggersocket.protocol.heartbeat.slots", heartbeatSlots);
+        heartbeatAdaptive = config.getInitParameter("io.swagger.swaggersocket.protocol.heartbeat.adaptive", heartbeatAdaptive);
+        coalesce = config.getInitParameter("io.swagger.swaggersocket.protocol.coalesce", coalesce);
+        coalesceMaxResponses = intParameter(config, "io.swagger.swaggersocket.protocol.coalesce.maxresponses", coalesceMaxResponses);
+        coalesceMaxDelay = intParameter(config, "io.swagger.swaggersocket.protocol.coalesce.maxdelay", coalesceMaxDelay);
+
+        p = config.getInitParameter("io.swagger.swaggersocket.protocol.metrics");
+        if (p != null) {
+            metrics(p);
+        }
+        metricsMaxPaths = intParameter(config, "io.swagger.swaggersocket.protocol.metrics.maxpaths", metricsMaxPaths);
+        if (metrics == null) {
+            metrics = new MetricsRegistry();
+        }
+        instruments = new Instruments(metrics, metricsMaxPaths, bufferPool);
+        slowRequestThreshold = intParameter(config, "io.swagger.swaggersocket.protocol.slowrequest.threshold", slowRequestThreshold);
+        timingHeader = config.getInitParameter("io.swagger.swaggersocket.protocol.timing.header", timingHeader);
+
+        timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread t = new Thread(runnable, "SwaggerSocket-Timer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        heartbeat = new HeartbeatEngine(timer, heartbeats, mapper, heartbeatInterval, TimeUnit.SECONDS, heartbeatSlots,
+                heartbeatAdaptive).metrics(metrics).start();
+        metrics.gauge(SwaggerSocketMetrics.CONNECTIONS, new SwaggerSocketMetrics.Gauge() {
+            @Override
+            public long value() {
+                return heartbeat.size();
+            }
+        });
+
+        connectionTtl = intParameter(config, "io.swagger.swaggersocket.protocol.connection.ttl", connectionTtl);
+        mailboxMaxBytes = intParameter(config, "io.swagger.swaggersocket.protocol.mailbox.maxbytes", mailboxMaxBytes);
+        mailboxTtl = intParameter(config, "io.swagger.swaggersocket.protocol.mailbox.ttl", mailboxTtl);
+        aggregate = config.getInitParameter("io.swagger.swaggersocket.protocol.aggregate", aggregate);
+        aggregateTimeout = intParameter(config, "io.swagger.swaggersocket.protocol.aggregate.timeout", aggregateTimeout);
+        connections = new ConnectionRegistry(connectionTtl, TimeUnit.SECONDS).start(timer);
+
+        jmx = config.getInitParameter("io.swagger.swaggersocket.protocol.jmx", jmx);
+        statsPath = config.getInitParameter("io.swagger.swaggersocket.protocol.stats.path", statsPath);
+        if (jmx || statsPath) {
+            stats = new SwaggerSocketStats(heartbeat, connections).start(timer, heartbeatInterval, TimeUnit.SECONDS);
+        }
+        final List<ObjectName> mbeans = jmx ? registerMBeans(config) : new ArrayList<ObjectName>();
+
+        p = config.getInitParameter("io.swagger.swaggersocket.protocol.outbound.policy");
+        if (p != null) {
+            outboundPolicy(p);
+        }
+        outboundMaxBytes = intParameter(config, "io.swagger.swaggersocket.protocol.outbound.maxbytes", outboundMaxBytes);
+        outboundMaxMessages = intParameter(config, "io.swagger.swaggersocket.protocol.outbound.maxmessages", outboundMaxMessages);
+        outboundBlockTimeout = intParameter(config, "io.swagger.swaggersocket.protocol.outbound.blocktimeout", outboundBlockTimeout);
+        credit = config.getInitParameter("io.swagger.swaggersocket.protocol.credit", credit);
+
+        p = config.getInitParameter("io.swagger.swaggersocket.protocol.dispatch");
+        if (p != null) {
+            dispatch = p.trim().toLowerCase();
+        }
+        dispatchThreads = intParameter(config, "io.swagger.swaggersocket.protocol.dispatch.threads", dispatchThreads);
+        maxInFlight = intParameter(config, "io.swagger.swaggersocket.protocol.dispatch.maxinflight", maxInFlight);
+        maxQueued = intParameter(config, "io.swagger.swaggersocket.protocol.dispatch.maxqueued", maxQueued);
+
+        final ExecutorService ownExecutor;
+        if (executor != null || "serial".equals(dispatch)) {
+            ownExecutor = null;
+        } else if ("parallel".equals(dispatch)) {
+            ownExecutor = DispatchExecutors.parallel(dispatchThreads);
+        } else if ("virtual".equals(dispatch)) {
+            ownExecutor = DispatchExecutors.virtual();
+        } else {
+            ownExecutor = null;
+            logger.warn("Unknown dispatch mode {}, requests will be dispatched serially", dispatch);
+        }
+        if (ownExecutor != null) {
+            executor = ownExecutor;
+        }
+
+        config.shutdownHook(new AtmosphereConfig.ShutdownHook() {
+            @Override
+            public void shutdown() {
+                heartbeat.stop();
+                connections.stop();
+                if (stats != null) {
+                    stats.stop();
+                }
+                unregisterMBeans(mbeans);
+                if (bufferPool != null) {
+                    bufferPool.clear();
+                }
+                timer.shutdownNow();
+                if (ownExecutor != null) {
+                    ownExecutor.shutdown();
+                }
+            }
+        });
     }
 
     public SwaggerSocketProtocolInterceptor lazywrite(boolean lazywrite) {
@@ -125,6 +297,38 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
         this.lazywrite = lazywrite;
     }
 
+    /**
+     * The largest buffer, in bytes, the lazy writes borrow from the {@link BufferPool}. Larger chunks are buffered in
+     * arrays of their own.
+     */
+    public SwaggerSocketProtocolInterceptor lazywriteMaxBuffer(int bytes) {
+        this.lazywriteMaxBuffer = bytes;
+        return this;
+    }
+
+    public void setLazywriteMaxBuffer(int lazywriteMaxBuffer) {
+        this.lazywriteMaxBuffer = lazywriteMaxBuffer;
+    }
+
+    /**
+     * The bytes of released buffers the {@link BufferPool} of the lazy writes retains.
+     */
+    public SwaggerSocketProtocolInterceptor lazywritePoolCapacity(int bytes) {
+        this.lazywritePoolCapacity = bytes;
+        return this;
+    }
+
+    public void setLazywritePoolCapacity(int lazywritePoolCapacity) {
+        this.lazywritePoolCapacity = lazywritePoolCapacity;
+    }
+
+    /**
+     * The {@link BufferPool} of the lazy writes and of the response chunks, or null if neither is on.
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
     public SwaggerSocketProtocolInterceptor emptyentity(boolean emptyentity) {
         this.emptyentity = emptyentity;
         return this;
@@ -134,6 +338,19 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
         this.emptyentity = emptyentity;
     }
 
+    /**
+     * Embed <code>application/json</code> response bodies into the JSON response messages as JSON values instead of
+     * as escaped strings, for the connections which ask for it in their handshake. On by default.
+     */
+    public SwaggerSocketProtocolInterceptor rawjson(boolean rawjson) {
+        this.rawjson = rawjson;
+        return this;
+    }
+
+    public void setRawjson(boolean rawjson) {
+        this.rawjson = rawjson;
+    }
+
     public SwaggerSocketProtocolInterceptor includedheaders(String p) {
         if (p != null) {
             this.includedheaders = Pattern.compile(p, Pattern.CASE_INSENSITIVE);
@@ -156,10 +373,382 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
         this.excludedheaders = excludedheaders;
     }
 
+    /**
+     * The encodings the server accepts to negotiate with a WebSocket client, as a comma separated list. JSON is always
+     * accepted, as it is the default of the protocol.
+     */
+    public SwaggerSocketProtocolInterceptor encodings(String encodings) {
+        List<String> l = new ArrayList<String>();
+        for (String e : encodings.split(",")) {
+            e = e.trim().toLowerCase();
+            if (e.length() > 0) {
+                l.add(e);
+            }
+        }
+        this.encodings = l;
+        return this;
+    }
+
+    public void setEncodings(String encodings) {
+        encodings(encodings);
+    }
+
+    public SwaggerSocketProtocolInterceptor heartbeatInterval(int seconds) {
+        this.heartbeatInterval = seconds;
+        return this;
+    }
+
+    public void setHeartbeatInterval(int heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    public SwaggerSocketProtocolInterceptor heartbeatSlots(int slots) {
+        this.heartbeatSlots = slots;
+        return this;
+    }
+
+    public void setHeartbeatSlots(int heartbeatSlots) {
+        this.heartbeatSlots = heartbeatSlots;
+    }
+
+    public SwaggerSocketProtocolInterceptor heartbeatAdaptive(boolean adaptive) {
+        this.heartbeatAdaptive = adaptive;
+        return this;
+    }
+
+    public void setHeartbeatAdaptive(boolean heartbeatAdaptive) {
+        this.heartbeatAdaptive = heartbeatAdaptive;
+    }
+
+    /**
+     * Select how the requests of a message are dispatched: <code>serial</code> on the thread reading the message,
+     * <code>parallel</code> on a fixed pool or <code>virtual</code> on one virtual thread per request.
+     */
+    public SwaggerSocketProtocolInterceptor dispatch(String dispatch) {
+        this.dispatch = dispatch;
+        return this;
+    }
+
+    public void setDispatch(String dispatch) {
+        this.dispatch = dispatch;
+    }
+
+    /**
+     * Dispatch the requests of a message in parallel on the given {@link ExecutorService} instead of one after the
+     * other on the thread reading the message.
+     */
+    public SwaggerSocketProtocolInterceptor executor(ExecutorService executor) {
+        this.executor = executor;
+        this.dispatch = "parallel";
+        return this;
+    }
+
+    public void setExecutor(ExecutorService executor) {
+        executor(executor);
+    }
+
+    public SwaggerSocketProtocolInterceptor maxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * The requests of a connection waiting for one of its requests in flight to complete, past which they are refused
+     * with a 429.
+     */
+    public SwaggerSocketProtocolInterceptor maxQueued(int maxQueued) {
+        this.maxQueued = maxQueued;
+        return this;
+    }
+
+    public void setMaxQueued(int maxQueued) {
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Merge the responses of a WebSocket connection completing while it is busy into a single message.
+     */
+    public SwaggerSocketProtocolInterceptor coalesce(boolean coalesce) {
+        this.coalesce = coalesce;
+        return this;
+    }
+
+    public void setCoalesce(boolean coalesce) {
+        this.coalesce = coalesce;
+    }
+
+    public SwaggerSocketProtocolInterceptor coalesceMaxResponses(int maxResponses) {
+        this.coalesceMaxResponses = maxResponses;
+        return this;
+    }
+
+    public void setCoalesceMaxResponses(int coalesceMaxResponses) {
+        this.coalesceMaxResponses = coalesceMaxResponses;
+    }
+
+    /**
+     * The time in microseconds a response may be held for the responses following it.
+     */
+    public SwaggerSocketProtocolInterceptor coalesceMaxDelay(int micros) {
+        this.coalesceMaxDelay = micros;
+        return this;
+    }
+
+    public void setCoalesceMaxDelay(int coalesceMaxDelay) {
+        this.coalesceMaxDelay = coalesceMaxDelay;
+    }
+
+    /**
+     * The time in seconds after which a long-polling connection that stopped polling is forgotten.
+     */
+    public SwaggerSocketProtocolInterceptor connectionTtl(int seconds) {
+        this.connectionTtl = seconds;
+        return this;
+    }
+
+    public void setConnectionTtl(int connectionTtl) {
+        this.connectionTtl = connectionTtl;
+    }
+
+    /**
+     * The number of bytes of responses a long-polling connection may keep while no poll is waiting.
+     */
+    public SwaggerSocketProtocolInterceptor mailboxMaxBytes(int maxBytes) {
+        this.mailboxMaxBytes = maxBytes;
+        return this;
+    }
+
+    public void setMailboxMaxBytes(int mailboxMaxBytes) {
+        this.mailboxMaxBytes = mailboxMaxBytes;
+    }
+
+    /**
+     * The time in seconds a response of a long-polling connection waits for a poll before being dropped.
+     */
+    public SwaggerSocketProtocolInterceptor mailboxTtl(int seconds) {
+        this.mailboxTtl = seconds;
+        return this;
+    }
+
+    public void setMailboxTtl(int mailboxTtl) {
+        this.mailboxTtl = mailboxTtl;
+    }
+
+    /**
+     * Answer the requests of a long-polling message with a single message, the default, or each as it completes.
+     */
+    public SwaggerSocketProtocolInterceptor aggregate(boolean aggregate) {
+        this.aggregate = aggregate;
+        return this;
+    }
+
+    public void setAggregate(boolean aggregate) {
+        this.aggregate = aggregate;
+    }
+
+    /**
+     * The time in seconds after which the responses of a long-polling message are sent without the missing ones.
+     */
+    public SwaggerSocketProtocolInterceptor aggregateTimeout(int seconds) {
+        this.aggregateTimeout = seconds;
+        return this;
+    }
+
+    public void setAggregateTimeout(int aggregateTimeout) {
+        this.aggregateTimeout = aggregateTimeout;
+    }
+
+    /**
+     * Select what happens when a connection has more outbound data waiting than its budget: <code>block</code> the
+     * producer, <code>drop</code> the oldest responses that are not final, or <code>close</code> the connection.
+     * <code>none</code>, the default, leaves WebSocket writes unbounded.
+     */
+    public SwaggerSocketProtocolInterceptor outboundPolicy(String policy) {
+        try {
+            this.outboundPolicy = OutboundQueue.Policy.of(policy);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown outbound policy {}, outbound data will not be bounded", policy);
+            this.outboundPolicy = null;
+        }
+        return this;
+    }
+
+    public void setOutboundPolicy(String outboundPolicy) {
+        outboundPolicy(outboundPolicy);
+    }
+
+    public SwaggerSocketProtocolInterceptor outboundMaxBytes(int bytes) {
+        this.outboundMaxBytes = bytes;
+        return this;
+    }
+
+    public void setOutboundMaxBytes(int outboundMaxBytes) {
+        this.outboundMaxBytes = outboundMaxBytes;
+    }
+
+    public SwaggerSocketProtocolInterceptor outboundMaxMessages(int messages) {
+        this.outboundMaxMessages = messages;
+        return this;
+    }
+
+    public void setOutboundMaxMessages(int outboundMaxMessages) {
+        this.outboundMaxMessages = outboundMaxMessages;
+    }
+
+    public SwaggerSocketProtocolInterceptor outboundBlockTimeout(int seconds) {
+        this.outboundBlockTimeout = seconds;
+        return this;
+    }
+
+    public void setOutboundBlockTimeout(int outboundBlockTimeout) {
+        this.outboundBlockTimeout = outboundBlockTimeout;
+    }
+
+    /**
+     * Pace the responses of the WebSocket clients which grant {@link Credit} in their handshake. On by default.
+     */
+    public SwaggerSocketProtocolInterceptor credit(boolean credit) {
+        this.credit = credit;
+        return this;
+    }
+
+    public void setCredit(boolean credit) {
+        this.credit = credit;
+    }
+
+    /**
+     * The size in bytes of the chunks the responses are cut into for the WebSocket clients which take chunked
+     * responses. Zero turns chunked responses off.
+     */
+    public SwaggerSocketProtocolInterceptor chunkSize(int bytes) {
+        this.chunkSize = bytes;
+        return this;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Report the metrics of the interceptor to the given {@link SwaggerSocketMetrics}, {@link SwaggerSocketMetrics#NONE}
+     * to turn them off. A {@link MetricsRegistry} is used by default.
+     */
+    public SwaggerSocketProtocolInterceptor metrics(SwaggerSocketMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Report the metrics to a new instance of the named {@link SwaggerSocketMetrics} class, or turn them off with
+     * <code>none</code>.
+     */
+    public SwaggerSocketProtocolInterceptor metrics(String metrics) {
+        if ("none".equalsIgnoreCase(metrics.trim())) {
+            this.metrics = SwaggerSocketMetrics.NONE;
+            return this;
+        }
+        try {
+            this.metrics = (SwaggerSocketMetrics) Class.forName(metrics.trim(), true,
+                    Thread.currentThread().getContextClassLoader()).newInstance();
+        } catch (Exception e) {
+            logger.warn("Unable to create the metrics {}, they will be kept in memory", metrics, e);
+            this.metrics = null;
+        }
+        return this;
+    }
+
+    public void setMetrics(SwaggerSocketMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public SwaggerSocketMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * The number of paths whose dispatch latency is recorded on its own, the requests to other paths are only part of
+     * the overall dispatch latency.
+     */
+    public SwaggerSocketProtocolInterceptor metricsMaxPaths(int paths) {
+        this.metricsMaxPaths = paths;
+        return this;
+    }
+
+    public void setMetricsMaxPaths(int metricsMaxPaths) {
+        this.metricsMaxPaths = metricsMaxPaths;
+    }
+
+    /**
+     * Log the phases of the requests whose response took at least the given number of milliseconds to complete. Zero,
+     * the default, turns the slow request log off.
+     */
+    public SwaggerSocketProtocolInterceptor slowRequestThreshold(int millis) {
+        this.slowRequestThreshold = millis;
+        return this;
+    }
+
+    public void setSlowRequestThreshold(int slowRequestThreshold) {
+        this.slowRequestThreshold = slowRequestThreshold;
+    }
+
+    /**
+     * Return the server side phases of every request to the client in a Server-Timing header of its response.
+     */
+    public SwaggerSocketProtocolInterceptor timingHeader(boolean timingHeader) {
+        this.timingHeader = timingHeader;
+        return this;
+    }
+
+    public void setTimingHeader(boolean timingHeader) {
+        this.timingHeader = timingHeader;
+    }
+
+    /**
+     * Register the {@link SwaggerSocketStatsMXBean} of the live connections, and the {@link MetricsRegistryMXBean} if the
+     * metrics are kept in memory, with the platform MBean server.
+     */
+    public SwaggerSocketProtocolInterceptor jmx(boolean jmx) {
+        this.jmx = jmx;
+        return this;
+    }
+
+    public void setJmx(boolean jmx) {
+        this.jmx = jmx;
+    }
+
+    /**
+     * Answer the GET requests to a path ending in <code>/swaggersocket.stats</code> with a JSON snapshot of the live
+     * connections and of the metrics kept in memory.
+     */
+    public SwaggerSocketProtocolInterceptor statsPath(boolean statsPath) {
+        this.statsPath = statsPath;
+        return this;
+    }
+
+    public void setStatsPath(boolean statsPath) {
+        this.statsPath = statsPath;
+    }
+
+    /**
+     * The live connections and their requests in flight, null unless JMX or the stats path is on.
+     */
+    public SwaggerSocketStats getStats() {
+        return stats;
+    }
+
     @Override
     public Action inspect(final AtmosphereResource r) {
 
         final AtmosphereRequest request = r.getRequest();
+        if (statsPath && stats != null && "GET".equalsIgnoreCase(request.getMethod()) && request.getRequestURI() != null
+                && request.getRequestURI().endsWith(STATS_PATH)) {
+            return writeStats(r);
+        }
+
         r.addEventListener(new AtmosphereResourceEventListenerAdapter() {
             /**
              * {@inheritDoc}
@@ -191,14 +780,7 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
             // Suspend to keep the connection OPEN.
             if (request.getMethod() == "GET" && r.transport().equals(AtmosphereResource.TRANSPORT.LONG_POLLING)) {
                 r.resumeOnBroadcast(true).suspend();
-
-                BlockingQueue<AtmosphereResource> queue = (BlockingQueue<AtmosphereResource>)
-                        getContextValue(request, SUSPENDED_RESPONSE);
-                if (queue == null) {
-                    queue = new LinkedBlockingQueue<AtmosphereResource>();
-                    request.getSession().setAttribute(SUSPENDED_RESPONSE, queue);
-                }
-                queue.offer(r);
+                mailbox(request).poll(r);
 
                 String identity = (String) getContextValue(request, IDENTITY);
                 schedule(r, identity);
@@ -206,136 +788,527 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
                 return Action.SUSPEND;
             }
 
-            AtmosphereFramework framework = r.getAtmosphereConfig().framework();
-            StringBuilder d = new StringBuilder();
+            // The responses written while the message is read are merged.
+            ResponseCoalescer coalescer = (ResponseCoalescer) getContextValue(request, COALESCER);
+            if (coalescer != null) {
+                coalescer.hold();
+            }
+            long start = System.nanoTime();
+            Dispatcher dispatcher = new Dispatcher(r, response);
             try {
-                InputStreamReader isr = new InputStreamReader(request.getInputStream());
-                BufferedReader bufReader = new BufferedReader(isr);
-                char[] charBuffer = new char[8192];
+                inboundReader.read(request.getInputStream(), dispatcher);
+                return Action.CANCELLED;
+            } catch (IOException e) {
+                logger.warn("", e);
+                if (!dispatcher.dispatched()) {
+                    return Action.CONTINUE;
+                }
+                // Some requests of the message are running already, it must not be handled again.
+                dispatcher.fail();
+                return Action.CANCELLED;
+            } finally {
+                if (coalescer != null) {
+                    coalescer.release();
+                }
+                instruments.inspect.record(System.nanoTime() - start);
+            }
+
+        } else {
+            if (!ok) {
+                request.setAttribute(TrackMessageSizeInterceptor.SKIP_INTERCEPTOR, "true");
+            }
+        }
+        return Action.CONTINUE;
+    }
+
+    /**
+     * Handles the parts of a SwaggerSocket message as they are decoded from the body of the request.
+     */
+    private final class Dispatcher implements InboundMessageReader.Handler {
+
+        private final AtmosphereResource r;
+        private final AtmosphereRequest request;
+        private final AtmosphereResponse response;
+        private final AtmosphereFramework framework;
+        private final long receivedAt = System.nanoTime();
+        private String identity;
+        private ResponseAggregator aggregator;
+        private RequestTranslator translator;
+        private boolean forked;
+        private int requests;
+        // Long-polling responses are aggregated, so the size of the batch must be known before dispatching it.
+        private List<Request> batch;
+
+        private Dispatcher(AtmosphereResource r, AtmosphereResponse response) {
+            this.r = r;
+            this.request = r.getRequest();
+            this.response = response;
+            this.framework = r.getAtmosphereConfig().framework();
+        }
+
+        @Override
+        public void onHandshake(Handshake handshake) throws IOException {
+            logger.debug("Handshake {} {}", handshake.getProtocolName(), handshake.getProtocolVersion());
+            instruments.handshakes.increment();
+            ProtocolTracer tracer = ProtocolTracers.get();
+            Object traced = tracer.begin(ProtocolTracer.Operation.HANDSHAKE);
+
+            // If we missed the CloseReason for whatever reason (IE is a good candidate), make sure we swap the previous session anyway.
+            String identity = (String) getContextValue(request, IDENTITY);
+            if (identity == null) {
+                identity = IdGenerators.get().nextUnguessable();
+            } else {
+                logger.debug("Client disconnected {}, cleaning connection", identity);
+                removeContext(request);
+            }
+            addContextValue(request, IDENTITY, identity);
+            if (r.transport() != AtmosphereResource.TRANSPORT.WEBSOCKET) {
+                connections.bind(connections.lookup(r.uuid(), true), identity);
+            }
+            if (executor != null && maxInFlight > 0) {
+                addContextValue(request, IN_FLIGHT, new InFlightLimiter(executor, maxInFlight, maxQueued));
+            }
 
-                for (int readCount = bufReader.read(charBuffer); readCount > -1; readCount = bufReader.read(charBuffer)) {
-                    d.append(charBuffer, 0, readCount);
+            // Binary encodings need the binary frames of a WebSocket.
+            String encoding = null;
+            if (r.transport() == AtmosphereResource.TRANSPORT.WEBSOCKET) {
+                encoding = Encodings.negotiate(handshake.getEncodings(), encodings);
+                if (!Encodings.isBinary(encoding)) {
+                    encoding = null;
                 }
+            }
 
-                String data = d.toString();
+            // Long-polling clients are paced by their polls already.
+            Credit initial = credit && r.transport() == AtmosphereResource.TRANSPORT.WEBSOCKET ? handshake.getCredit() : null;
+            // Long-polling responses are aggregated one per request.
+            boolean chunks = chunkSize > 0 && r.transport() == AtmosphereResource.TRANSPORT.WEBSOCKET
+                    && Boolean.TRUE.equals(handshake.getChunks());
+            // Binary encodings carry the bodies as bytes already.
+            boolean rawJson = rawjson && encoding == null && Boolean.TRUE.equals(handshake.getRawJson());
+
+            StatusMessage statusMessage = new StatusMessage.Builder().status(new StatusMessage.Status(200, "OK"))
+                    .identity(identity).encoding(encoding).credit(initial).chunks(chunks ? Boolean.TRUE : null)
+                    .rawJson(rawJson ? Boolean.TRUE : null).build();
+            response.setContentType("application/json");
+            response.getOutputStream().write(mapper.writeValueAsBytes(statusMessage));
+
+            // The handshake is always answered in JSON, the negotiated encoding applies to what follows.
+            if (encoding != null) {
+                addContextValue(request, ENCODING, encoding);
+                request.setAttribute(TrackMessageSizeInterceptor.SKIP_INTERCEPTOR, "true");
+                r.forceBinaryWrite(true);
+            }
+            if (rawJson) {
+                addContextValue(request, RAW_JSON, Boolean.TRUE);
+            }
 
-                if (data.length() == 0) {
-                    return Action.CANCELLED;
+            if (r.transport() == AtmosphereResource.TRANSPORT.WEBSOCKET) {
+                // Credit holds the frames in the queue. Blocking would keep the thread which reads the grants from
+                // reading them, so the frames past the budget of a paced connection are dropped by default.
+                if (outboundPolicy != null || initial != null) {
+                    OutboundQueue queue = new OutboundQueue(r, WEBSOCKET_WRITER, failure(request, identity),
+                            closeFrame(request, identity), outboundMaxBytes, outboundMaxMessages,
+                            outboundPolicy != null ? outboundPolicy : OutboundQueue.Policy.DROP,
+                            outboundBlockTimeout, TimeUnit.SECONDS);
+                    if (initial != null) {
+                        queue.pace(initial);
+                    }
+                    addContextValue(request, OUTBOUND, queue);
+                }
+                if (chunks) {
+                    addContextValue(request, CHUNKS, Boolean.TRUE);
+                }
+                if (coalesce) {
+                    addContextValue(request, COALESCER, new ResponseCoalescer(r,
+                            (OutboundQueue) getContextValue(request, OUTBOUND), mapperFor(request), identity, timer,
+                            coalesceMaxResponses, coalesceMaxDelay, TimeUnit.MICROSECONDS));
                 }
+                schedule(r, identity);
+            }
+            if (traced != null) {
+                tracer.handshake(traced, false, identity, encoding);
+            }
+        }
 
-                String message = data.substring(0, 20).replaceAll(" ", "");
-                logger.debug(data);
-                if (message.startsWith("{\"handshake\"")) {
-                    // This will fail if the message is not well formed.
-                    HandshakeMessage handshakeMessage = mapper.readValue(data, HandshakeMessage.class);
+        @Override
+        public void onClose(Close close) throws IOException {
+            logger.debug("Client disconnected {} with reason {}", close.getIdentity(), close.getReason());
+            instruments.closes.increment();
+            ProtocolTracer tracer = ProtocolTracers.get();
+            Object traced = tracer.begin(ProtocolTracer.Operation.CLOSE);
+            String identity = (String) getContextValue(request, IDENTITY);
+            removeContext(request);
+            if (traced != null) {
+                tracer.close(traced, false, identity, close.getReason());
+            }
+        }
 
-                    // If we missed the CloseReason for whatever reason (IE is a good candidate), make sure we swap the previous session anyway.
-                    String identity = (String) getContextValue(request, IDENTITY);
-                    if (identity == null) {
-                        identity = UUID.randomUUID().toString();
-                    } else {
-                        logger.debug("Client disconnected {}, cleaning session {}", identity);
+        @Override
+        public void onCredit(Credit credit) throws IOException {
+            OutboundQueue queue = (OutboundQueue) getContextValue(request, OUTBOUND);
+            if (queue == null || credit.getIdentity() == null || !credit.getIdentity().equals(getContextValue(request, IDENTITY))) {
+                logger.debug("Ignoring credit of {}", credit.getIdentity());
+                return;
+            }
+            queue.grant(credit);
+        }
+
+        @Override
+        public boolean onIdentity(String messageIdentity) throws IOException {
+            identity = (String) getContextValue(request, IDENTITY);
+            // A long-polling client may come back with another Atmosphere uuid.
+            if (identity == null && messageIdentity != null && r.transport() != AtmosphereResource.TRANSPORT.WEBSOCKET
+                    && connections.identify(messageIdentity, r.uuid()) != null) {
+                identity = messageIdentity;
+            }
+
+            if (messageIdentity == null || !messageIdentity.equals(identity)) {
+                StatusMessage statusMessage = new StatusMessage.Builder().status(new StatusMessage.Status(503, "Not Allowed"))
+                        .identity(messageIdentity).build();
+                response.getOutputStream().write(mapperFor(request).writeValueAsBytes(statusMessage));
+                instruments.rejected.increment();
+                return false;
+            }
+
+            if (aggregate && r.transport() != AtmosphereResource.TRANSPORT.WEBSOCKET) {
+                batch = new LinkedList<Request>();
+            }
+            return true;
+        }
+
+        @Override
+        public void onRequest(Request req) throws IOException {
+            instruments.requests.increment();
+            requests++;
+            if (batch != null) {
+                batch.add(req);
+            } else {
+                dispatch(req, requests - 1);
+            }
+        }
+
+        /**
+         * Whether requests of the message have been dispatched.
+         */
+        private boolean dispatched() {
+            return batch == null ? requests > 0 : aggregator != null;
+        }
+
+        /**
+         * Tell the client the rest of the message couldn't be read, once some of its requests have been dispatched.
+         * The response is bound to the last request dispatched by then, so the status is written to the resource.
+         */
+        private void fail() {
+            StatusMessage statusMessage = new StatusMessage.Builder().status(new StatusMessage.Status(400, "Bad Request"))
+                    .identity(identity).build();
+            try {
+                writeControl(r, mapperFor(request).writeValueAsBytes(statusMessage));
+            } catch (IOException e) {
+                logger.debug("", e);
+            }
+        }
+
+        @Override
+        public void onRequestsEnd() throws IOException {
+            instruments.batchSize.record(requests);
+            if (batch != null) {
+                aggregator = new ResponseAggregator(identity, batch);
+                aggregator.expire(timer, aggregateTimeout, TimeUnit.SECONDS, new ResponseAggregator.Sink() {
+                    @Override
+                    public void flush(ResponseMessage message) {
+                        logger.debug("Responses of {} timed out", identity);
                         try {
-                            Enumeration<String> e = request.getSession().getAttributeNames();
-                            while (e.hasMoreElements()) {
-                                request.getSession().removeAttribute(e.nextElement());
-                            }
-                        } catch (Exception ex) {
-                            logger.warn("", ex);
+                            writeEncoded(r, mapperFor(request).writeValueAsBytes(message));
+                        } catch (IOException e) {
+                            logger.warn("", e);
                         }
                     }
-                    addContextValue(request, IDENTITY, identity);
+                });
+                int index = 0;
+                for (Request req : batch) {
+                    dispatch(req, index++);
+                }
+            }
+        }
 
-                    StatusMessage statusMessage = new StatusMessage.Builder().status(new StatusMessage.Status(200, "OK"))
-                            .identity(identity).build();
-                    response.setContentType("application/json");
-                    response.getOutputStream().write(mapper.writeValueAsBytes(statusMessage));
+        /**
+         * Dispatch the request found at the given index of its message.
+         */
+        private void dispatch(Request req, int index) throws IOException {
+            logger.debug("Dispatching {} {}", req.getMethod(), req.getPath());
+            if (executor != null) {
+                fork(req, index);
+                return;
+            }
 
-                    if (r.transport() == AtmosphereResource.TRANSPORT.WEBSOCKET) {
-                        schedule(r, identity);
+            RequestTimings timings = timings();
+            SwaggerSocketStats.Flight flight = flight(req);
+            AtmosphereRequest ar = translator().translate(req);
+            if (timings != null) {
+                timings.translated();
+            }
+            try {
+                ar.attributes().put(SWAGGER_SOCKET_DISPATCHED, "true");
+                ar.attributes().put(DISPATCH_CONTEXT, new DispatchContext(req, index, aggregator, timings, flight));
+                writability(ar);
+                chunker(ar);
+
+                // This is a new request, we must clean the Websocket AtmosphereResource.
+                request.removeAttribute(INJECTED_ATMOSPHERE_RESOURCE);
+                response.request(ar);
+                attachWriter(r);
+                request.setAttribute(SWAGGER_SOCKET_REQUEST, req);
+                if (expired(req, deadline(req), response)) {
+                    completed(flight);
+                    return;
+                }
+
+                if (timings != null) {
+                    timings.started();
+                }
+                ProtocolTracer tracer = ProtocolTracers.get();
+                Object traced = tracer.begin(ProtocolTracer.Operation.DISPATCH);
+                long start = System.nanoTime();
+                Action action;
+                try {
+                    action = framework.doCometSupport(ar, response);
+                } finally {
+                    instruments.dispatched(req.getPath(), System.nanoTime() - start);
+                    if (traced != null) {
+                        tracer.dispatch(traced, false, identity, req.getUuid(), req.getPath(), req.getMethod(), index);
                     }
-                } else if (message.startsWith("{\"close\"")) {
-                    CloseMessage c = mapper.readValue(data, CloseMessage.class);
+                }
+                if (action.type() == Action.TYPE.SUSPEND) {
+                    ar.destroyable(false);
+                    response.destroyable(false);
+                }
+            } catch (Exception e) {
+                logger.warn("", e);
+                instruments.errors.increment();
+                //REVISIT might want to optionally return the body entity?
+                response.setStatus(500, "Server Error");
+                ResponseMessage responseMessage = new ResponseMessage(identity, createResponseBuilder(response, null).build());
+                response.getOutputStream().write(mapperFor(request).writeValueAsBytes(responseMessage));
+                completed(flight);
+            }
+        }
 
-                    logger.debug("Client disconnected {} with reason {}", c.getClose().getIdentity(), c.getClose().getReason());
-                    try {
-                        request.getSession().invalidate();
-                    } catch (Exception ex) {
-                        logger.warn("", ex);
+        /**
+         * Let the resource see whether the connection can take more data, through the {@link Writability} attribute.
+         */
+        private void writability(AtmosphereRequest ar) {
+            Writability w = r.transport() == AtmosphereResource.TRANSPORT.WEBSOCKET
+                    ? (Writability) getContextValue(request, OUTBOUND) : mailbox(request);
+            if (w != null) {
+                ar.attributes().put(WRITABILITY, w);
+            }
+        }
+
+        /**
+         * The {@link RequestTimings} of a request being dispatched, if they are logged or returned to the client.
+         */
+        private RequestTimings timings() {
+            return slowRequestThreshold > 0 || timingHeader ? new RequestTimings(receivedAt) : null;
+        }
+
+        /**
+         * Record the request as in flight, if the stats of the connections are kept.
+         */
+        private SwaggerSocketStats.Flight flight(Request req) {
+            return stats != null ? stats.started(identity, req) : null;
+        }
+
+        private void completed(SwaggerSocketStats.Flight flight) {
+            if (flight != null) {
+                stats.completed(flight);
+            }
+        }
+
+        /**
+         * Cut the response into chunks if the client takes chunked responses.
+         */
+        private void chunker(AtmosphereRequest ar) {
+            if (getContextValue(request, CHUNKS) != null) {
+                ar.attributes().put(CHUNKER, new ResponseChunker(chunkSize, mapperFor(request) == mapper, bufferPool));
+            }
+        }
+
+        /**
+         * The {@link RequestTranslator} of the connection. A WebSocket keeps its own, the requests of other transports
+         * share one per message.
+         */
+        private RequestTranslator translator() {
+            if (translator == null) {
+                if (r.transport() == AtmosphereResource.TRANSPORT.WEBSOCKET) {
+                    translator = (RequestTranslator) request.getAttribute(TRANSLATOR);
+                    if (translator == null) {
+                        translator = new RequestTranslator(request);
+                        request.setAttribute(TRANSLATOR, translator);
                     }
-                    return Action.CANCELLED;
                 } else {
-                    Message swaggerSocketMessage = mapper.readValue(data, Message.class);
-                    swaggerSocketMessage.transactionID(UUID.randomUUID().toString());
-
-                    String identity = (String) getContextValue(request, IDENTITY);
+                    translator = new RequestTranslator(request);
+                }
+            }
+            return translator;
+        }
 
-                    if (!swaggerSocketMessage.getIdentity().equals(identity)) {
-                        StatusMessage statusMessage = new StatusMessage.Builder().status(new StatusMessage.Status(503, "Not Allowed"))
-                                .identity(swaggerSocketMessage.getIdentity()).build();
-                        response.getOutputStream().write(mapper.writeValueAsBytes(statusMessage));
-                        return Action.CANCELLED;
+        /**
+         * The time at which the request expires, from the {@link Request#DEADLINE_HEADER} sent by the client, if any.
+         */
+        private Long deadline(Request req) {
+            if (req.getHeaders() != null) {
+                for (Header h : req.getHeaders()) {
+                    if (Request.DEADLINE_HEADER.equalsIgnoreCase(h.getName())) {
+                        try {
+                            return receivedAt + TimeUnit.MILLISECONDS.toNanos(Long.parseLong(h.getValue().trim()));
+                        } catch (NumberFormatException e) {
+                            logger.debug("Invalid deadline {}", h.getValue());
+                        }
                     }
+                }
+            }
+            return null;
+        }
 
-                    transactionIdentity.set(swaggerSocketMessage.transactionID());
+        /**
+         * Answer with a 504 the request whose client stopped waiting for it.
+         */
+        private boolean expired(Request req, Long deadline, AtmosphereResponse res) throws IOException {
+            if (deadline == null || System.nanoTime() - deadline < 0) {
+                return false;
+            }
+            logger.debug("Deadline of {} {} expired before dispatch", req.getMethod(), req.getPath());
+            instruments.expired.increment();
+            res.setStatus(504, "Gateway Timeout");
+            res.getOutputStream().write(new byte[0]);
+            return true;
+        }
+
+        /**
+         * Hand the request to the executor. Every forked request gets its own response, and its {@link Request} and
+         * aggregator travel with its {@link AtmosphereRequest} as the thread reading the message moves on.
+         */
+        private void fork(final Request req, final int index) throws IOException {
+            final RequestTimings timings = timings();
+            final SwaggerSocketStats.Flight flight = flight(req);
+            final AtmosphereRequest ar = translator().translate(req);
+            if (timings != null) {
+                timings.translated();
+            }
+            ar.attributes().put(SWAGGER_SOCKET_DISPATCHED, "true");
+            ar.attributes().put(DISPATCH_CONTEXT, new DispatchContext(req, index, aggregator, timings, flight));
+            writability(ar);
+            chunker(ar);
+
+            if (!forked) {
+                forked = true;
+                // This is a new request, we must clean the Websocket AtmosphereResource.
+                request.removeAttribute(INJECTED_ATMOSPHERE_RESOURCE);
+                attachWriter(r);
+                // The message may complete before its requests, don't let Atmosphere recycle it.
+                request.destroyable(false);
+                response.destroyable(false);
+            }
 
-                    List<Request> requests = swaggerSocketMessage.getRequests();
-                    addContextValue(request, swaggerSocketMessage.transactionID() + RESPONSE_COUNTER, new AtomicInteger(requests.size()));
+            final ResponseCoalescer coalescer = (ResponseCoalescer) getContextValue(request, COALESCER);
+            if (coalescer != null) {
+                coalescer.hold();
+            }
 
-                    AtmosphereRequest ar;
-                    for (Request req : requests) {
-                        ar = toAtmosphereRequest(request, req);
+            final Long deadline = deadline(req);
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    AtmosphereResponse res = new WrappedAtmosphereResponse(response, ar);
+                    try {
+                        if (expired(req, deadline, res)) {
+                            completed(flight);
+                            return;
+                        }
+                        if (timings != null) {
+                            timings.started();
+                        }
+                        ProtocolTracer tracer = ProtocolTracers.get();
+                        Object traced = tracer.begin(ProtocolTracer.Operation.DISPATCH);
+                        long start = System.nanoTime();
+                        Action action;
                         try {
-                            ar.attributes().put(SWAGGER_SOCKET_DISPATCHED, "true");
-
-                            // This is a new request, we must clean the Websocket AtmosphereResource.
-                            request.removeAttribute(INJECTED_ATMOSPHERE_RESOURCE);
-                            response.request(ar);
-                            attachWriter(r);
-                            ssRequest.set(req);
-                            request.setAttribute("swaggerSocketRequest", req);
-
-                            Action action = framework.doCometSupport(ar, response);
-                            if (action.type() == Action.TYPE.SUSPEND) {
-                                ar.destroyable(false);
-                                response.destroyable(false);
+                            action = framework.doCometSupport(ar, res);
+                        } finally {
+                            instruments.dispatched(req.getPath(), System.nanoTime() - start);
+                            if (traced != null) {
+                                tracer.dispatch(traced, false, identity, req.getUuid(), req.getPath(), req.getMethod(), index);
                             }
-                        } catch (Exception e) {
-                            logger.warn("", e);
-                            //REVISIT might want to optionally return the body entity?
-                            response.setStatus(500, "Server Error");
-                            ResponseMessage responseMessage = new ResponseMessage(identity, createResponseBuilder(response, null).build());
-                            response.getOutputStream().write(mapper.writeValueAsBytes(responseMessage));
+                        }
+                        if (action.type() == Action.TYPE.SUSPEND) {
+                            ar.destroyable(false);
+                            res.destroyable(false);
+                        }
+                    } catch (Exception e) {
+                        logger.warn("", e);
+                        instruments.errors.increment();
+                        res.setStatus(500, "Server Error");
+                        try {
+                            ResponseMessage responseMessage = new ResponseMessage(identity, createResponseBuilder(res, null).build());
+                            res.getOutputStream().write(mapperFor(request).writeValueAsBytes(responseMessage));
+                        } catch (IOException ex) {
+                            logger.warn("", ex);
+                        }
+                        completed(flight);
+                    } finally {
+                        if (coalescer != null) {
+                            coalescer.release();
                         }
                     }
                 }
-                return Action.CANCELLED;
-            } catch (IOException e) {
-                logger.warn("", e);
-                return Action.CONTINUE;
-            }
+            };
 
-        } else {
-            if (!ok) {
-                request.setAttribute(TrackMessageSizeInterceptor.SKIP_INTERCEPTOR, "true");
+            // The thread reading the message never waits for the requests in flight.
+            InFlightLimiter inFlight = (InFlightLimiter) getContextValue(request, IN_FLIGHT);
+            if (inFlight == null) {
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    logger.debug("Dispatch executor rejected {}, running it on the current thread", req.getPath());
+                    task.run();
+                }
+            } else if (!inFlight.submit(task)) {
+                try {
+                    refuse(req, new WrappedAtmosphereResponse(response, ar));
+                    completed(flight);
+                } finally {
+                    if (coalescer != null) {
+                        coalescer.release();
+                    }
+                }
             }
         }
-        return Action.CONTINUE;
+
+        /**
+         * Answer with a 429 the request of a connection which has too many requests in flight and queued already.
+         */
+        private void refuse(Request req, AtmosphereResponse res) throws IOException {
+            logger.debug("Too many requests in flight, refusing {} {}", req.getMethod(), req.getPath());
+            instruments.rejected.increment();
+            res.setStatus(429, "Too Many Requests");
+            res.getOutputStream().write(new byte[0]);
+        }
     }
 
     private final void attachWriter(final AtmosphereResource r) {
-        final AtmosphereRequest request = r.getRequest();
+        long start = System.nanoTime();
+        try {
+            attachWriter(r, r.getRequest());
+        } finally {
+            instruments.attachWriter.record(System.nanoTime() - start);
+        }
+    }
+
+    private void attachWriter(final AtmosphereResource r, final AtmosphereRequest request) {
 
         AtmosphereResponse res = r.getResponse();
         AsyncIOWriter writer = res.getAsyncIOWriter();
 
-        BlockingQueue<AtmosphereResource> queue = (BlockingQueue<AtmosphereResource>)
-                getContextValue(request, SUSPENDED_RESPONSE);
-        if (queue == null) {
-            queue = new LinkedBlockingQueue<AtmosphereResource>();
-            request.getSession().setAttribute(SUSPENDED_RESPONSE, queue);
-        }
-
         if (AtmosphereInterceptorWriter.class.isAssignableFrom(writer.getClass())) {
             // WebSocket already had one.
             if (r.transport() != AtmosphereResource.TRANSPORT.WEBSOCKET) {
@@ -347,38 +1320,13 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
                         // We are buffering response.
                         if (data == null) return;
 
-                        BlockingQueue<AtmosphereResource> queue =
-                                (BlockingQueue<AtmosphereResource>) getContextValue(request, SUSPENDED_RESPONSE);
-                        if (queue != null) {
-                            AtmosphereResource resource;
-                            try {
-                                // TODO: Should this be configurable
-                                // We stay suspended for 60 seconds
-                                resource = queue.poll(60, TimeUnit.SECONDS);
-                            } catch (InterruptedException e) {
-                                logger.trace("", e);
-                                return;
-                            }
-
-                            if (resource == null) {
-                                logger.debug("No resource was suspended, resuming the second connection.");
-                            } else {
-
-                                logger.trace("Resuming {}", resource.uuid());
-
-                                try {
-                                    OutputStream o = resource.getResponse().getResponse().getOutputStream();
-                                    o.write(data);
-                                    o.flush();
-
-                                    resource.resume();
-                                } catch (IOException ex) {
-                                    logger.warn("", ex);
-                                }
-                            }
+                        Mailbox mailbox = mailbox(request);
+                        if (encodedWrite.get() != null) {
+                            mailbox.deliver(data, null, true);
                         } else {
-                            logger.error("Queue was null");
+                            mailbox.deliver(data, uuid(response), !droppable(response));
                         }
+                        instruments.mailboxDepth.record(mailbox.size());
                     }
 
                     /**
@@ -406,97 +1354,426 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
     }
 
     protected void schedule(AtmosphereResource r, String uuid) {
-        heartbeat.addAtmosphereResource(r).scheduleFixedBroadcast("heartbeat-" + uuid, 60, 60, TimeUnit.SECONDS);
+        if (heartbeat != null) {
+            heartbeat.register(uuid, r, mapperFor(r.getRequest()));
+        }
     }
 
-    protected final static AtmosphereRequest toAtmosphereRequest(AtmosphereRequest r, ProtocolBase request) {
-        AtmosphereRequest.Builder b = new AtmosphereRequest.Builder();
-        Map<String, String> hdrs = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
-        if (request.getHeaders() != null) {
-            for (Header h : request.getHeaders()) {
-               hdrs.put(h.getName(), h.getValue());
-            }
-        }
-
-        Map<String, String[]> queryStrings = new HashMap<String, String[]>();
-        if (request.getQueryString() != null) {
-            for (QueryString h : request.getQueryString()) {
-                String[] s = queryStrings.get(h.getName());
-                if (s != null) {
-                    String[] s1 = new String[s.length];
-                    System.arraycopy(s, 0, s1, 0, s.length);
-                    s1[s.length] = h.getValue();
-                    queryStrings.put(h.getName(), s1);
-                } else {
-                    queryStrings.put(h.getName(), new String[]{h.getValue()});
-                }
+    /**
+     * Write an already encoded SwaggerSocket frame, e.g. a heartbeat, through the {@link AsyncIOWriter} of the
+     * {@link AtmosphereResource}. The frame still goes through the other filters, like the message size tracking,
+     * but is not wrapped into a {@link ResponseMessage}.
+     */
+    static void writeEncoded(AtmosphereResource r, byte[] frame) throws IOException {
+        writeEncoded(r, frame, true);
+    }
+
+    /**
+     * Write an already encoded frame carrying responses, which the {@link OutboundQueue} of the connection may hold
+     * for credit, or drop if it doesn't end a response.
+     */
+    static void writeEncoded(AtmosphereResource r, byte[] frame, boolean last) throws IOException {
+        OutboundQueue queue = (OutboundQueue) r.getRequest().getAttribute(OUTBOUND);
+        if (queue != null) {
+            queue.offer(frame, null, last);
+        } else {
+            writeFrame(r, frame);
+        }
+    }
+
+    /**
+     * Write an already encoded frame which carries no response, like a heartbeat, in order with the frames the
+     * {@link OutboundQueue} of the connection doesn't hold for credit.
+     */
+    static void writeControl(AtmosphereResource r, byte[] frame) throws IOException {
+        OutboundQueue queue = (OutboundQueue) r.getRequest().getAttribute(OUTBOUND);
+        if (queue != null) {
+            queue.offerControl(frame);
+        } else {
+            writeFrame(r, frame);
+        }
+    }
+
+    /**
+     * Write the frame at once, past the {@link OutboundQueue} of the connection.
+     */
+    static void writeFrame(AtmosphereResource r, byte[] frame) throws IOException {
+        encodedWrite.set(Boolean.TRUE);
+        try {
+            synchronized (r) {
+                r.getResponse().write(frame);
+            }
+        } finally {
+            encodedWrite.remove();
+        }
+    }
+
+    /**
+     * Writes the frames of the {@link OutboundQueue} of a WebSocket.
+     */
+    private final static FrameWriter WEBSOCKET_WRITER = new FrameWriter() {
+        @Override
+        public void write(AtmosphereResource r, byte[] frame) throws IOException {
+            writeFrame(r, frame);
+        }
+    };
+
+    /**
+     * Writes the heartbeats of a {@link HeartbeatEngine} which doesn't belong to an interceptor, answering the polls
+     * of long-polling connections directly.
+     */
+    final static FrameWriter CONTROL_WRITER = new FrameWriter() {
+        @Override
+        public void write(AtmosphereResource r, byte[] frame) throws IOException {
+            writeControl(r, frame);
+            if (r.transport() != AtmosphereResource.TRANSPORT.WEBSOCKET) {
+                r.resume();
+            }
+        }
+    };
+
+    /**
+     * Writes the heartbeats of the connections, which the {@link Mailbox} of a long-polling connection delivers to a
+     * poll it isn't answering already.
+     */
+    private final FrameWriter heartbeats = new FrameWriter() {
+        @Override
+        public void write(AtmosphereResource r, byte[] frame) throws IOException {
+            if (r.transport() == AtmosphereResource.TRANSPORT.WEBSOCKET) {
+                writeControl(r, frame);
+            } else {
+                mailbox(r.getRequest()).deliver(frame, null, true);
             }
         }
+    };
 
-        String p = request.getPath().replaceAll("\\s+", "%20").trim();
-        String requestURL = r.getRequestURL() + p;
-        if (r.getRequestURL().toString().endsWith("/") && p.startsWith("/")) {
-            requestURL = r.getRequestURL().toString() + p.substring(1);
+    /**
+     * Writes the messages of a {@link Mailbox} to the polls, past the Atmosphere writers.
+     */
+    private final static FrameWriter POLL_WRITER = new FrameWriter() {
+        @Override
+        public void write(AtmosphereResource r, byte[] frame) throws IOException {
+            OutputStream o = r.getResponse().getResponse().getOutputStream();
+            o.write(frame);
+            o.flush();
+        }
+    };
+
+    private static int intParameter(AtmosphereConfig config, String name, int defaultValue) {
+        String v = config.getInitParameter(name);
+        if (v != null) {
+            try {
+                return Integer.parseInt(v.trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid value {} for {}", v, name);
+            }
         }
+        return defaultValue;
+    }
 
-        String requestURI = r.getRequestURI() + p;
-        if (r.getRequestURI().endsWith("/") && p.startsWith("/")) {
-            requestURI = r.getRequestURI() + p.substring(1);
+    /**
+     * Register the MBeans of the interceptor, named after its servlet.
+     */
+    private List<ObjectName> registerMBeans(AtmosphereConfig config) {
+        List<ObjectName> names = new ArrayList<ObjectName>();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String servlet = ObjectName.quote(config.getServletConfig().getServletName());
+        try {
+            names.add(server.registerMBean(stats,
+                    new ObjectName("io.swagger.swaggersocket:type=Connections,name=" + servlet)).getObjectName());
+            if (metrics instanceof MetricsRegistry) {
+                names.add(server.registerMBean(metrics,
+                        new ObjectName("io.swagger.swaggersocket:type=Metrics,name=" + servlet)).getObjectName());
+            }
+        } catch (JMException e) {
+            logger.warn("Unable to register the MBeans of {}", servlet, e);
         }
+        return names;
+    }
 
-        if (!p.startsWith("/")) {
-            p = "/" + p;
+    private static void unregisterMBeans(List<ObjectName> names) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : names) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                logger.debug("Unable to unregister {}", name, e);
+            }
         }
+    }
 
-        // get the content-type
-        String contentType = request.getDataFormat();
-        if (contentType == null) {
-            contentType = hdrs.get("Content-Type");
+    /**
+     * Answer a request to the stats path, past the Atmosphere writers, with a JSON snapshot of the connections and of
+     * the {@link MetricsRegistry} if the metrics are kept in memory.
+     */
+    private Action writeStats(AtmosphereResource r) {
+        r.getRequest().setAttribute(TrackMessageSizeInterceptor.SKIP_INTERCEPTOR, "true");
+        Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("stats", stats.snapshot());
+        if (metrics instanceof MetricsRegistry) {
+            body.put("metrics", metrics);
         }
-        b.pathInfo(p)
-                .contentType(contentType)
-                .headers(hdrs)
-                .method(request.getMethod())
-                .queryStrings(queryStrings)
-                .requestURI(requestURI)
-                .requestURL(requestURL)
-                .request(r);
-        // add the body only if it is present
-        if (request.getMessageBody() != null) {
-            b.body(request.getMessageBody().toString());
+        try {
+            HttpServletResponse res = (HttpServletResponse) r.getResponse().getResponse();
+            res.setContentType("application/json");
+            res.setHeader("Cache-Control", "no-cache");
+            res.getOutputStream().write(mapper.writeValueAsBytes(body));
+        } catch (IOException e) {
+            logger.warn("Unable to write the stats", e);
         }
+        return Action.CANCELLED;
+    }
 
-        return b.build();
+    protected final static AtmosphereRequest toAtmosphereRequest(AtmosphereRequest r, ProtocolBase request) {
+        return new RequestTranslator(r).translate(request);
     }
 
+    /**
+     * Store a value of the connection of the request. WebSocket connections keep them in their request, the other
+     * transports in the {@link ConnectionRegistry}, by the Atmosphere uuid all their requests share.
+     */
     private final void addContextValue(AtmosphereRequest request, String name, Object value) {
-        if (request.resource().transport().equals(AtmosphereResource.TRANSPORT.WEBSOCKET)) {
+        AtmosphereResource resource = request.resource();
+        if (resource.transport().equals(AtmosphereResource.TRANSPORT.WEBSOCKET)) {
             request.setAttribute(name, value);
         } else {
-            request.getSession().setAttribute(name, value);
+            connections.lookup(resource.uuid(), true).set(name, value);
         }
     }
 
     private final Object getContextValue(AtmosphereRequest request, String name) {
-        if (request.resource().transport().equals(AtmosphereResource.TRANSPORT.WEBSOCKET)) {
+        AtmosphereResource resource = request.resource();
+        if (resource.transport().equals(AtmosphereResource.TRANSPORT.WEBSOCKET)) {
             return request.getAttribute(name);
         } else {
-            return request.getSession().getAttribute(name);
+            ConnectionRegistry.Connection c = connections.lookup(resource.uuid(), false);
+            return c != null ? c.get(name) : null;
+        }
+    }
+
+    /**
+     * Forget the values of the connection of the request, when it is closed or handshakes again.
+     */
+    private final void removeContext(AtmosphereRequest request) {
+        // The heartbeat frame is encoded once per registration, a new handshake registers it in its own encoding.
+        if (heartbeat != null) {
+            heartbeat.unregister((String) getContextValue(request, IDENTITY), null);
+        }
+        AtmosphereResource resource = request.resource();
+        if (resource.transport().equals(AtmosphereResource.TRANSPORT.WEBSOCKET)) {
+            // The responses held for the previous session still go out, in its encoding.
+            ResponseCoalescer coalescer = (ResponseCoalescer) request.getAttribute(COALESCER);
+            if (coalescer != null) {
+                coalescer.flush();
+            }
+            if (request.getAttribute(ENCODING) != null) {
+                request.removeAttribute(TrackMessageSizeInterceptor.SKIP_INTERCEPTOR);
+                resource.forceBinaryWrite(false);
+            }
+            for (String name : CONNECTION_VALUES) {
+                request.removeAttribute(name);
+            }
+        } else {
+            ConnectionRegistry.Connection c = connections.lookup(resource.uuid(), false);
+            if (c != null) {
+                connections.remove(c);
+            }
+        }
+    }
+
+    /**
+     * The {@link Mailbox} of the long-polling connection of the request.
+     */
+    private Mailbox mailbox(AtmosphereRequest request) {
+        ConnectionRegistry.Connection c = connections.lookup(request.resource().uuid(), true);
+        Mailbox mailbox = (Mailbox) c.get(MAILBOX);
+        if (mailbox == null) {
+            String identity = (String) getContextValue(request, IDENTITY);
+            Mailbox m = new Mailbox(POLL_WRITER, failure(request, identity), mailboxMaxBytes,
+                    outboundPolicy != null ? outboundMaxMessages : Integer.MAX_VALUE, outboundPolicy,
+                    closeFrame(request, identity), outboundBlockTimeout, mailboxTtl, TimeUnit.SECONDS);
+            mailbox = (Mailbox) c.putIfAbsent(MAILBOX, m);
+            if (mailbox == null) {
+                mailbox = m;
+            }
+        }
+        return mailbox;
+    }
+
+    /**
+     * The {@link StatusMessage} closing a connection whose outbound budget is exhausted, if the policy closes them.
+     */
+    private byte[] closeFrame(AtmosphereRequest request, String identity) {
+        if (outboundPolicy != OutboundQueue.Policy.CLOSE) {
+            return null;
+        }
+        StatusMessage statusMessage = new StatusMessage.Builder().status(new StatusMessage.Status(503, "Outbound Budget Exceeded"))
+                .identity(identity).build();
+        try {
+            return mapperFor(request).writeValueAsBytes(statusMessage);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Encodes the 503 response ending a response which the outbound budget of its connection made fail.
+     */
+    private FrameWriter.Failure failure(AtmosphereRequest request, final String identity) {
+        final ObjectMapper m = mapperFor(request);
+        return new FrameWriter.Failure() {
+            @Override
+            public byte[] frame(String uuid) throws IOException {
+                Response response = new Response.Builder().status(503, "Outbound Budget Exceeded").uuid(uuid).last(true).build();
+                return m.writeValueAsBytes(new ResponseMessage(identity, response));
+            }
+        };
+    }
+
+    /**
+     * Hand the frame to the {@link OutboundQueue} of the connection, if it has one.
+     *
+     * @return the frame to write now, or null if it has been handed over
+     */
+    private byte[] outbound(AtmosphereResponse response, byte[] frame) throws IOException {
+        OutboundQueue queue = outboundPolicy != null || credit
+                ? (OutboundQueue) getContextValue(response.request(), OUTBOUND) : null;
+        if (queue == null) {
+            return frame;
         }
+        queue.offer(frame, uuid(response), !droppable(response));
+        return null;
+    }
+
+    /**
+     * The uuid of the request the response answers, if any.
+     */
+    private String uuid(AtmosphereResponse response) {
+        Request req = lookupRequest(response.request());
+        return req != null ? req.getUuid() : null;
+    }
+
+    /**
+     * Whether the data written to the response may be dropped to honour the outbound budget, that is whether it
+     * carries nothing but a response which is not final.
+     */
+    private boolean droppable(AtmosphereResponse response) {
+        return !(response instanceof WrappedAtmosphereResponse && ((WrappedAtmosphereResponse) response).isLast())
+                && lookupAggregator(response.request()) == null;
+    }
+
+    /**
+     * The {@link ObjectMapper} of the encoding negotiated by the connection of the request.
+     */
+    private ObjectMapper mapperFor(AtmosphereRequest request) {
+        return Encodings.SMILE.equals(getContextValue(request, ENCODING)) ? smileMapper : mapper;
     }
 
     private final class Interceptor extends AsyncIOInterceptorAdapter {
 
         @Override
         public byte[] transformPayload(AtmosphereResponse response, byte[] responseDraft, byte[] data) throws IOException {
-            Object rm = wrapMessage(response, new String(responseDraft, response.getCharacterEncoding()));
+            if (encodedWrite.get() != null) {
+                return responseDraft;
+            }
+            ObjectMapper m = mapperFor(response.request());
+            AtmosphereRequest request = response.request();
+            RequestTimings timings = lookupTimings(request);
+            ProtocolTracer tracer = ProtocolTracers.get();
+            Object traced = tracer.begin(ProtocolTracer.Operation.RESPONSE);
+            long start = System.nanoTime();
+            if (timings != null) {
+                timings.writing(start);
+            }
+            if (lookupAggregator(request) == null && getContextValue(request, COALESCER) == null
+                    && lookupRequest(request) != null && !startsWith(responseDraft, HEARTBEAT_PREFIX)) {
+                if (heartbeat != null) {
+                    heartbeat.touch((String) getContextValue(request, IDENTITY));
+                }
+                byte[] frame = writeEnvelope(m, response, responseDraft);
+                serialized(timings, System.nanoTime() - start);
+                frame = outbound(response, frame);
+                if (traced != null) {
+                    traced(tracer, traced, response, responseDraft.length);
+                }
+                return frame;
+            }
+
+            Object rm;
+            if (m != mapper) {
+                // Binary encodings carry the body as is.
+                rm = wrapBody(response, responseDraft);
+            } else if (lookupRequest(request) != null && !startsWith(responseDraft, HEARTBEAT_PREFIX)) {
+                // The coalescer or the aggregator hold the response, already encoded.
+                rm = wrapResponse(response, encodeResponse(m, response, responseDraft));
+            } else if (responseDraft.length > 0 && isRawJson(response)) {
+                rm = wrapBody(response, new RawJson(toUTF8(responseDraft, response.getCharacterEncoding())));
+            } else {
+                rm = wrapMessage(response, new String(responseDraft, response.getCharacterEncoding()));
+            }
             if (rm != null) {
-                return mapper.writeValueAsBytes(rm);
+                if (heartbeat != null) {
+                    heartbeat.touch((String) getContextValue(response.request(), IDENTITY));
+                }
+                ResponseCoalescer coalescer = (ResponseCoalescer) getContextValue(response.request(), COALESCER);
+                if (coalescer != null && rm instanceof ResponseMessage) {
+                    coalescer.offer(((ResponseMessage) rm).getResponses(), uuid(response), !droppable(response));
+                    serialized(timings, System.nanoTime() - start);
+                    return null;
+                }
+                byte[] frame = m.writeValueAsBytes(rm);
+                serialized(timings, System.nanoTime() - start);
+                frame = outbound(response, frame);
+                if (traced != null && rm instanceof ResponseMessage) {
+                    traced(tracer, traced, response, responseDraft.length);
+                }
+                return frame;
             } else {
                 return null;
             }
         }
 
+        /**
+         * The frame has been written, which completes the request and its {@link RequestTimings} if it was its last.
+         */
+        @Override
+        public void postPayload(AtmosphereResponse response, byte[] data, int offset, int length) {
+            if (encodedWrite.get() != null || response.request() == null) {
+                return;
+            }
+            DispatchContext context = (DispatchContext) response.request().getAttribute(DISPATCH_CONTEXT);
+            if (context == null) {
+                return;
+            }
+            boolean last = response instanceof WrappedAtmosphereResponse && ((WrappedAtmosphereResponse) response).isLast();
+            if (last && context.flight != null) {
+                stats.completed(context.flight);
+            }
+            RequestTimings timings = context.timings;
+            if (timings == null) {
+                return;
+            }
+            timings.written();
+            if (last && timings.done() && slowRequestThreshold > 0
+                    && timings.total() >= TimeUnit.MILLISECONDS.toNanos(slowRequestThreshold)) {
+                Request req = lookupRequest(response.request());
+                logger.warn("Slow request {}: {}", req.getMethod() + " " + req.getPath(), timings);
+            }
+        }
+
+        private void traced(ProtocolTracer tracer, Object traced, AtmosphereResponse response, long bytes) {
+            Request req = lookupRequest(response.request());
+            tracer.response(traced, false, (String) getContextValue(response.request(), IDENTITY), req != null ? req.getUuid() : null,
+                    bytes, response instanceof WrappedAtmosphereResponse && ((WrappedAtmosphereResponse) response).isLast());
+        }
+
+        private void serialized(RequestTimings timings, long nanos) {
+            instruments.serialized(nanos);
+            if (timings != null) {
+                timings.serialized(nanos);
+            }
+        }
+
         @Override
         public byte[] error(AtmosphereResponse response, int statusCode, String reasonPhrase) {
             Request swaggerSocketRequest = lookupRequest(response.request());
@@ -512,19 +1789,182 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
                             response.getStatusMessage()))
                     .identity(swaggerSocketRequest.getUuid()).build();
             try {
-                return mapper.writeValueAsBytes(statusMessage);
+                return mapperFor(response.request()).writeValueAsBytes(statusMessage);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         }
     }
 
+    /**
+     * Encode the {@link ResponseMessage} of a single response straight from the {@link AtmosphereResponse}, the way
+     * {@link #wrapBody} and the mapper would: the body bytes are copied in without being decoded if they are UTF-8,
+     * and neither the message nor its {@link Response} are built.
+     */
+    private byte[] writeEnvelope(ObjectMapper m, AtmosphereResponse res, byte[] body) throws IOException {
+        EnvelopeBuffer buffer = EnvelopeBuffer.acquire();
+        try {
+            JsonGenerator g = m.getFactory().createGenerator(buffer);
+            g.writeStartObject();
+            g.writeStringField("identity", (String) getContextValue(res.request(), IDENTITY));
+            g.writeArrayFieldStart("responses");
+            writeResponse(g, m, res, body);
+            g.writeEndArray();
+            g.writeEndObject();
+            g.close();
+            return buffer.toByteArray();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Encode the {@link Response} of the {@link AtmosphereResponse} the way {@link #writeEnvelope} does, for the
+     * messages of several responses.
+     */
+    private Response encodeResponse(ObjectMapper m, AtmosphereResponse res, byte[] body) throws IOException {
+        EnvelopeBuffer buffer = EnvelopeBuffer.acquire();
+        try {
+            JsonGenerator g = m.getFactory().createGenerator(buffer);
+            writeResponse(g, m, res, body);
+            g.close();
+            return new EncodedResponse(uuid(res), res instanceof WrappedAtmosphereResponse
+                    && ((WrappedAtmosphereResponse) res).isLast(), res.getStatus(), buffer.toByteArray());
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Write the fields {@link #createResponseBuilder} sets, in the order the mapper writes them.
+     */
+    private void writeResponse(JsonGenerator g, ObjectMapper m, AtmosphereResponse res, byte[] body) throws IOException {
+        Request swaggerSocketRequest = lookupRequest(res.request());
+        g.writeStartObject();
+
+        if (res instanceof WrappedAtmosphereResponse && ((WrappedAtmosphereResponse) res).isCompact()) {
+            // The following chunks of a response only carry what changes.
+            g.writeStringField("uuid", swaggerSocketRequest.getUuid());
+            if (body.length > 0) {
+                g.writeFieldName("messageBody");
+                writeBody(g, m, res, body);
+            }
+            g.writeBooleanField("last", ((WrappedAtmosphereResponse) res).isLast());
+            g.writeEndObject();
+            return;
+        }
+
+        g.writeArrayFieldStart("headers");
+        if (body.length > 0) {
+            writeHeader(g, "Content-Type", res.getContentType());
+        }
+        for (Map.Entry<String, String> hv : res.headers().entrySet()) {
+            if (!"Content-Type".equalsIgnoreCase(hv.getKey())
+                && includedheaders != null && includedheaders.matcher(hv.getKey()).matches()
+                && !(excludedheaders != null && excludedheaders.matcher(hv.getKey()).matches())) {
+                writeHeader(g, hv.getKey(), hv.getValue());
+            }
+        }
+        if (timingHeader) {
+            RequestTimings timings = lookupTimings(res.request());
+            if (timings != null) {
+                writeHeader(g, SERVER_TIMING, timings.serverTiming());
+            }
+        }
+        g.writeEndArray();
+
+        if (swaggerSocketRequest.getPath() != null) {
+            g.writeStringField("path", swaggerSocketRequest.getPath());
+        }
+        g.writeStringField("uuid", swaggerSocketRequest.getUuid() != null ? swaggerSocketRequest.getUuid() : IdGenerators.next());
+        if (body.length > 0) {
+            g.writeFieldName("messageBody");
+            writeBody(g, m, res, body);
+        }
+        g.writeBooleanField("last", res instanceof WrappedAtmosphereResponse && ((WrappedAtmosphereResponse) res).isLast());
+        if (res.getStatusMessage() != null) {
+            g.writeStringField("reasonPhrase", res.getStatusMessage());
+        }
+        g.writeNumberField("statusCode", res.getStatus());
+
+        g.writeEndObject();
+    }
+
+    private void writeBody(JsonGenerator g, ObjectMapper m, AtmosphereResponse res, byte[] body) throws IOException {
+        String charset = res.getCharacterEncoding();
+        if (m != mapper) {
+            // Binary encodings carry the body as is.
+            g.writeBinary(body);
+        } else if (isRawJson(res)) {
+            new RawJson(toUTF8(body, charset)).serialize(g, null);
+        } else if (charset == null || "UTF-8".equalsIgnoreCase(charset)) {
+            g.writeUTF8String(body, 0, body.length);
+        } else {
+            g.writeString(new String(body, charset));
+        }
+    }
+
+    /**
+     * Whether the body written to the response is the whole body, which a chunk of it is not.
+     */
+    private static boolean isWhole(AtmosphereResponse res) {
+        return !(res instanceof WrappedAtmosphereResponse) || ((WrappedAtmosphereResponse) res).isWhole();
+    }
+
+    private static void writeHeader(JsonGenerator g, String name, String value) throws IOException {
+        g.writeStartObject();
+        g.writeStringField("name", name);
+        g.writeStringField("value", value);
+        g.writeEndObject();
+    }
+
+    private static boolean startsWith(byte[] b, byte[] prefix) {
+        if (b.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (b[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether the body of the response is embedded as a JSON value, as its connection negotiated.
+     */
+    private boolean isRawJson(AtmosphereResponse res) {
+        return isJson(res.getContentType()) && isWhole(res) && getContextValue(res.request(), RAW_JSON) != null;
+    }
+
+    private static boolean isJson(String contentType) {
+        return contentType != null && contentType.regionMatches(true, 0, "application/json", 0, 16)
+                && (contentType.length() == 16 || contentType.charAt(16) == ';');
+    }
+
+    private static byte[] toUTF8(byte[] b, String charset) throws IOException {
+        if (charset == null || "UTF-8".equalsIgnoreCase(charset)) {
+            return b;
+        }
+        return new String(b, charset).getBytes("UTF-8");
+    }
+
     protected Request lookupRequest(AtmosphereRequest request) {
-        Request swaggerSocketRequest = ssRequest.get();
-        if (swaggerSocketRequest == null) {
-            swaggerSocketRequest = (Request) request.getAttribute("swaggerSocketRequest");
+        DispatchContext context = (DispatchContext) request.getAttribute(DISPATCH_CONTEXT);
+        if (context != null) {
+            return context.request;
         }
-        return swaggerSocketRequest;
+        return (Request) request.getAttribute(SWAGGER_SOCKET_REQUEST);
+    }
+
+    private ResponseAggregator lookupAggregator(AtmosphereRequest request) {
+        DispatchContext context = (DispatchContext) request.getAttribute(DISPATCH_CONTEXT);
+        return context != null ? context.aggregator : null;
+    }
+
+    private RequestTimings lookupTimings(AtmosphereRequest request) {
+        DispatchContext context = (DispatchContext) request.getAttribute(DISPATCH_CONTEXT);
+        return context != null ? context.timings : null;
     }
 
     protected final Object wrapMessage(AtmosphereResponse res, String message) {
@@ -532,41 +1972,41 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
             String identity = (String) getContextValue(res.request(), IDENTITY);
             return new Heartbeat(String.valueOf(System.nanoTime()), identity);
         } else {
-            Response.Builder builder = createResponseBuilder(res, message);
-            String identity = (String) getContextValue(res.request(), IDENTITY);
+            return wrapBody(res, message);
+        }
+    }
 
-            AtomicInteger expectedResponseCount = (AtomicInteger) getContextValue(res.request(), transactionIdentity.get() + RESPONSE_COUNTER);
-            ResponseMessage m = null;
-            if (expectedResponseCount != null && res.resource().transport() != AtmosphereResource.TRANSPORT.WEBSOCKET) {
-                m = (ResponseMessage) getContextValue(res.request(), transactionIdentity.get() + ResponseMessage.class.getName());
-                if (m != null) {
-                    m.response(builder.build());
-                } else {
-                    m = new ResponseMessage(identity, builder.build());
-                }
+    private Object wrapBody(AtmosphereResponse res, Object message) {
+        return wrapResponse(res, createResponseBuilder(res, message).build());
+    }
 
-                if (expectedResponseCount.decrementAndGet() <= 0) {
-                    return m;
-                } else {
-                    addContextValue(res.request(), transactionIdentity.get() + ResponseMessage.class.getName(), m);
-                    return null;
-                }
-            }
+    /**
+     * The message of the response, or of the responses it completes if it is aggregated.
+     */
+    private Object wrapResponse(AtmosphereResponse res, Response response) {
+        DispatchContext context = (DispatchContext) res.request().getAttribute(DISPATCH_CONTEXT);
+        if (context != null && context.aggregator != null) {
+            return context.aggregator.add(context.index, response);
+        }
+        return new ResponseMessage((String) getContextValue(res.request(), IDENTITY), response);
+    }
 
-            if (m == null) {
-                m = new ResponseMessage(identity, builder.build());
-            }
-            return m;
+    private static boolean hasBody(Object message) {
+        if (message instanceof String) {
+            return ((String) message).length() > 0;
+        } else if (message instanceof byte[]) {
+            return ((byte[]) message).length > 0;
         }
+        return message != null;
     }
 
-    private Builder createResponseBuilder(AtmosphereResponse res, String message) {
+    private Builder createResponseBuilder(AtmosphereResponse res, Object message) {
         Request swaggerSocketRequest = lookupRequest(res.request());
         Response.Builder builder = new Response.Builder();
         builder.status(res.getStatus(), res.getStatusMessage());
 
         // only include some headers and not all headers from the response
-        if (message != null && message.length() > 0) {
+        if (hasBody(message)) {
             builder.body(message).header(new Header("Content-Type", res.getContentType()));
         }
 
@@ -578,6 +2018,12 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
                 builder.header(new Header(hv.getKey(), hv.getValue()));
             }
         }
+        if (timingHeader) {
+            RequestTimings timings = lookupTimings(res.request());
+            if (timings != null) {
+                builder.header(new Header(SERVER_TIMING, timings.serverTiming()));
+            }
+        }
         builder.uuid(swaggerSocketRequest.getUuid()).path(swaggerSocketRequest.getPath());
         if (res instanceof WrappedAtmosphereResponse && ((WrappedAtmosphereResponse)res).isLast()) {
             builder.last(true);
@@ -585,6 +2031,116 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
         return builder;
     }
 
+    /**
+     * The instruments of the {@link SwaggerSocketMetrics}, looked up once.
+     */
+    private final static class Instruments {
+        private final SwaggerSocketMetrics metrics;
+        private final int maxPaths;
+        private final ConcurrentHashMap<String, SwaggerSocketMetrics.Recorder> paths =
+                new ConcurrentHashMap<String, SwaggerSocketMetrics.Recorder>();
+        private final SwaggerSocketMetrics.Counter handshakes;
+        private final SwaggerSocketMetrics.Counter closes;
+        private final SwaggerSocketMetrics.Counter rejected;
+        private final SwaggerSocketMetrics.Counter requests;
+        private final SwaggerSocketMetrics.Counter errors;
+        private final SwaggerSocketMetrics.Counter expired;
+        private final SwaggerSocketMetrics.Counter responses;
+        private final SwaggerSocketMetrics.Recorder inspect;
+        private final SwaggerSocketMetrics.Recorder batchSize;
+        private final SwaggerSocketMetrics.Recorder dispatch;
+        private final SwaggerSocketMetrics.Recorder serialize;
+        private final SwaggerSocketMetrics.Recorder attachWriter;
+        private final SwaggerSocketMetrics.Recorder mailboxDepth;
+
+        private Instruments(SwaggerSocketMetrics metrics, int maxPaths, final BufferPool bufferPool) {
+            this.metrics = metrics;
+            this.maxPaths = maxPaths;
+            if (bufferPool != null) {
+                metrics.gauge(SwaggerSocketMetrics.BUFFER_POOL_HITS, new SwaggerSocketMetrics.Gauge() {
+                    @Override
+                    public long value() {
+                        return bufferPool.getHits();
+                    }
+                });
+                metrics.gauge(SwaggerSocketMetrics.BUFFER_POOL_MISSES, new SwaggerSocketMetrics.Gauge() {
+                    @Override
+                    public long value() {
+                        return bufferPool.getMisses();
+                    }
+                });
+                metrics.gauge(SwaggerSocketMetrics.BUFFER_POOL_POOLED, new SwaggerSocketMetrics.Gauge() {
+                    @Override
+                    public long value() {
+                        return bufferPool.getPooledBytes();
+                    }
+                });
+                metrics.gauge(SwaggerSocketMetrics.BUFFER_POOL_OUTSTANDING, new SwaggerSocketMetrics.Gauge() {
+                    @Override
+                    public long value() {
+                        return bufferPool.getOutstandingBytes();
+                    }
+                });
+            }
+            handshakes = metrics.counter(SwaggerSocketMetrics.HANDSHAKES);
+            closes = metrics.counter(SwaggerSocketMetrics.CLOSES);
+            rejected = metrics.counter(SwaggerSocketMetrics.REJECTED);
+            requests = metrics.counter(SwaggerSocketMetrics.REQUESTS);
+            errors = metrics.counter(SwaggerSocketMetrics.ERRORS);
+            expired = metrics.counter(SwaggerSocketMetrics.EXPIRED);
+            responses = metrics.counter(SwaggerSocketMetrics.RESPONSES);
+            inspect = metrics.recorder(SwaggerSocketMetrics.INSPECT);
+            batchSize = metrics.recorder(SwaggerSocketMetrics.BATCH_SIZE);
+            dispatch = metrics.recorder(SwaggerSocketMetrics.DISPATCH);
+            serialize = metrics.recorder(SwaggerSocketMetrics.SERIALIZE);
+            attachWriter = metrics.recorder(SwaggerSocketMetrics.ATTACH_WRITER);
+            mailboxDepth = metrics.recorder(SwaggerSocketMetrics.MAILBOX_DEPTH);
+        }
+
+        private void dispatched(String path, long nanos) {
+            dispatch.record(nanos);
+            if (path == null) {
+                return;
+            }
+            SwaggerSocketMetrics.Recorder recorder = paths.get(path);
+            if (recorder == null) {
+                // Paths may carry identifiers, don't let them grow the metrics without bound.
+                if (paths.size() >= maxPaths) {
+                    return;
+                }
+                recorder = metrics.recorder(SwaggerSocketMetrics.DISPATCH + (path.startsWith("/") ? path : "/" + path));
+                paths.putIfAbsent(path, recorder);
+            }
+            recorder.record(nanos);
+        }
+
+        private void serialized(long nanos) {
+            serialize.record(nanos);
+            responses.increment();
+        }
+    }
+
+    /**
+     * What the protocol must know about a dispatched {@link Request} while writing its response. It is bound to the
+     * {@link AtmosphereRequest} of the request, so it is found by whichever thread ends up writing the response.
+     */
+    private final static class DispatchContext {
+        private final Request request;
+        private final int index;
+        private final ResponseAggregator aggregator;
+        private final RequestTimings timings;
+        private final SwaggerSocketStats.Flight flight;
+
+        private DispatchContext(Request request, int index, ResponseAggregator aggregator, RequestTimings timings,
+                                SwaggerSocketStats.Flight flight) {
+            this.request = request;
+            this.index = index;
+            this.aggregator = aggregator;
+            this.timings = timings;
+            this.flight = flight;
+        }
+    }
+
     // REVISIT this workaround to provide the two features
     // 1. flush the header data upon close when no write operation occurs so that the body-less response
     //    can be generated in that case.
@@ -595,13 +2151,53 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
         private byte[] buffer;
         private int buffersize;
         private boolean last;
+        // A slice of the body has been written before its end, so the slices that follow aren't whole either.
+        private boolean partial;
+        // A raw JSON body, held until the response is closed.
+        private byte[] json;
+        private int jsonsize;
 
         public WrappedAtmosphereResponse(AtmosphereResponse resp, AtmosphereRequest req) {
             super((HttpServletResponse)resp.getResponse(), resp.getAsyncIOWriter(), req, resp.isDestroyable());
         }
 
         public boolean isLast() {
-            return last;
+            ResponseChunker chunker = chunker();
+            return chunker != null ? chunker.isLast() : last;
+        }
+
+        /**
+         * Whether the body being written is a chunk following the first one of the response.
+         */
+        boolean isCompact() {
+            ResponseChunker chunker = chunker();
+            return chunker != null && chunker.isCompact();
+        }
+
+        /**
+         * Whether the body being written is the whole body of the response, that is both its first and its last write.
+         */
+        boolean isWhole() {
+            ResponseChunker chunker = chunker();
+            return chunker == null ? last && !partial : !chunker.isCompact() && chunker.isLast();
+        }
+
+        /**
+         * A serial dispatch answers the next request of the message, whose body is yet to be written.
+         */
+        @Override
+        public AtmosphereResponse request(AtmosphereRequest request) {
+            last = false;
+            partial = false;
+            return super.request(request);
+        }
+
+        /**
+         * The {@link ResponseChunker} of the request being answered, as the response of a serial dispatch answers
+         * the requests of the message one after the other.
+         */
+        private ResponseChunker chunker() {
+            return (ResponseChunker) request().getAttribute(CHUNKER);
         }
 
         @Override
@@ -619,7 +2215,7 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
                 @Override
                 public void close() throws IOException {
                     last = true;
-                    if (!written && emptyentity) {
+                    if (!written && emptyentity && chunker() == null) {
                         writeUsingBuffer(new byte[0], 0, 0);
                     }
                     closeUsingBuffer();
@@ -627,6 +2223,15 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
 
                 @Override
                 public void flush() throws IOException {
+                    ResponseChunker chunker = chunker();
+                    if (chunker != null && depth == 0) {
+                        depth++;
+                        try {
+                            chunker.flush(delegate);
+                        } finally {
+                            depth--;
+                        }
+                    }
                     delegate.flush();
                 }
 
@@ -645,31 +2250,98 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
                 private void writeUsingBuffer(byte[] b, int off, int len) throws IOException {
                     depth++;
                     try {
-                        if (lazywrite && depth == 1 && !isStatusMessage(b, off, len)) {
+                        ResponseChunker chunker = chunker();
+                        if (chunker != null && depth == 1 && !isStatusMessage(b, off, len)) {
+                            chunker.write(delegate, b, off, len);
+                        } else if (depth == 1 && !isStatusMessage(b, off, len) && holdRawJson(delegate, b, off, len)) {
+                            return;
+                        } else if (lazywrite && depth == 1 && !isStatusMessage(b, off, len)) {
                             if (buffer != null) {
                                 delegate.write(buffer, 0, buffersize);
+                                partial = true;
                             }
                             if (buffer == null || buffer.length < len) {
-                                buffer = new byte[len];
+                                recycle();
+                                buffer = bufferPool != null ? bufferPool.acquire(len) : new byte[len];
                             }
                             System.arraycopy(b, off, buffer, 0, len);
                             buffersize = len;
                         } else {
                             delegate.write(b, off, len);
+                            if (depth == 1 && !isStatusMessage(b, off, len)) {
+                                partial = true;
+                            }
                         }
                     } finally {
                         depth--;
                     }
                 }
 
+                /**
+                 * Hold the write until the response is closed if its body is embedded as raw JSON, as a slice of
+                 * it isn't a JSON value. A body outgrowing the lazywrite buffer size is written as it comes instead,
+                 * as strings.
+                 */
+                private boolean holdRawJson(ServletOutputStream delegate, byte[] b, int off, int len)
+                        throws IOException {
+                    if (len == 0 || partial || !isJson(getContentType()) || getContextValue(request(), RAW_JSON) == null) {
+                        return false;
+                    }
+                    if (jsonsize + len <= lazywriteMaxBuffer) {
+                        if (json == null || json.length < jsonsize + len) {
+                            int size = Math.min(Math.max(jsonsize + len, jsonsize * 2), lazywriteMaxBuffer);
+                            byte[] grown = bufferPool != null ? bufferPool.acquire(size) : new byte[size];
+                            if (json != null) {
+                                System.arraycopy(json, 0, grown, 0, jsonsize);
+                                releaseJson();
+                            }
+                            json = grown;
+                        }
+                        System.arraycopy(b, off, json, jsonsize, len);
+                        jsonsize += len;
+                        return true;
+                    }
+                    try {
+                        if (jsonsize > 0) {
+                            delegate.write(json, 0, jsonsize);
+                        }
+                    } finally {
+                        releaseJson();
+                        jsonsize = 0;
+                    }
+                    partial = true;
+                    return false;
+                }
+
+                private void releaseJson() {
+                    if (json != null && bufferPool != null) {
+                        bufferPool.release(json);
+                    }
+                    json = null;
+                }
+
                 private void closeUsingBuffer() throws IOException {
                     depth++;
                     try {
-                        if (lazywrite && depth == 1) {
-                            if (buffer != null) {
-                                delegate.write(buffer, 0, buffersize);
-                                buffer = null;
-                                buffersize = 0;
+                        ResponseChunker chunker = chunker();
+                        if (chunker != null && depth == 1) {
+                            chunker.close(delegate);
+                            delegate.close();
+                        } else if (json != null && depth == 1) {
+                            try {
+                                delegate.write(json, 0, jsonsize);
+                            } finally {
+                                releaseJson();
+                                jsonsize = 0;
+                            }
+                            delegate.close();
+                        } else if (lazywrite && depth == 1) {
+                            try {
+                                if (buffer != null) {
+                                    delegate.write(buffer, 0, buffersize);
+                                }
+                            } finally {
+                                recycle();
                             }
                             delegate.close();
                         }
@@ -681,6 +2353,14 @@ public class SwaggerSocketProtocolInterceptor extends AtmosphereInterceptorAdapt
                     }
                 }
 
+                private void recycle() {
+                    if (buffer != null && bufferPool != null) {
+                        bufferPool.release(buffer);
+                    }
+                    buffer = null;
+                    buffersize = 0;
+                }
+
                 private boolean isStatusMessage(byte[] b, int off, int len) {
                     return len > 10 && new String(b, off, 10).startsWith("{\"status\"");
                 }
@@ -45,11 +45,14 @@ public class SwaggerSocketServlet extends AtmosphereServlet {
         super(isFilter, autoDetectHandlers);
         framework().addInitParameter(ApplicationConfig.PROPERTY_NATIVE_COMETSUPPORT, "true");
         framework().addInitParameter("com.sun.jersey.api.json.POJOMappingFeature", "true");
-        framework().addInitParameter(ApplicationConfig.PROPERTY_SESSION_SUPPORT, "true");
     }
 
     @Override
     public void init(ServletConfig sc) throws ServletException {
+        // Resources may rely on sessions, so they stay on unless the application turns them off explicitly.
+        if (sc.getInitParameter(ApplicationConfig.PROPERTY_SESSION_SUPPORT) == null) {
+            framework().addInitParameter(ApplicationConfig.PROPERTY_SESSION_SUPPORT, "true");
+        }
         super.init(sc);
         TrackMessageSizeInterceptor t = new TrackMessageSizeInterceptor();
         t.excludedContentType("application/javascript").excludedContentType("text/html").excludedContentType("text/plain").messageDelimiter("<->");
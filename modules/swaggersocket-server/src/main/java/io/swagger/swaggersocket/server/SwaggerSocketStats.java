@@ -0,0 +1,335 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.atmosphere.cpr.AtmosphereResource;
+
+import io.swagger.swaggersocket.protocol.Request;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The live connections of a {@link SwaggerSocketProtocolInterceptor} and the requests they have in flight.
+ * <p/>
+ * Dispatching and completing a request only touches the in-flight table of its identity and an atomic counter. The
+ * connections, the mailboxes of the long-polling ones and their heartbeats are read from the {@link HeartbeatEngine}
+ * and the {@link ConnectionRegistry} when a {@link Snapshot} is taken. Identities are shortened to their first eight
+ * characters, as the identity alone lets a long-polling client resume its connection.
+ */
+public class SwaggerSocketStats implements SwaggerSocketStatsMXBean {
+
+    private final static String MAILBOX = Mailbox.class.getName();
+    private final static int IDENTITY_PREFIX = 8;
+
+    private final HeartbeatEngine heartbeat;
+    private final ConnectionRegistry connections;
+    private final ConcurrentHashMap<String, Flights> flights = new ConcurrentHashMap<String, Flights>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private ScheduledFuture<?> task;
+
+    SwaggerSocketStats(HeartbeatEngine heartbeat, ConnectionRegistry connections) {
+        this.heartbeat = heartbeat;
+        this.connections = connections;
+    }
+
+    /**
+     * Periodically forget the requests of the identities which are gone, as their responses will never be written.
+     */
+    synchronized SwaggerSocketStats start(ScheduledExecutorService timer, long period, TimeUnit unit) {
+        if (task == null) {
+            final long idle = unit.toNanos(period);
+            task = timer.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    prune(idle);
+                }
+            }, period, period, unit);
+        }
+        return this;
+    }
+
+    synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        flights.clear();
+        inFlight.set(0);
+    }
+
+    /**
+     * Record a request of the identity as in flight, until it is {@link #completed(Flight)}.
+     */
+    Flight started(String identity, Request request) {
+        if (identity == null) {
+            return null;
+        }
+        Flights f = flights.get(identity);
+        if (f == null) {
+            Flights nf = new Flights();
+            f = flights.putIfAbsent(identity, nf);
+            if (f == null) {
+                f = nf;
+            }
+        }
+        Flight flight = new Flight(f, request.getMethod() + " " + request.getPath());
+        f.started = flight.started;
+        f.pending.put(flight, Boolean.TRUE);
+        inFlight.incrementAndGet();
+        return flight;
+    }
+
+    /**
+     * The last frame of the response of the request has been written, or it never will be. Only the first call counts.
+     */
+    void completed(Flight flight) {
+        if (flight != null && flight.owner.pending.remove(flight) != null) {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Forget the identities which are no longer live and have not dispatched a request for the given time.
+     */
+    void prune(long idle) {
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<String, Flights>> it = flights.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Flights> e = it.next();
+            Flights f = e.getValue();
+            if (!heartbeat.isLive(e.getKey()) && now - f.started > idle) {
+                it.remove();
+                for (Flight flight : f.pending.keySet()) {
+                    completed(flight);
+                }
+            }
+        }
+    }
+
+    /**
+     * The live connections, the requests they have in flight, their mailboxes and their heartbeats, as of now.
+     */
+    public Snapshot snapshot() {
+        long now = System.nanoTime();
+        Snapshot s = new Snapshot();
+        for (HeartbeatEngine.Entry e : heartbeat.entries()) {
+            AtmosphereResource r = e.resource();
+            if (r == null) {
+                continue;
+            }
+            Connection c = new Connection(shorten(e.identity()), r.transport().name().toLowerCase());
+            Flights f = flights.get(e.identity());
+            if (f != null) {
+                for (Flight flight : f.pending.keySet()) {
+                    c.inFlight++;
+                    if (c.oldest == null || flight.started - c.oldest.started < 0) {
+                        c.oldest = flight;
+                    }
+                }
+            }
+            if (r.transport() != AtmosphereResource.TRANSPORT.WEBSOCKET) {
+                ConnectionRegistry.Connection rc = connections.find(e.identity());
+                Mailbox mailbox = rc != null ? (Mailbox) rc.get(MAILBOX) : null;
+                if (mailbox != null) {
+                    c.mailboxBytes = mailbox.bytes();
+                }
+            }
+            c.heartbeatLagMillis = TimeUnit.NANOSECONDS.toMillis(heartbeat.lag(e, now));
+            c.now = now;
+            s.add(c);
+        }
+
+        // The requests of identities which are not live yet, or any more, are in flight all the same.
+        s.inFlightRequests = inFlight.get();
+        for (Flights f : flights.values()) {
+            for (Flight flight : f.pending.keySet()) {
+                if (s.oldest == null || flight.started - s.oldest.started < 0) {
+                    s.oldest = flight;
+                }
+            }
+        }
+        s.now = now;
+        return s;
+    }
+
+    @Override
+    public Map<String, Integer> getTransports() {
+        return snapshot().getTransports();
+    }
+
+    @Override
+    public int getInFlightRequests() {
+        return inFlight.get();
+    }
+
+    @Override
+    public long getOldestPendingMillis() {
+        return snapshot().getOldestPendingMillis();
+    }
+
+    @Override
+    public String getOldestPending() {
+        return snapshot().getOldestPending();
+    }
+
+    @Override
+    public long getMailboxBytes() {
+        return snapshot().getMailboxBytes();
+    }
+
+    @Override
+    public long getMaxHeartbeatLagMillis() {
+        return snapshot().getMaxHeartbeatLagMillis();
+    }
+
+    @Override
+    public List<Connection> getConnections() {
+        return snapshot().getConnections();
+    }
+
+    private static String shorten(String identity) {
+        return identity.length() > IDENTITY_PREFIX ? identity.substring(0, IDENTITY_PREFIX) : identity;
+    }
+
+    private static long age(Flight flight, long now) {
+        return flight != null ? TimeUnit.NANOSECONDS.toMillis(now - flight.started) : 0;
+    }
+
+    /**
+     * The requests in flight of an identity.
+     */
+    private final static class Flights {
+        private final ConcurrentHashMap<Flight, Boolean> pending = new ConcurrentHashMap<Flight, Boolean>();
+        private volatile long started = System.nanoTime();
+    }
+
+    /**
+     * A request in flight.
+     */
+    final static class Flight {
+        private final Flights owner;
+        private final String request;
+        private final long started = System.nanoTime();
+
+        private Flight(Flights owner, String request) {
+            this.owner = owner;
+            this.request = request;
+        }
+    }
+
+    /**
+     * The state of the connections at the time it was taken.
+     */
+    public final static class Snapshot {
+        private final Map<String, Integer> transports = new TreeMap<String, Integer>();
+        private final List<Connection> connections = new ArrayList<Connection>();
+        private int inFlightRequests;
+        private long mailboxBytes;
+        private long maxHeartbeatLagMillis;
+        private Flight oldest;
+        private long now;
+
+        private void add(Connection c) {
+            Integer n = transports.get(c.transport);
+            transports.put(c.transport, n == null ? 1 : n + 1);
+            connections.add(c);
+            mailboxBytes += c.mailboxBytes;
+            maxHeartbeatLagMillis = Math.max(maxHeartbeatLagMillis, c.heartbeatLagMillis);
+        }
+
+        public Map<String, Integer> getTransports() {
+            return transports;
+        }
+
+        public int getInFlightRequests() {
+            return inFlightRequests;
+        }
+
+        public long getOldestPendingMillis() {
+            return age(oldest, now);
+        }
+
+        public String getOldestPending() {
+            return oldest != null ? oldest.request : null;
+        }
+
+        public long getMailboxBytes() {
+            return mailboxBytes;
+        }
+
+        public long getMaxHeartbeatLagMillis() {
+            return maxHeartbeatLagMillis;
+        }
+
+        public List<Connection> getConnections() {
+            return connections;
+        }
+    }
+
+    /**
+     * A live identity, with the requests it has in flight.
+     */
+    public final static class Connection {
+        private final String identity;
+        private final String transport;
+        private int inFlight;
+        private Flight oldest;
+        private long mailboxBytes;
+        private long heartbeatLagMillis;
+        private long now;
+
+        private Connection(String identity, String transport) {
+            this.identity = identity;
+            this.transport = transport;
+        }
+
+        public String getIdentity() {
+            return identity;
+        }
+
+        public String getTransport() {
+            return transport;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public long getOldestPendingMillis() {
+            return age(oldest, now);
+        }
+
+        public String getOldestPending() {
+            return oldest != null ? oldest.request : null;
+        }
+
+        public long getMailboxBytes() {
+            return mailboxBytes;
+        }
+
+        public long getHeartbeatLagMillis() {
+            return heartbeatLagMillis;
+        }
+    }
+}
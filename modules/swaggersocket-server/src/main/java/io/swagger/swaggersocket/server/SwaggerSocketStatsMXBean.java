@@ -0,0 +1,55 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The JMX view of the live connections of a {@link SwaggerSocketProtocolInterceptor}, registered when its JMX option
+ * is on. Every attribute is read from a new {@link SwaggerSocketStats.Snapshot}.
+ */
+public interface SwaggerSocketStatsMXBean {
+
+    /**
+     * The number of live identities, by transport.
+     */
+    Map<String, Integer> getTransports();
+
+    int getInFlightRequests();
+
+    /**
+     * How long the oldest request in flight has been waiting for its response, in milliseconds.
+     */
+    long getOldestPendingMillis();
+
+    /**
+     * The method and path of the oldest request in flight.
+     */
+    String getOldestPending();
+
+    /**
+     * The number of bytes waiting for a poll in the mailboxes of the long-polling connections.
+     */
+    long getMailboxBytes();
+
+    /**
+     * How long the most overdue heartbeat is overdue, in milliseconds.
+     */
+    long getMaxHeartbeatLagMillis();
+
+    List<SwaggerSocketStats.Connection> getConnections();
+}
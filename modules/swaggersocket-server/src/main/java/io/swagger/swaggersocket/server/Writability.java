@@ -0,0 +1,35 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+/**
+ * Tells whether the connection a request came from can take more outbound data. The {@link Writability} of a
+ * SwaggerSocket request is found under its class name in the request attributes, so a streaming resource can slow
+ * down before the connection's outbound budget is exhausted:
+ * <pre>
+ *     Writability w = (Writability) request.getAttribute(Writability.class.getName());
+ *     if (w == null || w.isWritable()) {
+ *         ...
+ *     }
+ * </pre>
+ */
+public interface Writability {
+
+    /**
+     * @return false if the connection is closing or if the data it has not written yet reaches its budget
+     */
+    boolean isWritable();
+}
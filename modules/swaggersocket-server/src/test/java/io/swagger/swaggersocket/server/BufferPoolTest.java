@@ -0,0 +1,105 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class BufferPoolTest {
+
+    private final BufferPool pool = new BufferPool(4096, 8192);
+
+    @Test
+    public void testArraysComeInPowerOfTwoSizes() {
+        assertEquals(512, pool.acquire(1).length);
+        assertEquals(512, pool.acquire(512).length);
+        assertEquals(1024, pool.acquire(513).length);
+        assertEquals(4096, pool.acquire(4096).length);
+        assertEquals(0, pool.getHits());
+        assertEquals(4, pool.getMisses());
+        assertEquals(512 + 512 + 1024 + 4096, pool.getOutstandingBytes());
+    }
+
+    @Test
+    public void testReleasedArrayIsAcquiredAgain() {
+        byte[] b = pool.acquire(1000);
+        pool.release(b);
+        assertEquals(1024, pool.getPooledBytes());
+        assertEquals(0, pool.getOutstandingBytes());
+
+        assertSame(b, pool.acquire(600));
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(0, pool.getPooledBytes());
+        assertEquals(1024, pool.getOutstandingBytes());
+        assertEquals(0.5, pool.getHitRate(), 0);
+
+        // Another size class doesn't get it.
+        pool.release(b);
+        assertNotSame(b, pool.acquire(100));
+    }
+
+    @Test
+    public void testOversizedArraysAreNotPooled() {
+        assertEquals(4096, pool.getMaxSize());
+        byte[] b = pool.acquire(5000);
+        assertEquals(5000, b.length);
+        assertEquals(1, pool.getMisses());
+        assertEquals(0, pool.getOutstandingBytes());
+
+        pool.release(b);
+        assertEquals(0, pool.getPooledBytes());
+        assertNotSame(b, pool.acquire(5000));
+    }
+
+    @Test
+    public void testForeignArraysAreNotPooled() {
+        pool.release(new byte[100]);
+        pool.release(new byte[768]);
+        pool.release(null);
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testReleasedArraysBeyondTheCapacityAreDropped() {
+        byte[] a = pool.acquire(4096);
+        byte[] b = pool.acquire(4096);
+        byte[] c = pool.acquire(4096);
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        assertEquals(8192, pool.getPooledBytes());
+        assertEquals(0, pool.getOutstandingBytes());
+
+        pool.clear();
+        assertEquals(0, pool.getPooledBytes());
+        pool.acquire(4096);
+        assertEquals(0, pool.getHits());
+    }
+
+    @Test
+    public void testMaxSizeIsRoundedUpToAPowerOfTwo() {
+        assertEquals(8192, new BufferPool(5000, 0).getMaxSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxSizeMustHoldTheSmallestClass() {
+        new BufferPool(100, 0);
+    }
+}
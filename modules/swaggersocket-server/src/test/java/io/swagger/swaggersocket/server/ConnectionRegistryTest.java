@@ -0,0 +1,112 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ConnectionRegistryTest {
+
+    @Test
+    public void testLookupCreatesOnlyWhenAsked() {
+        ConnectionRegistry registry = new ConnectionRegistry(1, TimeUnit.MINUTES);
+        assertNull(registry.lookup("u1", false));
+
+        ConnectionRegistry.Connection c = registry.lookup("u1", true);
+        assertSame(c, registry.lookup("u1", false));
+        assertSame(c, registry.lookup("u1", true));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void testIdentifyBindsAnotherUuid() {
+        ConnectionRegistry registry = new ConnectionRegistry(1, TimeUnit.MINUTES);
+        assertNull(registry.identify("a", "u2"));
+
+        ConnectionRegistry.Connection c = registry.lookup("u1", true);
+        registry.bind(c, "a");
+        assertSame(c, registry.identify("a", "u2"));
+        assertSame(c, registry.lookup("u2", false));
+        assertSame(c, registry.find("a"));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void testRemoveDropsEveryUuidAndTheIdentity() {
+        ConnectionRegistry registry = new ConnectionRegistry(1, TimeUnit.MINUTES);
+        ConnectionRegistry.Connection c = registry.lookup("u1", true);
+        registry.bind(c, "a");
+        registry.identify("a", "u2");
+        registry.identify("a", "u3");
+
+        registry.remove(c);
+        assertNull(registry.lookup("u1", false));
+        assertNull(registry.lookup("u2", false));
+        assertNull(registry.lookup("u3", false));
+        assertNull(registry.find("a"));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testRemoveKeepsAnotherConnectionOfTheIdentity() {
+        ConnectionRegistry registry = new ConnectionRegistry(1, TimeUnit.MINUTES);
+        ConnectionRegistry.Connection c1 = registry.lookup("u1", true);
+        registry.bind(c1, "a");
+        ConnectionRegistry.Connection c2 = registry.lookup("u2", true);
+        registry.bind(c2, "a");
+
+        registry.remove(c1);
+        assertSame(c2, registry.find("a"));
+        assertSame(c2, registry.lookup("u2", false));
+    }
+
+    @Test
+    public void testSweepEvictsIdleConnections() throws Exception {
+        ConnectionRegistry registry = new ConnectionRegistry(50, TimeUnit.MILLISECONDS);
+        ConnectionRegistry.Connection idle = registry.lookup("u1", true);
+        registry.bind(idle, "a");
+        registry.identify("a", "u2");
+        ConnectionRegistry.Connection active = registry.lookup("u3", true);
+        registry.bind(active, "b");
+
+        Thread.sleep(100);
+        // Looking a connection up is activity on it.
+        registry.lookup("u3", false);
+        registry.sweep();
+
+        assertNull(registry.lookup("u1", false));
+        assertNull(registry.lookup("u2", false));
+        assertNull(registry.find("a"));
+        assertSame(active, registry.lookup("u3", false));
+        assertSame(active, registry.find("b"));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void testStopForgetsEveryConnection() {
+        ConnectionRegistry registry = new ConnectionRegistry(1, TimeUnit.MINUTES);
+        registry.bind(registry.lookup("u1", true), "a");
+
+        registry.stop();
+        assertNull(registry.lookup("u1", false));
+        assertNull(registry.find("a"));
+    }
+}
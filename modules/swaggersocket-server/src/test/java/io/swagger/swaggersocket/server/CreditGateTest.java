@@ -0,0 +1,69 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import io.swagger.swaggersocket.protocol.Credit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CreditGateTest {
+
+    @Test
+    public void testResponsesAreCounted() {
+        CreditGate gate = new CreditGate(new Credit(null, 2, 0));
+        assertTrue(gate.admits(false));
+        gate.consume(100000);
+        assertTrue(gate.admits(false));
+        gate.consume(100000);
+        assertFalse(gate.admits(false));
+
+        gate.grant(new Credit(null, 1, 0));
+        assertTrue(gate.admits(false));
+    }
+
+    @Test
+    public void testBytesAreCounted() {
+        CreditGate gate = new CreditGate(new Credit(null, 0, 100));
+        gate.consume(60);
+        assertTrue(gate.admits(false));
+        gate.consume(60);
+        assertFalse(gate.admits(false));
+
+        // The credit went below zero, which the grant makes up for first.
+        gate.grant(new Credit(null, 0, 20));
+        assertFalse(gate.admits(false));
+        gate.grant(new Credit(null, 0, 1));
+        assertTrue(gate.admits(false));
+    }
+
+    @Test
+    public void testLastMessagesAreAlwaysAdmitted() {
+        CreditGate gate = new CreditGate(new Credit(null, 1, 10));
+        gate.consume(10);
+        assertFalse(gate.admits(false));
+        assertTrue(gate.admits(true));
+    }
+
+    @Test
+    public void testNegativeGrantsAreIgnored() {
+        CreditGate gate = new CreditGate(new Credit(null, 1, 0));
+        gate.grant(new Credit(null, -5, -5));
+        gate.consume(10);
+        assertFalse(gate.admits(false));
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.swaggersocket.protocol.Response;
+import io.swagger.swaggersocket.protocol.ResponseMessage;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EncodedResponseTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testEncodingIsCopiedIntoTheMessage() throws Exception {
+        Response built = new Response.Builder().uuid("a").status(200, "OK").body("text").build();
+        Response encoded = new EncodedResponse("b", true, 201,
+                "{\"uuid\":\"b\",\"messageBody\":{\"n\":1.10},\"statusCode\":201}".getBytes(UTF_8));
+        ResponseMessage m = new ResponseMessage();
+        m.setIdentity("identity");
+        m.setResponses(Arrays.asList(built, encoded, built));
+
+        for (String json : Arrays.asList(mapper.writeValueAsString(m), new String(mapper.writeValueAsBytes(m), UTF_8))) {
+            JsonNode responses = mapper.readTree(json).get("responses");
+            assertEquals(3, responses.size());
+            assertEquals("text", responses.get(0).get("messageBody").asText());
+            assertEquals("b", responses.get(1).get("uuid").asText());
+            // The encoding is copied as is, not parsed again.
+            assertTrue(json.contains("{\"uuid\":\"b\",\"messageBody\":{\"n\":1.10},\"statusCode\":201}"));
+            assertEquals("a", responses.get(2).get("uuid").asText());
+        }
+    }
+
+    @Test
+    public void testFieldsAreKeptForTheHolders() {
+        EncodedResponse encoded = new EncodedResponse("b", true, 504, "{}".getBytes(UTF_8));
+        assertEquals("b", encoded.getUuid());
+        assertTrue(encoded.isLast());
+        assertEquals(504, encoded.getStatusCode());
+    }
+}
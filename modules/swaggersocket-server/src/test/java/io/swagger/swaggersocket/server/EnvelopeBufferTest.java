@@ -0,0 +1,90 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class EnvelopeBufferTest {
+
+    @Test
+    public void testReleasedBuffersAreReused() {
+        EnvelopeBuffer b = EnvelopeBuffer.acquire();
+        EnvelopeBuffer other = EnvelopeBuffer.acquire();
+        assertNotSame(b, other);
+        b.write(1);
+        other.release();
+        b.release();
+
+        // The pool may hold the buffers of other tests, and gives back the oldest first.
+        List<EnvelopeBuffer> acquired = new ArrayList<EnvelopeBuffer>();
+        for (int i = EnvelopeBuffer.pooled(); i > 0; i--) {
+            EnvelopeBuffer reused = EnvelopeBuffer.acquire();
+            assertEquals(0, reused.size());
+            acquired.add(reused);
+        }
+        assertTrue(acquired.contains(b));
+        assertTrue(acquired.contains(other));
+        for (EnvelopeBuffer reused : acquired) {
+            reused.release();
+        }
+    }
+
+    @Test
+    public void testBuffersAreSharedAcrossThreads() throws InterruptedException {
+        final EnvelopeBuffer[] released = new EnvelopeBuffer[1];
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                released[0] = EnvelopeBuffer.acquire();
+                released[0].release();
+            }
+        };
+        t.start();
+        t.join();
+
+        List<EnvelopeBuffer> acquired = new ArrayList<EnvelopeBuffer>();
+        for (int i = 0; i <= EnvelopeBuffer.MAX_POOLED; i++) {
+            acquired.add(EnvelopeBuffer.acquire());
+        }
+        assertTrue(acquired.contains(released[0]));
+        for (EnvelopeBuffer b : acquired) {
+            b.release();
+        }
+    }
+
+    @Test
+    public void testPoolIsBounded() {
+        List<EnvelopeBuffer> acquired = new ArrayList<EnvelopeBuffer>();
+        for (int i = 0; i < 2 * EnvelopeBuffer.MAX_POOLED; i++) {
+            acquired.add(EnvelopeBuffer.acquire());
+        }
+        for (EnvelopeBuffer b : acquired) {
+            b.release();
+        }
+        assertEquals(EnvelopeBuffer.MAX_POOLED, EnvelopeBuffer.pooled());
+
+        EnvelopeBuffer b = EnvelopeBuffer.acquire();
+        assertEquals(EnvelopeBuffer.MAX_POOLED - 1, EnvelopeBuffer.pooled());
+        b.release();
+    }
+}
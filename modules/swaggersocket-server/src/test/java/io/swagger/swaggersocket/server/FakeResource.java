@@ -0,0 +1,105 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.atmosphere.cpr.AtmosphereConfig;
+import org.atmosphere.cpr.AtmosphereRequest;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.AtmosphereResourceEventListener;
+import org.atmosphere.cpr.AtmosphereResponse;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link AtmosphereResource} recording what is done to it, for the classes which only need its state. The methods
+ * it doesn't know return null, false or zero.
+ */
+final class FakeResource implements InvocationHandler {
+
+    final String uuid;
+    final AtmosphereResource resource;
+    final AtomicInteger resumed = new AtomicInteger();
+    final AtomicInteger closed = new AtomicInteger();
+    final List<AtmosphereResourceEventListener> listeners = new CopyOnWriteArrayList<AtmosphereResourceEventListener>();
+    volatile AtmosphereResource.TRANSPORT transport = AtmosphereResource.TRANSPORT.WEBSOCKET;
+    volatile boolean suspended = true;
+    volatile boolean cancelled;
+    volatile AtmosphereRequest request;
+    volatile AtmosphereResponse response;
+    volatile AtmosphereConfig config;
+
+    FakeResource(String uuid) {
+        this.uuid = uuid;
+        this.resource = (AtmosphereResource) Proxy.newProxyInstance(AtmosphereResource.class.getClassLoader(),
+                new Class<?>[]{AtmosphereResource.class}, this);
+    }
+
+    FakeResource longPolling() {
+        transport = AtmosphereResource.TRANSPORT.LONG_POLLING;
+        return this;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if ("uuid".equals(name) || "toString".equals(name)) {
+            return uuid;
+        } else if ("transport".equals(name)) {
+            return transport;
+        } else if ("isSuspended".equals(name)) {
+            return suspended;
+        } else if ("isCancelled".equals(name)) {
+            return cancelled;
+        } else if ("getRequest".equals(name)) {
+            return request;
+        } else if ("getResponse".equals(name)) {
+            return response;
+        } else if ("getAtmosphereConfig".equals(name)) {
+            return config;
+        } else if ("resume".equals(name)) {
+            resumed.incrementAndGet();
+            suspended = false;
+            return proxy;
+        } else if ("close".equals(name)) {
+            closed.incrementAndGet();
+            return null;
+        } else if ("addEventListener".equals(name)) {
+            listeners.add((AtmosphereResourceEventListener) args[0]);
+            return proxy;
+        } else if ("hashCode".equals(name)) {
+            return System.identityHashCode(proxy);
+        } else if ("equals".equals(name)) {
+            return proxy == args[0];
+        }
+
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type.isInstance(proxy)) {
+            return proxy;
+        }
+        return null;
+    }
+}
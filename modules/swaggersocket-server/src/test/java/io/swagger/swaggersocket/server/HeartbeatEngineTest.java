@@ -0,0 +1,185 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static io.swagger.swaggersocket.server.RecordingWriter.bytes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HeartbeatEngineTest {
+
+    private final RecordingWriter writer = new RecordingWriter();
+    private final HeartbeatEngine engine = new HeartbeatEngine(null, writer, new ObjectMapper(), 1, TimeUnit.MILLISECONDS,
+            1, false);
+
+    @After
+    public void stop() {
+        engine.stop();
+    }
+
+    @Test
+    public void testEachResourceIsListenedToOnce() {
+        FakeResource r1 = new FakeResource("r1");
+        FakeResource r2 = new FakeResource("r2");
+        engine.register("a", r1.resource);
+        engine.register("a", r1.resource);
+        engine.register("a", r1.resource);
+        assertEquals(1, r1.listeners.size());
+
+        engine.register("a", r2.resource);
+        assertEquals(1, r2.listeners.size());
+        assertEquals(1, engine.size());
+    }
+
+    @Test
+    public void testHeartbeatsAreWrittenOffTheTimerThread() throws Exception {
+        // An interval long enough for the stalled write not to time out.
+        HeartbeatEngine slow = new HeartbeatEngine(null, writer, new ObjectMapper(), 1, TimeUnit.MINUTES, 1, false);
+        try {
+            slow.register("a", new FakeResource("r1").resource);
+            writer.stall();
+
+            // The write stalls, the tick doesn't.
+            slow.tick();
+            writer.awaitStalled();
+            // The previous heartbeat is still pending, so none is added.
+            slow.tick();
+            assertTrue(writer.written().isEmpty());
+            assertTrue(slow.isLive("a"));
+
+            writer.resume();
+            assertTrue(writer.await(1).get(0).contains("\"heartbeat\""));
+            Thread.sleep(100);
+            assertEquals(1, writer.written().size());
+        } finally {
+            slow.stop();
+        }
+    }
+
+    @Test
+    public void testStalledConnectionDoesNotHoldUpTheOthers() throws Exception {
+        final FakeResource stalled = new FakeResource("r1");
+        final CountDownLatch release = new CountDownLatch(1);
+        HeartbeatEngine slow = new HeartbeatEngine(null, new FrameWriter() {
+            @Override
+            public void write(AtmosphereResource r, byte[] frame) throws IOException {
+                if (r == stalled.resource) {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                writer.write(r, frame);
+            }
+        }, new ObjectMapper(), 1, TimeUnit.MINUTES, 1, false);
+        try {
+            slow.register("a", stalled.resource);
+            slow.register("b", new FakeResource("r2").resource);
+
+            slow.tick();
+            assertTrue(writer.await(1).get(0).contains("\"b\""));
+            release.countDown();
+            writer.await(2);
+        } finally {
+            slow.stop();
+        }
+    }
+
+    @Test
+    public void testStalledHeartbeatIsCancelledAfterAnInterval() throws Exception {
+        engine.register("a", new FakeResource("r1").resource);
+        writer.stall();
+
+        engine.tick();
+        writer.awaitStalled();
+        Thread.sleep(10);
+        // The write has been pending for more than the interval.
+        engine.tick();
+        assertFalse(engine.isLive("a"));
+
+        // The cancelled write doesn't complete.
+        writer.resume();
+        Thread.sleep(100);
+        assertTrue(writer.written().isEmpty());
+    }
+
+    @Test
+    public void testLongPollingHeartbeatsAreDeliveredByTheMailbox() throws Exception {
+        final Mailbox mailbox = new Mailbox(writer, writer, 1024, 10, null, bytes("close"), 200, 60000,
+                TimeUnit.MILLISECONDS);
+        HeartbeatEngine polling = new HeartbeatEngine(null, new FrameWriter() {
+            @Override
+            public void write(AtmosphereResource r, byte[] frame) throws IOException {
+                mailbox.deliver(frame, null, true);
+            }
+        }, new ObjectMapper(), 1, TimeUnit.MILLISECONDS, 1, false);
+        try {
+            FakeResource poll = new FakeResource("p1").longPolling();
+            polling.register("a", poll.resource);
+            mailbox.poll(poll.resource);
+            Thread.sleep(10);
+
+            polling.tick();
+            assertTrue(writer.await(1).get(0).contains("\"heartbeat\""));
+            // The mailbox resumes the poll once the heartbeat is written.
+            Thread.sleep(100);
+            assertEquals(1, poll.resumed.get());
+
+            // The poll has been answered, so the next message waits for another one.
+            mailbox.deliver(bytes("a1"), "a", true);
+            assertEquals(1, writer.written().size());
+            assertEquals(1, mailbox.size());
+        } finally {
+            polling.stop();
+        }
+    }
+
+    @Test
+    public void testCancelledResourcesAreUnregistered() {
+        FakeResource r = new FakeResource("r1");
+        engine.register("a", r.resource);
+        assertTrue(engine.isLive("a"));
+
+        r.cancelled = true;
+        engine.tick();
+        assertFalse(engine.isLive("a"));
+        assertTrue(writer.written().isEmpty());
+    }
+
+    @Test
+    public void testOnlyTheRegisteredResourceUnregisters() {
+        FakeResource r1 = new FakeResource("r1");
+        FakeResource r2 = new FakeResource("r2");
+        engine.register("a", r1.resource);
+        engine.register("a", r2.resource);
+
+        engine.unregister("a", r1.resource);
+        assertTrue(engine.isLive("a"));
+        engine.unregister("a", r2.resource);
+        assertFalse(engine.isLive("a"));
+    }
+}
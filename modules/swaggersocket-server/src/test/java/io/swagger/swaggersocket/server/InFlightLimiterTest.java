@@ -0,0 +1,115 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InFlightLimiterTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> ran = new CopyOnWriteArrayList<String>();
+
+    @After
+    public void shutdown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    private Runnable task(final String name, final CountDownLatch done) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                ran.add(name);
+                done.countDown();
+            }
+        };
+    }
+
+    @Test
+    public void testRequestsPastTheLimitAreQueuedWithoutWaiting() throws Exception {
+        InFlightLimiter limiter = new InFlightLimiter(executor, 2, 2);
+        CountDownLatch done = new CountDownLatch(4);
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.submit(task("t" + i, done)));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(2, limiter.running());
+        assertEquals(2, limiter.queued());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(0, limiter.running());
+        assertEquals(0, limiter.queued());
+    }
+
+    @Test
+    public void testQueuedRequestsRunInOrder() throws Exception {
+        InFlightLimiter limiter = new InFlightLimiter(executor, 1, 10);
+        CountDownLatch done = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            limiter.submit(task("t" + i, done));
+        }
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("t0", "t1", "t2", "t3"), ran);
+    }
+
+    @Test
+    public void testRequestsPastTheBacklogAreRefused() {
+        InFlightLimiter limiter = new InFlightLimiter(executor, 1, 1);
+        CountDownLatch done = new CountDownLatch(2);
+        assertTrue(limiter.submit(task("t0", done)));
+        assertTrue(limiter.submit(task("t1", done)));
+        assertFalse(limiter.submit(task("t2", done)));
+    }
+
+    @Test
+    public void testRejectedRequestsRunOnTheCurrentThread() {
+        InFlightLimiter limiter = new InFlightLimiter(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        }, 1, 1);
+        release.countDown();
+        assertTrue(limiter.submit(task("t0", new CountDownLatch(1))));
+        assertEquals(1, ran.size());
+        assertEquals(0, limiter.running());
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.swaggersocket.protocol.Close;
+import io.swagger.swaggersocket.protocol.Credit;
+import io.swagger.swaggersocket.protocol.Encodings;
+import io.swagger.swaggersocket.protocol.Handshake;
+import io.swagger.swaggersocket.protocol.Request;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static io.swagger.swaggersocket.server.RecordingWriter.bytes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InboundMessageReaderTest {
+
+    private final ObjectMapper json = new ObjectMapper();
+    private final ObjectMapper smile = Encodings.binaryMapper(Encodings.SMILE);
+    private final InboundMessageReader reader = new InboundMessageReader(json, smile);
+    private final RecordingHandler handler = new RecordingHandler();
+
+    @Test
+    public void testRequestsAreHandedOverInOrder() throws IOException {
+        assertTrue(read("{\"identity\":\"a\",\"requests\":[" + request("1", "/one") + "," + request("2", "/two") + "]}"));
+        assertEquals(Arrays.asList("identity a", "request 1 /one", "request 2 /two", "end"), handler.events);
+    }
+
+    @Test
+    public void testRequestsBeforeTheIdentityWaitForIt() throws IOException {
+        read("{\"requests\":[" + request("1", "/one") + "],\"identity\":\"a\"}");
+        assertEquals(Arrays.asList("identity a", "request 1 /one", "end"), handler.events);
+    }
+
+    @Test
+    public void testMessageWithoutIdentity() throws IOException {
+        read("{\"requests\":[" + request("1", "/one") + "]}");
+        assertEquals(Arrays.asList("identity null", "request 1 /one", "end"), handler.events);
+    }
+
+    @Test
+    public void testRefusedIdentitySkipsTheRequests() throws IOException {
+        handler.accept = false;
+        read("{\"identity\":\"a\",\"requests\":[" + request("1", "/one") + "]}");
+        assertEquals(Arrays.asList("identity a"), handler.events);
+    }
+
+    @Test
+    public void testUnknownFieldsAreSkipped() throws IOException {
+        read("{\"identity\":\"a\",\"extra\":{\"nested\":[1,2]},\"requests\":[" + request("1", "/one") + "]}");
+        assertEquals(Arrays.asList("identity a", "request 1 /one", "end"), handler.events);
+    }
+
+    @Test
+    public void testControlMessages() throws IOException {
+        read("{\"handshake\":{\"protocolVersion\":\"1.0\",\"encodings\":[\"smile\"]}}");
+        read("{\"close\":{\"reason\":\"bye\",\"identity\":\"a\"}}");
+        read("{\"credit\":{\"identity\":\"a\",\"responses\":3,\"bytes\":1024}}");
+        assertEquals(Arrays.asList("handshake [smile]", "close bye", "credit 3 1024"), handler.events);
+    }
+
+    @Test
+    public void testSmileMessagesAreRecognizedByTheirHeader() throws IOException {
+        byte[] message = smile.writeValueAsBytes(json.readTree("{\"identity\":\"a\",\"requests\":["
+                + request("1", "/one") + "]}"));
+        assertTrue(Encodings.isSmile(message, 0, message.length));
+
+        assertTrue(reader.read(new ByteArrayInputStream(message), handler));
+        assertEquals(Arrays.asList("identity a", "request 1 /one", "end"), handler.events);
+    }
+
+    @Test
+    public void testShortMessagesAreNotTakenForSmile() throws IOException {
+        assertFalse(reader.read(new ByteArrayInputStream(new byte[0]), handler));
+        try {
+            reader.read(new ByteArrayInputStream(bytes(":)")), handler);
+            fail();
+        } catch (IOException e) {
+            // Not JSON either.
+        }
+        assertTrue(handler.events.isEmpty());
+    }
+
+    @Test
+    public void testRequestsAreHandedOverBeforeTheRestOfTheMessageIsRead() throws IOException {
+        StringBuilder body = new StringBuilder();
+        while (body.length() < 64 * 1024) {
+            body.append("0123456789");
+        }
+        final byte[] message = bytes("{\"identity\":\"a\",\"requests\":[" + request("1", "/one") + ",{\"uuid\":\"2\","
+                + "\"path\":\"/two\",\"method\":\"POST\",\"messageBody\":\"" + body + "\"}]}");
+        final CountingInputStream in = new CountingInputStream(new ByteArrayInputStream(message));
+        final long[] readWhenDispatched = new long[1];
+        RecordingHandler handler = new RecordingHandler() {
+            @Override
+            public void onRequest(Request request) throws IOException {
+                if (readWhenDispatched[0] == 0) {
+                    readWhenDispatched[0] = in.count;
+                }
+                super.onRequest(request);
+            }
+        };
+
+        reader.read(in, handler);
+        assertEquals(Arrays.asList("identity a", "request 1 /one", "request 2 /two", "end"), handler.events);
+        assertTrue(readWhenDispatched[0] + " of " + message.length, readWhenDispatched[0] < message.length / 2);
+    }
+
+    @Test
+    public void testTruncatedMessageFailsAfterTheRequestsReadSoFar() {
+        try {
+            read("{\"identity\":\"a\",\"requests\":[" + request("1", "/one") + ",{\"uuid\":\"2\",\"pa");
+            fail();
+        } catch (IOException e) {
+            // The first request was dispatched, the message never ends.
+        }
+        assertEquals(Arrays.asList("identity a", "request 1 /one"), handler.events);
+    }
+
+    @Test
+    public void testGarbageIsRefused() {
+        String[] garbage = {"garbage", "[1,2]", "{}", "{\"requests\":[1]}", "\"text\""};
+        for (String message : garbage) {
+            try {
+                read(message);
+                fail(message);
+            } catch (IOException e) {
+                // Expected.
+            }
+        }
+        assertTrue(handler.events.toString(), handler.events.isEmpty());
+    }
+
+    private boolean read(String message) throws IOException {
+        return reader.read(new ByteArrayInputStream(bytes(message)), handler);
+    }
+
+    private static String request(String uuid, String path) {
+        return "{\"uuid\":\"" + uuid + "\",\"path\":\"" + path + "\",\"method\":\"GET\"}";
+    }
+
+    private static class RecordingHandler implements InboundMessageReader.Handler {
+        final List<String> events = new ArrayList<String>();
+        boolean accept = true;
+
+        @Override
+        public void onHandshake(Handshake handshake) {
+            events.add("handshake " + handshake.getEncodings());
+        }
+
+        @Override
+        public void onClose(Close close) {
+            events.add("close " + close.getReason());
+        }
+
+        @Override
+        public void onCredit(Credit credit) {
+            events.add("credit " + credit.getResponses() + " " + credit.getBytes());
+        }
+
+        @Override
+        public boolean onIdentity(String identity) {
+            events.add("identity " + identity);
+            return accept;
+        }
+
+        @Override
+        public void onRequest(Request request) throws IOException {
+            events.add("request " + request.getUuid() + " " + request.getPath());
+        }
+
+        @Override
+        public void onRequestsEnd() {
+            events.add("end");
+        }
+    }
+
+    /**
+     * Hands the bytes over a few at a time, like a network would, and counts them.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c != -1) {
+                count++;
+            }
+            return c;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, Math.min(len, 512));
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
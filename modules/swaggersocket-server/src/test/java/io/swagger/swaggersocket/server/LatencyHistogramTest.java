@@ -0,0 +1,75 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmptyHistogram() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMedian());
+        assertEquals(0.0, h.getMean(), 0.0);
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            h.record(i);
+        }
+        assertEquals(100, h.getCount());
+        assertEquals(50, h.getMedian());
+        assertEquals(99, h.get99thPercentile());
+        assertEquals(100, h.getMax());
+        assertEquals(50.5, h.getMean(), 0.001);
+    }
+
+    @Test
+    public void testLargeValuesKeepTwoSignificantDigits() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1000; v < 10000000000L; v *= 7) {
+            h.record(v);
+            long p = h.getValueAtPercentile(100);
+            assertTrue(v + " read as " + p, p >= v && p - v <= v / 64);
+        }
+    }
+
+    @Test
+    public void testEveryIndexMapsBackToItsHighestValue() {
+        for (long v = 0; v < 1000000; v += 13) {
+            int index = LatencyHistogram.index(v);
+            assertTrue(LatencyHistogram.highestEquivalent(index) >= v);
+            assertTrue(index == 0 || LatencyHistogram.highestEquivalent(index - 1) < v);
+        }
+    }
+
+    @Test
+    public void testValuesAboveTheHighestAreCountedInItsBucket() {
+        LatencyHistogram h = new LatencyHistogram(1000);
+        h.record(5000);
+        h.record(-1);
+        assertEquals(2, h.getCount());
+        assertEquals(5000, h.getMax());
+        assertEquals(0, h.getValueAtPercentile(50));
+        assertEquals(LatencyHistogram.highestEquivalent(LatencyHistogram.index(1000)), h.getValueAtPercentile(100));
+    }
+}
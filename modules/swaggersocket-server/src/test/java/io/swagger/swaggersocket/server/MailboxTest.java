@@ -0,0 +1,158 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static io.swagger.swaggersocket.server.RecordingWriter.bytes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MailboxTest {
+
+    private final RecordingWriter writer = new RecordingWriter();
+
+    private Mailbox mailbox(int maxMessages, OutboundQueue.Policy policy) {
+        return new Mailbox(writer, writer, 1024, maxMessages, policy, bytes("close"), 200, 60000, TimeUnit.MILLISECONDS);
+    }
+
+    private static FakeResource poll(String uuid) {
+        return new FakeResource(uuid).longPolling();
+    }
+
+    @Test
+    public void testMessageAnswersTheWaitingPoll() throws Exception {
+        Mailbox mailbox = mailbox(10, null);
+        FakeResource poll = poll("p1");
+        mailbox.poll(poll.resource);
+        assertEquals(0, poll.resumed.get());
+
+        mailbox.deliver(bytes("a1"), "a", true);
+        assertEquals(Collections.singletonList("a1"), writer.written());
+        assertEquals(1, poll.resumed.get());
+        assertEquals(0, mailbox.size());
+    }
+
+    @Test
+    public void testMessagesAreKeptForTheNextPolls() throws Exception {
+        Mailbox mailbox = mailbox(10, null);
+        mailbox.deliver(bytes("a1"), "a", true);
+        mailbox.deliver(bytes("b1"), "b", true);
+        assertEquals(2, mailbox.size());
+        assertEquals(4, mailbox.bytes());
+
+        FakeResource poll = poll("p1");
+        mailbox.poll(poll.resource);
+        assertEquals(Collections.singletonList("a1"), writer.written());
+        mailbox.poll(poll("p2").resource);
+        assertEquals(Arrays.asList("a1", "b1"), writer.written());
+        assertEquals(0, mailbox.bytes());
+    }
+
+    @Test
+    public void testPollsWhichAreNoLongerSuspendedAreSkipped() throws Exception {
+        Mailbox mailbox = mailbox(10, null);
+        FakeResource gone = poll("p1");
+        mailbox.poll(gone.resource);
+        gone.suspended = false;
+
+        mailbox.deliver(bytes("a1"), "a", true);
+        assertEquals(0, gone.resumed.get());
+        assertEquals(1, mailbox.size());
+    }
+
+    @Test
+    public void testExpiredMessagesAreDropped() throws Exception {
+        Mailbox mailbox = new Mailbox(writer, writer, 1024, 10, null, null, 200, 50, TimeUnit.MILLISECONDS);
+        mailbox.deliver(bytes("a1"), "a", true);
+        Thread.sleep(100);
+
+        mailbox.poll(poll("p1").resource);
+        assertTrue(writer.written().isEmpty());
+        assertEquals(0, mailbox.size());
+    }
+
+    @Test
+    public void testFullMailboxWithoutPolicyRefusesMessages() throws Exception {
+        Mailbox mailbox = mailbox(1, null);
+        mailbox.deliver(bytes("a1"), "a", true);
+        assertFalse(mailbox.isWritable());
+        try {
+            mailbox.deliver(bytes("b1"), "b", true);
+            fail("The mailbox is full");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testBlockWaitsForAPoll() throws Exception {
+        final Mailbox mailbox = new Mailbox(writer, writer, 1024, 1, OutboundQueue.Policy.BLOCK, null, 5000, 60000,
+                TimeUnit.MILLISECONDS);
+        mailbox.deliver(bytes("a1"), "a", true);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                mailbox.poll(poll("p1").resource);
+            }
+        }).start();
+
+        mailbox.deliver(bytes("b1"), "b", true);
+        assertEquals(Collections.singletonList("a1"), writer.await(1));
+        assertEquals(1, mailbox.size());
+    }
+
+    @Test
+    public void testDropFailsTheOldestResponseInProgress() throws Exception {
+        Mailbox mailbox = mailbox(2, OutboundQueue.Policy.DROP);
+        mailbox.deliver(bytes("a1"), "a", false);
+        mailbox.deliver(bytes("b1"), "b", false);
+        mailbox.deliver(bytes("c1"), "c", false);
+        // The last message of a failed response is dropped as well.
+        mailbox.deliver(bytes("a2"), "a", true);
+        assertEquals(3, mailbox.size());
+
+        for (int i = 0; i < 3; i++) {
+            mailbox.poll(poll("p" + i).resource);
+        }
+        assertEquals(Arrays.asList("b1", "failed a", "c1"), writer.written());
+    }
+
+    @Test
+    public void testCloseKeepsOnlyTheCloseFrame() throws Exception {
+        Mailbox mailbox = mailbox(1, OutboundQueue.Policy.CLOSE);
+        mailbox.deliver(bytes("a1"), "a", false);
+        mailbox.deliver(bytes("a2"), "a", true);
+        assertFalse(mailbox.isWritable());
+        mailbox.deliver(bytes("b1"), "b", true);
+
+        mailbox.poll(poll("p1").resource);
+        mailbox.poll(poll("p2").resource);
+        assertEquals(Collections.singletonList("close"), writer.written());
+    }
+}
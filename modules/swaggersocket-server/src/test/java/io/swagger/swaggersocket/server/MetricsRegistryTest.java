@@ -0,0 +1,91 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void testCounterIsSharedByName() {
+        MetricsRegistry registry = new MetricsRegistry();
+        assertSame(registry.counter(SwaggerSocketMetrics.REQUESTS), registry.counter(SwaggerSocketMetrics.REQUESTS));
+        assertSame(registry.histogram(SwaggerSocketMetrics.DISPATCH), registry.recorder(SwaggerSocketMetrics.DISPATCH));
+    }
+
+    @Test
+    public void testCountersSumTheIncrementsOfEveryThread() throws Exception {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final SwaggerSocketMetrics.Counter counter = registry.counter(SwaggerSocketMetrics.REQUESTS);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        counter.increment();
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        counter.add(5);
+
+        assertEquals(Long.valueOf(8005), registry.getValues().get(SwaggerSocketMetrics.REQUESTS));
+    }
+
+    @Test
+    public void testGaugesAreReadWithTheCounters() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter(SwaggerSocketMetrics.CLOSES).increment();
+        registry.gauge(SwaggerSocketMetrics.CONNECTIONS, new SwaggerSocketMetrics.Gauge() {
+            @Override
+            public long value() {
+                return 42;
+            }
+        });
+
+        Map<String, Long> values = registry.getValues();
+        assertEquals(Long.valueOf(1), values.get(SwaggerSocketMetrics.CLOSES));
+        assertEquals(Long.valueOf(42), values.get(SwaggerSocketMetrics.CONNECTIONS));
+        assertNull(values.get(SwaggerSocketMetrics.HANDSHAKES));
+    }
+
+    @Test
+    public void testHistogramsAreListedByName() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.recorder(SwaggerSocketMetrics.SERIALIZE).record(10);
+        registry.recorder(SwaggerSocketMetrics.DISPATCH + "/echo").record(20);
+
+        Map<String, LatencyHistogram> histograms = registry.getHistograms();
+        assertEquals(2, histograms.size());
+        assertTrue(histograms.containsKey(SwaggerSocketMetrics.DISPATCH + "/echo"));
+        assertEquals(1, histograms.get(SwaggerSocketMetrics.SERIALIZE).getCount());
+    }
+}
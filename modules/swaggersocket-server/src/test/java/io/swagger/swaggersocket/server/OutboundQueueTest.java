@@ -0,0 +1,247 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import io.swagger.swaggersocket.protocol.Credit;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static io.swagger.swaggersocket.server.RecordingWriter.bytes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OutboundQueueTest {
+
+    private final FakeResource resource = new FakeResource("r");
+    private final RecordingWriter writer = new RecordingWriter();
+
+    private OutboundQueue queue(int maxMessages, OutboundQueue.Policy policy) {
+        return new OutboundQueue(resource.resource, writer, writer, bytes("close"), 1024, maxMessages, policy,
+                200, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Offer the frame on another thread, whose write stalls so the following frames are queued.
+     */
+    private Thread stallOn(final OutboundQueue queue, final String frame) throws InterruptedException {
+        writer.stall();
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.offer(bytes(frame), "s", true);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        t.start();
+        writer.awaitStalled();
+        return t;
+    }
+
+    @Test
+    public void testFramesOfAnIdleQueueAreWrittenAtOnce() throws Exception {
+        OutboundQueue queue = queue(2, OutboundQueue.Policy.BLOCK);
+        queue.offer(bytes("a1"), "a", false);
+        queue.offer(bytes("a2"), "a", true);
+        queue.offer(bytes("b1"), "b", true);
+
+        assertEquals(Arrays.asList("a1", "a2", "b1"), writer.written());
+        assertEquals(0, queue.size());
+        assertTrue(queue.isWritable());
+    }
+
+    @Test
+    public void testFramesQueuedBehindAStalledWriteKeepTheirOrder() throws Exception {
+        OutboundQueue queue = queue(10, OutboundQueue.Policy.BLOCK);
+        Thread t = stallOn(queue, "s");
+        queue.offer(bytes("a1"), "a", false);
+        queue.offer(bytes("b1"), "b", true);
+        queue.offer(bytes("a2"), "a", true);
+        assertEquals(3, queue.size());
+
+        writer.resume();
+        t.join();
+        assertEquals(Arrays.asList("s", "a1", "b1", "a2"), writer.written());
+    }
+
+    @Test
+    public void testBlockWaitsForRoom() throws Exception {
+        OutboundQueue queue = new OutboundQueue(resource.resource, writer, writer, null, 1024, 1,
+                OutboundQueue.Policy.BLOCK, 5, TimeUnit.SECONDS);
+        Thread t = stallOn(queue, "s");
+        queue.offer(bytes("a1"), "a", false);
+        assertFalse(queue.isWritable());
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                writer.resume();
+            }
+        }).start();
+        queue.offer(bytes("a2"), "a", true);
+        t.join();
+
+        assertEquals(Arrays.asList("s", "a1", "a2"), writer.written());
+    }
+
+    @Test
+    public void testBlockFailsAfterTheTimeout() throws Exception {
+        OutboundQueue queue = queue(1, OutboundQueue.Policy.BLOCK);
+        Thread t = stallOn(queue, "s");
+        queue.offer(bytes("a1"), "a", false);
+        try {
+            queue.offer(bytes("a2"), "a", true);
+            fail("The queue has no room");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            writer.resume();
+            t.join();
+        }
+    }
+
+    @Test
+    public void testDropFailsTheOldestResponseInProgress() throws Exception {
+        OutboundQueue queue = queue(3, OutboundQueue.Policy.DROP);
+        Thread t = stallOn(queue, "s");
+        queue.offer(bytes("a1"), "a", false);
+        queue.offer(bytes("b1"), "b", false);
+        queue.offer(bytes("c1"), "c", false);
+        queue.offer(bytes("d1"), "d", false);
+        // The following frames of a failed response are dropped, and so is its last one.
+        queue.offer(bytes("a2"), "a", false);
+        queue.offer(bytes("a3"), "a", true);
+        queue.offer(bytes("b2"), "b", true);
+
+        writer.resume();
+        t.join();
+        assertEquals(Arrays.asList("s", "c1", "failed a", "d1", "failed b"), writer.written());
+    }
+
+    @Test
+    public void testDropFailsTheResponseOfTheFrameWhenNothingElseCanGo() throws Exception {
+        OutboundQueue queue = queue(1, OutboundQueue.Policy.DROP);
+        Thread t = stallOn(queue, "s");
+        queue.offer(bytes("a1"), "a", true);
+        queue.offer(bytes("b1"), "b", false);
+        queue.offer(bytes("b2"), "b", true);
+        queue.offer(bytes("c1"), "c", true);
+
+        writer.resume();
+        t.join();
+        assertEquals(Arrays.asList("s", "a1", "failed b", "c1"), writer.written());
+    }
+
+    @Test
+    public void testDropLetsAResponseThroughOnceItsFailureIsOver() throws Exception {
+        OutboundQueue queue = queue(1, OutboundQueue.Policy.DROP);
+        Thread t = stallOn(queue, "s");
+        queue.offer(bytes("a1"), "a", true);
+        queue.offer(bytes("b1"), "b", false);
+        queue.offer(bytes("b2"), "b", true);
+        writer.resume();
+        t.join();
+
+        queue.offer(bytes("b1"), "b", false);
+        assertEquals(Arrays.asList("s", "a1", "failed b", "b1"), writer.written());
+    }
+
+    @Test
+    public void testCloseWritesTheCloseFrameAndClosesTheConnection() throws Exception {
+        OutboundQueue queue = queue(1, OutboundQueue.Policy.CLOSE);
+        Thread t = stallOn(queue, "s");
+        queue.offer(bytes("a1"), "a", false);
+        queue.offer(bytes("a2"), "a", true);
+        assertFalse(queue.isWritable());
+        queue.offer(bytes("b1"), "b", true);
+
+        writer.resume();
+        t.join();
+        assertEquals(Arrays.asList("s", "close"), writer.written());
+        assertEquals(1, resource.closed.get());
+    }
+
+    @Test
+    public void testPacedQueueHoldsResponsesPastTheCredit() throws Exception {
+        OutboundQueue queue = queue(10, OutboundQueue.Policy.DROP).pace(new Credit(null, 1, 0));
+        queue.offer(bytes("a1"), "a", false);
+        queue.offer(bytes("b1"), "b", false);
+        queue.offer(bytes("a2"), "a", true);
+        assertEquals(Arrays.asList("a1"), writer.written());
+        assertEquals(2, queue.size());
+
+        // Control frames pass the held ones.
+        queue.offerControl(bytes("heartbeat"));
+        assertEquals(Arrays.asList("a1", "heartbeat"), writer.written());
+
+        queue.grant(new Credit(null, 1, 0));
+        assertEquals(Arrays.asList("a1", "heartbeat", "b1", "a2"), writer.written());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testHeldFramesCountAgainstTheBudget() throws Exception {
+        OutboundQueue queue = queue(2, OutboundQueue.Policy.DROP).pace(new Credit(null, 1, 0));
+        queue.offer(bytes("a1"), "a", false);
+        queue.offer(bytes("b1"), "b", false);
+        queue.offer(bytes("c1"), "c", false);
+        assertFalse(queue.isWritable());
+
+        queue.offer(bytes("d1"), "d", false);
+        assertEquals(Arrays.asList("a1"), writer.written());
+        queue.grant(new Credit(null, 1, 0));
+        assertEquals(Arrays.asList("a1", "c1", "failed b"), writer.written());
+        // The failure of b took the credit below zero.
+        queue.grant(new Credit(null, 2, 0));
+        assertEquals(Arrays.asList("a1", "c1", "failed b", "d1"), writer.written());
+    }
+
+    @Test
+    public void testGrantsOfAnUnpacedQueueAreIgnored() throws Exception {
+        OutboundQueue queue = queue(10, OutboundQueue.Policy.DROP);
+        queue.grant(new Credit(null, 1, 0));
+        queue.offer(bytes("a1"), "a", false);
+        assertEquals(Arrays.asList("a1"), writer.written());
+    }
+
+    @Test
+    public void testControlFramesOfAFullQueueAreDropped() throws Exception {
+        OutboundQueue queue = queue(1, OutboundQueue.Policy.BLOCK);
+        Thread t = stallOn(queue, "s");
+        queue.offer(bytes("a1"), "a", true);
+
+        // Neither waits for the block timeout nor fails.
+        long start = System.nanoTime();
+        queue.offerControl(bytes("heartbeat"));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+
+        writer.resume();
+        t.join();
+        assertEquals(Arrays.asList("s", "a1"), writer.written());
+    }
+}
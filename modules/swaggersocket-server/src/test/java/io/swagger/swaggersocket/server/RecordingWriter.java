@@ -0,0 +1,102 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.atmosphere.cpr.AtmosphereResource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link FrameWriter} keeping the frames it writes as text. Once stalled, its next write waits until it is resumed,
+ * like the write to a slow client would, so frames pile up behind it.
+ */
+final class RecordingWriter implements FrameWriter, FrameWriter.Failure {
+
+    private final List<String> written = new ArrayList<String>();
+    private volatile CountDownLatch stalled;
+    private final CountDownLatch entered = new CountDownLatch(1);
+
+    RecordingWriter stall() {
+        stalled = new CountDownLatch(1);
+        return this;
+    }
+
+    void resume() {
+        stalled.countDown();
+    }
+
+    /**
+     * Wait for the stalled write to begin.
+     */
+    void awaitStalled() throws InterruptedException {
+        if (!entered.await(5, TimeUnit.SECONDS)) {
+            throw new AssertionError("No write was stalled");
+        }
+    }
+
+    @Override
+    public void write(AtmosphereResource r, byte[] frame) throws IOException {
+        CountDownLatch s = stalled;
+        if (s != null) {
+            entered.countDown();
+            try {
+                s.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+        synchronized (this) {
+            written.add(new String(frame, "UTF-8"));
+            notifyAll();
+        }
+    }
+
+    @Override
+    public byte[] frame(String uuid) throws IOException {
+        return ("failed " + uuid).getBytes("UTF-8");
+    }
+
+    synchronized List<String> written() {
+        return new ArrayList<String>(written);
+    }
+
+    /**
+     * The frames written once there are at least the given number of them.
+     */
+    synchronized List<String> await(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (written.size() < count) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new AssertionError("Only " + written + " written");
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return written();
+    }
+
+    static byte[] bytes(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestTimingsTest {
+
+    private static final String DURATION = "\\d+\\.\\d{3}";
+
+    @Test
+    public void testServerTimingListsThePhasesBeforeTheResponse() throws Exception {
+        RequestTimings timings = new RequestTimings(System.nanoTime());
+        timings.translated();
+        timings.started();
+        Thread.sleep(5);
+        timings.writing(System.nanoTime());
+
+        String header = timings.serverTiming();
+        assertTrue(header, header.matches("parse;dur=" + DURATION + ", translate;dur=" + DURATION + ", queue;dur="
+                + DURATION + ", service;dur=" + DURATION));
+        assertFalse(header, header.endsWith("service;dur=0.000"));
+    }
+
+    @Test
+    public void testPhasesNotReachedAreZero() {
+        RequestTimings timings = new RequestTimings(System.nanoTime());
+        timings.translated();
+
+        String header = timings.serverTiming();
+        assertTrue(header, header.contains("queue;dur=0.000"));
+        assertTrue(header, header.endsWith("service;dur=0.000"));
+    }
+
+    @Test
+    public void testOnlyTheFirstWriteEndsTheService() {
+        long now = System.nanoTime();
+        RequestTimings timings = new RequestTimings(now);
+        timings.translated();
+        timings.started();
+        timings.writing(System.nanoTime());
+        String header = timings.serverTiming();
+
+        timings.writing(now + TimeUnit.SECONDS.toNanos(10));
+        assertTrue(timings.serverTiming(), header.equals(timings.serverTiming()));
+    }
+
+    @Test
+    public void testDurationsHaveThreeDecimals() {
+        RequestTimings timings = new RequestTimings(System.nanoTime() - TimeUnit.MICROSECONDS.toNanos(1005));
+        assertTrue(timings.serverTiming(), timings.serverTiming().startsWith("parse;dur=1.0"));
+    }
+
+    @Test
+    public void testToStringAddsTheWriting() {
+        RequestTimings timings = new RequestTimings(System.nanoTime());
+        timings.translated();
+        timings.started();
+        timings.writing(System.nanoTime());
+        timings.serialized(TimeUnit.MILLISECONDS.toNanos(2));
+        timings.written();
+        timings.serialized(TimeUnit.MILLISECONDS.toNanos(1));
+        timings.written();
+        // Nothing has been encoded since the last write.
+        timings.written();
+        assertTrue(timings.done());
+
+        String s = timings.toString();
+        assertTrue(s, s.matches("parse=" + DURATION + "ms translate=" + DURATION + "ms queue=" + DURATION
+                + "ms service=" + DURATION + "ms serialize=3\\.000ms write=" + DURATION + "ms total=" + DURATION + "ms"));
+    }
+
+    @Test
+    public void testOnlyTheFirstDoneCounts() throws Exception {
+        RequestTimings timings = new RequestTimings(System.nanoTime());
+        assertTrue(timings.done());
+        long total = timings.total();
+
+        Thread.sleep(5);
+        assertFalse(timings.done());
+        assertTrue(total == timings.total());
+    }
+}
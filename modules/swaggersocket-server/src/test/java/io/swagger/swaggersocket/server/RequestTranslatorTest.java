@@ -0,0 +1,138 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import io.swagger.swaggersocket.protocol.Header;
+import io.swagger.swaggersocket.protocol.QueryString;
+import io.swagger.swaggersocket.protocol.Request;
+import org.atmosphere.cpr.AtmosphereRequest;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RequestTranslatorTest {
+
+    private final RequestTranslator translator = new RequestTranslator(new AtmosphereRequest.Builder()
+            .requestURI("/ws/")
+            .requestURL("http://localhost/ws/")
+            .build());
+
+    @Test
+    public void testPathIsAppendedToTheUrlAndUriOfTheConnection() {
+        AtmosphereRequest r = translator.translate(request("/pets/1"));
+        assertEquals("/pets/1", r.getPathInfo());
+        assertEquals("/ws/pets/1", r.getRequestURI());
+        assertEquals("http://localhost/ws/pets/1", r.getRequestURL().toString());
+
+        r = translator.translate(request("pets/2"));
+        assertEquals("/pets/2", r.getPathInfo());
+        assertEquals("/ws/pets/2", r.getRequestURI());
+        assertEquals("http://localhost/ws/pets/2", r.getRequestURL().toString());
+    }
+
+    @Test
+    public void testWhitespaceInThePathIsEncoded() {
+        AtmosphereRequest r = translator.translate(request("/my pets/\t\tfido"));
+        assertEquals("/my%20pets/%20fido", r.getPathInfo());
+        assertEquals("/ws/my%20pets/%20fido", r.getRequestURI());
+    }
+
+    @Test
+    public void testNormalizeMatchesTheRegularExpression() {
+        for (String path : Arrays.asList("", " ", "/", "/pets", "/a b", "/a  b", " /a\tb\n", "/a%20b", "/a%2Fb c",
+                "/%E2%82%AC 1", "/caf\u00e9 au lait", "/a\u00a0b", "\r\n/a\u000bb\f", "/q?x=1 2&y")) {
+            assertEquals("[" + path + "]", path.replaceAll("\\s+", "%20").trim(), RequestTranslator.normalize(path));
+        }
+    }
+
+    @Test
+    public void testUnchangedPathIsReturnedAsIs() {
+        String path = "/pets/1";
+        assertTrue(path == RequestTranslator.normalize(path));
+    }
+
+    @Test
+    public void testHeadersAreCaseInsensitive() {
+        Request request = request("/");
+        request.setHeaders(Arrays.asList(new Header("Accept", "text/plain"), new Header("X-Trace", "1"),
+                new Header("x-trace", "2")));
+        AtmosphereRequest r = translator.translate(request);
+
+        assertEquals("text/plain", r.getHeader("accept"));
+        assertEquals("text/plain", r.getHeader("ACCEPT"));
+        // The last one wins.
+        assertEquals("2", r.getHeader("X-TRACE"));
+        assertNull(r.getHeader("Missing"));
+    }
+
+    @Test
+    public void testContentTypeComesFromTheDataFormatOrTheHeader() {
+        Request request = request("/");
+        request.setDataFormat(null);
+        request.setHeaders(Collections.singletonList(new Header("content-type", "text/xml")));
+        assertEquals("text/xml", translator.translate(request).getContentType());
+
+        request.setDataFormat("application/json");
+        assertEquals("application/json", translator.translate(request).getContentType());
+    }
+
+    @Test
+    public void testQueryStringsAreLookedUpByName() {
+        Request request = request("/");
+        request.setQueryString(Arrays.asList(new QueryString("tag", "a"), new QueryString("limit", "10"),
+                new QueryString("tag", "b")));
+        AtmosphereRequest r = translator.translate(request);
+
+        assertEquals("10", r.getParameter("limit"));
+        assertArrayEquals(new String[]{"a", "b"}, r.getParameterValues("tag"));
+        assertNull(r.getParameter("Limit"));
+
+        Map<String, String[]> parameters = r.getParameterMap();
+        assertEquals(2, parameters.size());
+        assertArrayEquals(new String[]{"a", "b"}, parameters.get("tag"));
+        assertFalse(parameters.containsKey("missing"));
+    }
+
+    @Test
+    public void testCacheIsClearedOnceFull() {
+        for (int i = 0; i < RequestTranslator.MAX_CACHED_PATHS; i++) {
+            translator.translate(request("/pets/" + i));
+        }
+        assertEquals(RequestTranslator.MAX_CACHED_PATHS, translator.cachedPaths());
+        // A cached path doesn't count twice.
+        translator.translate(request("/pets/0"));
+        assertEquals(RequestTranslator.MAX_CACHED_PATHS, translator.cachedPaths());
+
+        AtmosphereRequest r = translator.translate(request("/pets/new"));
+        assertEquals(1, translator.cachedPaths());
+        assertEquals("/ws/pets/new", r.getRequestURI());
+        // Evicted paths are translated again.
+        assertEquals("/ws/pets/0", translator.translate(request("/pets/0")).getRequestURI());
+        assertEquals(2, translator.cachedPaths());
+    }
+
+    private static Request request(String path) {
+        return new Request.Builder().path(path).method("GET").build();
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import io.swagger.swaggersocket.protocol.Request;
+import io.swagger.swaggersocket.protocol.Response;
+import io.swagger.swaggersocket.protocol.ResponseMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ResponseAggregatorTest {
+
+    private ScheduledExecutorService timer;
+
+    @Before
+    public void setUp() {
+        timer = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void testResponsesAreAggregatedInRequestOrder() {
+        ResponseAggregator aggregator = new ResponseAggregator("identity", requests("a", "b", "c"));
+        Response c = response("c", 200);
+        Response a = response("a", 200);
+        Response b = response("b", 200);
+
+        assertNull(aggregator.add(2, c));
+        assertNull(aggregator.add(0, a));
+        ResponseMessage m = aggregator.add(1, b);
+
+        assertNotNull(m);
+        assertEquals("identity", m.getIdentity());
+        assertEquals(Arrays.asList(a, b, c), m.getResponses());
+    }
+
+    @Test
+    public void testRequestsWithoutOrSharingAUuidFillTheirOwnSlot() {
+        ResponseAggregator aggregator = new ResponseAggregator("identity", requests(null, "dup", "dup"));
+        Response first = response(null, 200);
+        Response second = response("dup", 201);
+        Response third = response("dup", 202);
+
+        assertNull(aggregator.add(2, third));
+        assertNull(aggregator.add(1, second));
+        ResponseMessage m = aggregator.add(0, first);
+
+        assertNotNull(m);
+        assertEquals(Arrays.asList(first, second, third), m.getResponses());
+    }
+
+    @Test
+    public void testSecondResponseOfARequestIsWrittenAlone() {
+        ResponseAggregator aggregator = new ResponseAggregator("identity", requests("a", "b"));
+        assertNull(aggregator.add(0, response("a", 200)));
+
+        Response again = response("a", 500);
+        ResponseMessage m = aggregator.add(0, again);
+        assertNotNull(m);
+        assertEquals(Arrays.asList(again), m.getResponses());
+
+        Response unknown = response("x", 200);
+        m = aggregator.add(5, unknown);
+        assertEquals(Arrays.asList(unknown), m.getResponses());
+    }
+
+    @Test
+    public void testTimeoutFlushesGatewayTimeouts() throws InterruptedException {
+        final LinkedBlockingQueue<ResponseMessage> flushed = new LinkedBlockingQueue<ResponseMessage>();
+        ResponseAggregator aggregator = new ResponseAggregator("identity", requests("a", "b"));
+        Response a = response("a", 200);
+        assertNull(aggregator.add(0, a));
+
+        aggregator.expire(timer, 10, TimeUnit.MILLISECONDS, new ResponseAggregator.Sink() {
+            @Override
+            public void flush(ResponseMessage message) {
+                flushed.add(message);
+            }
+        });
+
+        ResponseMessage m = flushed.poll(5, TimeUnit.SECONDS);
+        assertNotNull(m);
+        assertEquals(2, m.getResponses().size());
+        assertSame(a, m.getResponses().get(0));
+        assertEquals(504, m.getResponses().get(1).getStatusCode());
+        assertEquals("b", m.getResponses().get(1).getUuid());
+        assertEquals("/b", m.getResponses().get(1).getPath());
+
+        // The late response goes out on its own.
+        Response b = response("b", 200);
+        assertEquals(Arrays.asList(b), aggregator.add(1, b).getResponses());
+    }
+
+    @Test
+    public void testCompletedMessageCancelsTheTimeout() throws InterruptedException {
+        final LinkedBlockingQueue<ResponseMessage> flushed = new LinkedBlockingQueue<ResponseMessage>();
+        ResponseAggregator aggregator = new ResponseAggregator("identity", requests("a"));
+        aggregator.expire(timer, 50, TimeUnit.MILLISECONDS, new ResponseAggregator.Sink() {
+            @Override
+            public void flush(ResponseMessage message) {
+                flushed.add(message);
+            }
+        });
+
+        assertNotNull(aggregator.add(0, response("a", 200)));
+        assertNull(flushed.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    private static List<Request> requests(String... uuids) {
+        Request[] requests = new Request[uuids.length];
+        for (int i = 0; i < uuids.length; i++) {
+            requests[i] = new Request.Builder().uuid(uuids[i]).path("/" + uuids[i]).method("GET").build();
+        }
+        return Arrays.asList(requests);
+    }
+
+    private static Response response(String uuid, int status) {
+        return new Response.Builder().uuid(uuid).status(status, "OK").build();
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseChunkerTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Chunks chunks = new Chunks();
+
+    @Test
+    public void testTextIsCutBetweenCharacters() throws IOException {
+        // One, two, three and four byte characters, which straddle every chunk boundary.
+        String body = "a\u00e9\u20ac\ud83d\ude00b\u00e9\u20ac\ud83d\ude00\u20ac\u20ac\u00e9\ud83d\ude00cd";
+        byte[] bytes = body.getBytes(UTF_8);
+        ResponseChunker chunker = new ResponseChunker(5, true, null);
+        // A write per byte splits the characters between writes too.
+        for (byte b : bytes) {
+            chunker.write(chunks, new byte[]{b}, 0, 1);
+        }
+        chunker.close(chunks);
+
+        StringBuilder text = new StringBuilder();
+        for (byte[] chunk : chunks.written) {
+            assertTrue(chunk.length <= 5);
+            text.append(decode(chunk));
+        }
+        assertEquals(body, text.toString());
+        assertTrue(chunker.isLast());
+    }
+
+    @Test
+    public void testTextWrittenAtOnceIsCutBetweenCharacters() throws IOException {
+        String body = "\u20ac\u20ac\u20ac\u20ac\u20ac\u20ac\u20ac";
+        ResponseChunker chunker = new ResponseChunker(4, true, null);
+        byte[] bytes = body.getBytes(UTF_8);
+        chunker.write(chunks, bytes, 0, bytes.length);
+        chunker.close(chunks);
+
+        for (byte[] chunk : chunks.written) {
+            assertEquals(0, chunk.length % 3);
+            decode(chunk);
+        }
+        assertArrayEquals(bytes, chunks.all());
+    }
+
+    @Test
+    public void testBinaryIsCutAtTheChunkSize() throws IOException {
+        byte[] bytes = "\u20ac\u20ac\u20ac".getBytes(UTF_8);
+        ResponseChunker chunker = new ResponseChunker(4, false, null);
+        chunker.write(chunks, bytes, 0, bytes.length);
+        chunker.close(chunks);
+
+        assertEquals(Arrays.asList(4, 4, 1), chunks.lengths());
+        assertArrayEquals(bytes, chunks.all());
+    }
+
+    @Test
+    public void testInvalidTextStillMakesProgress() throws IOException {
+        byte[] bytes = new byte[10];
+        Arrays.fill(bytes, (byte) 0x80);
+        ResponseChunker chunker = new ResponseChunker(4, true, null);
+        chunker.write(chunks, bytes, 0, bytes.length);
+        chunker.close(chunks);
+
+        assertEquals(Arrays.asList(4, 4, 2), chunks.lengths());
+    }
+
+    @Test
+    public void testLastChunkIsWrittenOnCloseEvenIfEmpty() throws IOException {
+        ResponseChunker chunker = new ResponseChunker(4, true, null);
+        chunker.write(chunks, "abcd".getBytes(UTF_8), 0, 4);
+        assertFalse(chunker.isCompact());
+        assertFalse(chunker.isLast());
+
+        chunker.close(chunks);
+        assertEquals(Arrays.asList(4, 0), chunks.lengths());
+        assertTrue(chunker.isCompact());
+        assertTrue(chunker.isLast());
+
+        // Closing again writes nothing.
+        chunker.close(chunks);
+        assertEquals(2, chunks.written.size());
+    }
+
+    @Test
+    public void testFlushWritesThePartialChunk() throws IOException {
+        ResponseChunker chunker = new ResponseChunker(8, true, new BufferPool(512, 4096));
+        chunker.write(chunks, "ab".getBytes(UTF_8), 0, 2);
+        chunker.flush(chunks);
+        chunker.write(chunks, "c".getBytes(UTF_8), 0, 1);
+        chunker.close(chunks);
+
+        assertEquals(Arrays.asList(2, 1), chunks.lengths());
+        assertEquals("abc", new String(chunks.all(), UTF_8));
+    }
+
+    private static String decode(byte[] chunk) throws CharacterCodingException {
+        return UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT).decode(ByteBuffer.wrap(chunk)).toString();
+    }
+
+    /**
+     * Records every chunk written.
+     */
+    private static final class Chunks extends OutputStream {
+        private final List<byte[]> written = new ArrayList<byte[]>();
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            written.add(Arrays.copyOfRange(b, off, off + len));
+        }
+
+        private List<Integer> lengths() {
+            List<Integer> lengths = new ArrayList<Integer>();
+            for (byte[] chunk : written) {
+                lengths.add(chunk.length);
+            }
+            return lengths;
+        }
+
+        private byte[] all() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (byte[] chunk : written) {
+                out.write(chunk, 0, chunk.length);
+            }
+            return out.toByteArray();
+        }
+    }
+}
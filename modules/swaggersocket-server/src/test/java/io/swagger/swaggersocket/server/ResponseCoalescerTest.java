@@ -0,0 +1,248 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.swaggersocket.protocol.Response;
+import org.atmosphere.cpr.AtmosphereInterceptorWriter;
+import org.atmosphere.cpr.AtmosphereRequest;
+import org.atmosphere.cpr.AtmosphereResponse;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static io.swagger.swaggersocket.server.RecordingWriter.bytes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseCoalescerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final FakeResource resource = new FakeResource("r");
+    private final RecordingWriter writer = new RecordingWriter();
+
+    @After
+    public void stop() {
+        timer.shutdownNow();
+    }
+
+    private OutboundQueue queue(int maxMessages) {
+        return new OutboundQueue(resource.resource, writer, writer, bytes("close"), 1024, maxMessages,
+                OutboundQueue.Policy.DROP, 200, TimeUnit.MILLISECONDS);
+    }
+
+    private ResponseCoalescer coalescer(OutboundQueue queue, int maxResponses, long maxDelay) {
+        return new ResponseCoalescer(resource.resource, queue, mapper, "id", timer, maxResponses, maxDelay,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testResponseOfAnIdleConnectionIsWrittenAtOnce() throws Exception {
+        ResponseCoalescer coalescer = coalescer(queue(10), 64, 60000);
+        offer(coalescer, "1", true);
+
+        assertEquals(1, writer.written().size());
+        assertEquals(list("1"), uuids(writer.written().get(0)));
+    }
+
+    @Test
+    public void testResponsesOfABusyConnectionAreMergedUntilItIsIdle() throws Exception {
+        ResponseCoalescer coalescer = coalescer(queue(10), 64, 60000);
+        coalescer.hold();
+        coalescer.hold();
+        offer(coalescer, "1", true);
+        offer(coalescer, "2", true);
+        coalescer.release();
+        offer(coalescer, "3", true);
+        assertTrue(writer.written().isEmpty());
+
+        coalescer.release();
+        assertEquals(1, writer.written().size());
+        assertEquals(list("1", "2", "3"), uuids(writer.written().get(0)));
+    }
+
+    @Test
+    public void testHeldResponsesAreWrittenOnceMaxResponsesAreHeld() throws Exception {
+        ResponseCoalescer coalescer = coalescer(queue(10), 2, 60000);
+        coalescer.hold();
+        offer(coalescer, "1", true);
+        assertTrue(writer.written().isEmpty());
+
+        offer(coalescer, "2", true);
+        assertEquals(1, writer.written().size());
+        assertEquals(list("1", "2"), uuids(writer.written().get(0)));
+    }
+
+    @Test
+    public void testHeldResponsesAreWrittenAfterMaxDelay() throws Exception {
+        ResponseCoalescer coalescer = coalescer(queue(10), 64, 10);
+        coalescer.hold();
+        offer(coalescer, "1", true);
+        offer(coalescer, "2", true);
+
+        assertEquals(list("1", "2"), uuids(writer.await(1).get(0)));
+        Thread.sleep(50);
+        assertEquals(1, writer.written().size());
+    }
+
+    @Test
+    public void testPartsOfDifferentResponsesAreNotMergedForTheQueue() throws Exception {
+        ResponseCoalescer coalescer = coalescer(queue(10), 64, 60000);
+        coalescer.hold();
+        offer(coalescer, "1", false);
+        offer(coalescer, "1", false);
+        offer(coalescer, "2", false);
+        offer(coalescer, "1", true);
+        offer(coalescer, "2", true);
+        offer(coalescer, "3", true);
+        coalescer.release();
+
+        List<String> written = writer.written();
+        assertEquals(written.toString(), 3, written.size());
+        assertEquals(list("1", "1"), uuids(written.get(0)));
+        assertEquals(list("2"), uuids(written.get(1)));
+        assertEquals(list("1", "2", "3"), uuids(written.get(2)));
+    }
+
+    @Test
+    public void testWithoutAQueueAllHeldResponsesAreMerged() throws Exception {
+        writeToResponse();
+        ResponseCoalescer coalescer = coalescer(null, 64, 60000);
+        coalescer.hold();
+        offer(coalescer, "1", false);
+        offer(coalescer, "2", false);
+        coalescer.release();
+
+        assertEquals(1, writer.written().size());
+        assertEquals(list("1", "2"), uuids(writer.written().get(0)));
+    }
+
+    @Test
+    public void testDropPolicyFailsTheCoalescedPartOfAResponse() throws Exception {
+        final OutboundQueue queue = queue(1);
+        ResponseCoalescer coalescer = coalescer(queue, 64, 60000);
+        Thread t = stallOn(queue);
+
+        // Both parts are written while the queue is full, the first one fails its response to make room.
+        offer(coalescer, "1", false);
+        offer(coalescer, "2", false);
+        writer.resume();
+        t.join();
+
+        List<String> written = writer.await(3);
+        assertEquals("s", written.get(0));
+        assertEquals("failed 1", written.get(1));
+        assertEquals(list("2"), uuids(written.get(2)));
+    }
+
+    @Test
+    public void testResponsesAreWrittenOutsideTheLock() throws Exception {
+        writeToResponse();
+        final ResponseCoalescer coalescer = coalescer(null, 64, 60000);
+        writer.stall();
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                offer(coalescer, "1", true);
+            }
+        });
+        t.start();
+        writer.awaitStalled();
+
+        // The write stalls, holding responses doesn't.
+        Thread holder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                coalescer.hold();
+                offer(coalescer, "2", true);
+            }
+        });
+        holder.start();
+        holder.join(1000);
+        assertFalse(holder.isAlive());
+
+        writer.resume();
+        t.join();
+        coalescer.release();
+        List<String> written = writer.await(2);
+        assertEquals(list("1"), uuids(written.get(0)));
+        assertEquals(list("2"), uuids(written.get(1)));
+    }
+
+    /**
+     * Record the frames written to the response of the resource, as a connection without a queue writes them there.
+     */
+    private void writeToResponse() {
+        AtmosphereRequest request = new AtmosphereRequest.Builder().build();
+        resource.response = new AtmosphereResponse(new AtmosphereInterceptorWriter() {
+            @Override
+            protected void writeReady(AtmosphereResponse response, byte[] data) throws IOException {
+                writer.write(resource.resource, data);
+            }
+        }, request, false);
+    }
+
+    /**
+     * Offer a frame to the queue on another thread, whose write stalls so the following frames are queued.
+     */
+    private Thread stallOn(final OutboundQueue queue) throws InterruptedException {
+        writer.stall();
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.offer(bytes("s"), "s", true);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        t.start();
+        writer.awaitStalled();
+        return t;
+    }
+
+    private static void offer(ResponseCoalescer coalescer, String uuid, boolean last) {
+        Response response = new Response.Builder().uuid(uuid).status(200, "OK").body("b").last(last).build();
+        coalescer.offer(Collections.singletonList(response), uuid, last);
+    }
+
+    private List<String> uuids(String frame) throws IOException {
+        JsonNode m = mapper.readTree(frame);
+        assertEquals("id", m.get("identity").asText());
+        List<String> uuids = new ArrayList<String>();
+        for (JsonNode response : m.get("responses")) {
+            uuids.add(response.get("uuid").asText());
+        }
+        return uuids;
+    }
+
+    private static List<String> list(String... values) {
+        List<String> l = new ArrayList<String>();
+        Collections.addAll(l, values);
+        return l;
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.swaggersocket.protocol.Request;
+import org.atmosphere.cpr.Action;
+import org.atmosphere.cpr.AtmosphereFramework;
+import org.atmosphere.cpr.AtmosphereInterceptorWriter;
+import org.atmosphere.cpr.AtmosphereRequest;
+import org.atmosphere.cpr.AtmosphereResponse;
+import org.atmosphere.cpr.FrameworkConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the interceptor with the messages of a WebSocket, whose requests are answered by the framework with their
+ * path, and records the frames it writes.
+ */
+public class SwaggerSocketProtocolInterceptorTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<String> dispatched = new CopyOnWriteArrayList<String>();
+    private final List<String> frames = new CopyOnWriteArrayList<String>();
+    private final AtmosphereFramework framework = new AtmosphereFramework() {
+        @Override
+        public Action doCometSupport(AtmosphereRequest req, AtmosphereResponse res) throws IOException {
+            dispatched.add(req.getPathInfo());
+            res.setContentType("text/plain");
+            res.getOutputStream().write(req.getPathInfo().getBytes("UTF-8"));
+            res.getOutputStream().close();
+            return Action.CREATED;
+        }
+    };
+    private final SwaggerSocketProtocolInterceptor interceptor = new SwaggerSocketProtocolInterceptor();
+    private final FakeResource ws = new FakeResource("ws");
+    private String identity;
+
+    @Before
+    public void open() throws IOException {
+        interceptor.configure(framework.getAtmosphereConfig());
+        ws.config = framework.getAtmosphereConfig();
+        ws.request = new AtmosphereRequest.Builder()
+                .pathInfo("/")
+                .requestURI("/ws")
+                .requestURL("http://localhost/ws")
+                .headers(Collections.singletonMap("SwaggerSocket", "1.0"))
+                .build();
+        ws.request.setAttribute(FrameworkConfig.ATMOSPHERE_RESOURCE, ws.resource);
+        ws.response = new AtmosphereResponse(new AtmosphereInterceptorWriter() {
+            @Override
+            protected void writeReady(AtmosphereResponse response, byte[] data) throws IOException {
+                frames.add(new String(data, "UTF-8"));
+            }
+        }, ws.request, false);
+
+        send("{\"handshake\":{\"protocolVersion\":\"1.0\"}}");
+        identity = lastFrame().get("identity").asText();
+        frames.clear();
+    }
+
+    @After
+    public void close() {
+        framework.destroy();
+    }
+
+    @Test
+    public void testRequestsAreDispatchedAndAnswered() throws IOException {
+        assertEquals(Action.TYPE.CANCELLED, send(message(request("1", "/one"), request("2", "/two"))).type());
+        assertEquals(2, dispatched.size());
+        assertEquals("/one", dispatched.get(0));
+        assertEquals("/two", dispatched.get(1));
+        assertTrue(frames.toString(), frames.get(0).contains("\"uuid\":\"1\""));
+        assertTrue(frames.toString(), frames.get(frames.size() - 1).contains("\"uuid\":\"2\""));
+    }
+
+    @Test
+    public void testExpiredRequestIsAnsweredWithoutBeingDispatched() throws IOException {
+        send(message("{\"uuid\":\"1\",\"path\":\"/late\",\"method\":\"GET\",\"headers\":[{\"name\":\""
+                + Request.DEADLINE_HEADER + "\",\"value\":\"0\"}]}", request("2", "/timely")));
+
+        assertEquals(1, dispatched.size());
+        assertEquals("/timely", dispatched.get(0));
+        JsonNode late = response("1");
+        assertNotNull(frames.toString(), late);
+        assertEquals(504, late.get("statusCode").asInt());
+    }
+
+    @Test
+    public void testTruncatedMessageIsLeftToTheFrameworkIfNothingWasDispatched() throws IOException {
+        assertEquals(Action.TYPE.CONTINUE, send("{\"identity\":\"" + identity + "\",\"requests\":[{\"uuid\"").type());
+        assertTrue(dispatched.isEmpty());
+        assertTrue(frames.toString(), frames.isEmpty());
+    }
+
+    @Test
+    public void testTruncatedMessageFailsWithAStatusOnceARequestWasDispatched() throws IOException {
+        String truncated = message(request("1", "/one"), request("2", "/two"));
+        truncated = truncated.substring(0, truncated.lastIndexOf("\"path\""));
+
+        assertEquals(Action.TYPE.CANCELLED, send(truncated).type());
+        assertEquals(1, dispatched.size());
+        JsonNode status = lastFrame();
+        assertFalse(frames.toString(), status.has("responses"));
+        assertEquals(400, status.get("status").get("statusCode").asInt());
+        assertEquals(identity, status.get("identity").asText());
+    }
+
+    @Test
+    public void testHeartbeatIsEncodedLikeTheLatestHandshake() throws Exception {
+        SwaggerSocketProtocolInterceptor beating = new SwaggerSocketProtocolInterceptor().heartbeatInterval(1)
+                .heartbeatSlots(1).heartbeatAdaptive(false);
+        beating.configure(framework.getAtmosphereConfig());
+        send(beating, "{\"handshake\":{\"protocolVersion\":\"1.0\"}}");
+        send(beating, "{\"handshake\":{\"protocolVersion\":\"1.0\",\"encodings\":[\"smile\"]}}");
+        frames.clear();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (frames.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(frames.isEmpty());
+        assertTrue(frames.get(0), frames.get(0).startsWith(":)\n"));
+    }
+
+    @Test
+    public void testBufferPoolIsReportedInTheMetrics() {
+        MetricsRegistry registry = new MetricsRegistry();
+        SwaggerSocketProtocolInterceptor chunking = new SwaggerSocketProtocolInterceptor().chunkSize(1024)
+                .metrics(registry);
+        chunking.configure(framework.getAtmosphereConfig());
+        BufferPool pool = chunking.getBufferPool();
+        pool.release(pool.acquire(1024));
+        pool.acquire(1024);
+
+        Map<String, Long> values = registry.getValues();
+        assertEquals(Long.valueOf(1), values.get(SwaggerSocketMetrics.BUFFER_POOL_HITS));
+        assertEquals(Long.valueOf(1), values.get(SwaggerSocketMetrics.BUFFER_POOL_MISSES));
+        assertEquals(Long.valueOf(0), values.get(SwaggerSocketMetrics.BUFFER_POOL_POOLED));
+        assertEquals(Long.valueOf(1024), values.get(SwaggerSocketMetrics.BUFFER_POOL_OUTSTANDING));
+    }
+
+    private Action send(String message) {
+        return send(interceptor, message);
+    }
+
+    private Action send(SwaggerSocketProtocolInterceptor interceptor, String message) {
+        ws.request.body(message);
+        return interceptor.inspect(ws.resource);
+    }
+
+    private String message(String... requests) {
+        StringBuilder b = new StringBuilder("{\"identity\":\"").append(identity).append("\",\"requests\":[");
+        for (int i = 0; i < requests.length; i++) {
+            b.append(i > 0 ? "," : "").append(requests[i]);
+        }
+        return b.append("]}").toString();
+    }
+
+    private static String request(String uuid, String path) {
+        return "{\"uuid\":\"" + uuid + "\",\"path\":\"" + path + "\",\"method\":\"GET\"}";
+    }
+
+    private JsonNode lastFrame() throws IOException {
+        assertFalse(frames.isEmpty());
+        return mapper.readTree(frames.get(frames.size() - 1));
+    }
+
+    /**
+     * The response of the request with the uuid, among the frames written.
+     */
+    private JsonNode response(String uuid) throws IOException {
+        for (String frame : frames) {
+            JsonNode responses = mapper.readTree(frame).get("responses");
+            if (responses != null) {
+                for (JsonNode response : responses) {
+                    if (uuid.equals(response.get("uuid").asText())) {
+                        return response;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ *  Copyright 2016 SmartBear Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.swagger.swaggersocket.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.swaggersocket.protocol.Request;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static io.swagger.swaggersocket.server.RecordingWriter.bytes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SwaggerSocketStatsTest {
+
+    private final RecordingWriter writer = new RecordingWriter();
+    private final HeartbeatEngine heartbeat = new HeartbeatEngine(null, writer, new ObjectMapper(), 1,
+            TimeUnit.MINUTES, 1, false);
+    private final ConnectionRegistry connections = new ConnectionRegistry(1, TimeUnit.MINUTES);
+    private final SwaggerSocketStats stats = new SwaggerSocketStats(heartbeat, connections);
+
+    @After
+    public void stop() {
+        stats.stop();
+        heartbeat.stop();
+        connections.stop();
+    }
+
+    @Test
+    public void testRequestsAreInFlightUntilCompleted() throws Exception {
+        SwaggerSocketStats.Flight first = stats.started("a", request("GET", "/first"));
+        Thread.sleep(5);
+        SwaggerSocketStats.Flight second = stats.started("a", request("POST", "/second"));
+        assertEquals(2, stats.getInFlightRequests());
+        assertEquals("GET /first", stats.getOldestPending());
+
+        stats.completed(first);
+        stats.completed(first);
+        assertEquals(1, stats.getInFlightRequests());
+        assertEquals("POST /second", stats.getOldestPending());
+
+        stats.completed(second);
+        assertEquals(0, stats.getInFlightRequests());
+        assertNull(stats.getOldestPending());
+    }
+
+    @Test
+    public void testRequestsWithoutIdentityAreNotCounted() {
+        assertNull(stats.started(null, request("GET", "/")));
+        stats.completed(null);
+        assertEquals(0, stats.getInFlightRequests());
+    }
+
+    @Test
+    public void testPruneForgetsTheRequestsOfGoneIdentities() {
+        heartbeat.register("live", new FakeResource("r1").resource);
+        stats.started("live", request("GET", "/live"));
+        SwaggerSocketStats.Flight gone = stats.started("gone", request("GET", "/gone"));
+
+        stats.prune(0);
+        assertEquals(1, stats.getInFlightRequests());
+        assertEquals("GET /live", stats.getOldestPending());
+
+        // The flight was completed when it was forgotten.
+        stats.completed(gone);
+        assertEquals(1, stats.getInFlightRequests());
+    }
+
+    @Test
+    public void testPruneKeepsIdentitiesWhichRecentlyDispatched() {
+        stats.started("a", request("GET", "/"));
+        stats.prune(TimeUnit.MINUTES.toNanos(1));
+        assertEquals(1, stats.getInFlightRequests());
+    }
+
+    @Test
+    public void testSnapshotListsTheLiveConnections() throws Exception {
+        heartbeat.register("0123456789", new FakeResource("r1").resource);
+        heartbeat.register("polling", new FakeResource("r2").longPolling().resource);
+        stats.started("0123456789", request("GET", "/a"));
+        stats.started("0123456789", request("GET", "/b"));
+
+        Mailbox mailbox = new Mailbox(writer, writer, 1024, 10, null, bytes("close"), 200, 60000,
+                TimeUnit.MILLISECONDS);
+        mailbox.deliver(bytes("waiting"), "p", true);
+        ConnectionRegistry.Connection c = connections.lookup("r2", true);
+        connections.bind(c, "polling");
+        c.set(Mailbox.class.getName(), mailbox);
+
+        SwaggerSocketStats.Snapshot s = stats.snapshot();
+        assertEquals(2, s.getConnections().size());
+        assertEquals(Integer.valueOf(1), s.getTransports().get("websocket"));
+        assertEquals(Integer.valueOf(1), s.getTransports().get("long_polling"));
+        assertEquals(2, s.getInFlightRequests());
+        assertEquals("GET /a", s.getOldestPending());
+        assertEquals(bytes("waiting").length, s.getMailboxBytes());
+
+        for (SwaggerSocketStats.Connection sc : s.getConnections()) {
+            if ("websocket".equals(sc.getTransport())) {
+                assertEquals("01234567", sc.getIdentity());
+                assertEquals(2, sc.getInFlight());
+                assertEquals(0, sc.getMailboxBytes());
+            } else {
+                assertEquals("polling", sc.getIdentity());
+                assertEquals(0, sc.getInFlight());
+                assertNull(sc.getOldestPending());
+                assertEquals(bytes("waiting").length, sc.getMailboxBytes());
+            }
+        }
+    }
+
+    private static Request request(String method, String path) {
+        return new Request.Builder().method(method).path(path).build();
+    }
+}
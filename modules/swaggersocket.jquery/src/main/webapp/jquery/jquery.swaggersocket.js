@@ -60,7 +60,7 @@ jQuery.swaggersocket = function() {
          * @private
          */
         _Handshake : function() {
-            var _protocolVersion = "1.0", _protocolName = "SwaggerSocket", _dataFormat = "application/json", _method = "POST", _uuid = 0, _path = "/", _headers = null, _queryString = null, _self = {
+            var _protocolVersion = "1.0", _protocolName = "SwaggerSocket", _dataFormat = "application/json", _method = "POST", _uuid = 0, _path = "/", _headers = null, _queryString = null, _credit = null, _self = {
                 protocolVersion : function(protocolVersion) {
                     _protocolVersion = protocolVersion;
                     return this;
@@ -119,6 +119,14 @@ jQuery.swaggersocket = function() {
                     return this;
                 },
 
+                /**
+                 * The initial credit, as { responses : n, bytes : n }, a zero count leaving that dimension unbounded.
+                 */
+                credit : function(credit) {
+                    _credit = credit;
+                    return this;
+                },
+
                 toJSON : function() {
                     var s = "{ \"handshake\" : { \"protocolVersion\" : \""
                         + _protocolVersion
@@ -138,6 +146,10 @@ jQuery.swaggersocket = function() {
                         s += ",\"queryString\" : " + jQuery.stringifyJSON(_queryString);
                     }
 
+                    if (_credit != null) {
+                        s += ",\"credit\" : " + jQuery.stringifyJSON(_credit);
+                    }
+
                     s += "}}";
                     return s;
                 }
@@ -270,6 +282,58 @@ jQuery.swaggersocket = function() {
             return _self;
         },
 
+        /**
+         * Grants the server more credit for the responses it sends.
+         */
+        CreditMessage : function() {
+            var _identity, _responses = 0, _bytes = 0, _self = {
+
+                identity : function(identity) {
+                    _identity = identity;
+                    return this;
+                },
+
+                responses : function(responses) {
+                    _responses = responses;
+                    return this;
+                },
+
+                bytes : function(bytes) {
+                    _bytes = bytes;
+                    return this;
+                },
+
+                toJSON : function() {
+                    return "{ \"credit\" : { \"identity\" : \"" + _identity
+                        + "\",\"responses\" : " + _responses
+                        + ",\"bytes\" : " + _bytes + " }}";
+                }
+            };
+            return _self;
+        },
+
+        /**
+         * The length of the string encoded in UTF-8, which is what the server counts.
+         * @private
+         */
+        _utf8Length : function(s) {
+            var length = 0;
+            for (var i = 0; i < s.length; i++) {
+                var c = s.charCodeAt(i);
+                if (c < 0x80) {
+                    length++;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (c >= 0xD800 && c <= 0xDBFF) {
+                    length += 4;
+                    i++;
+                } else {
+                    length += 3;
+                }
+            }
+            return length;
+        },
+
         CloseMessage : function() {
             var _reason, _identity, _self = {
 
@@ -409,6 +473,41 @@ jQuery.swaggersocket = function() {
              */
             var _requestsMap = new HashMap();
 
+            /**
+             * The credit window accepted by the server, and what was consumed since the last grant.
+             * @private
+             */
+            var _credit = null, _consumedResponses = 0, _consumedBytes = 0;
+
+            /**
+             * Count a handled response message, and grant the credit consumed since the last grant once it reaches
+             * half of the window.
+             * @param message
+             * @private
+             */
+            var _consumed = function(message) {
+                if (_credit == null) {
+                    return;
+                }
+
+                _consumedResponses++;
+                _consumedBytes += jQuery.swaggersocket._utf8Length(message);
+                if ((_credit.responses > 0 && _consumedResponses * 2 >= _credit.responses)
+                    || (_credit.bytes > 0 && _consumedBytes * 2 >= _credit.bytes)) {
+                    var c = new jQuery.swaggersocket.CreditMessage().identity(_identity).responses(_consumedResponses).bytes(_consumedBytes);
+                    _consumedResponses = 0;
+                    _consumedBytes = 0;
+                    _socket.push(jQuery.atmosphere.request = {
+                        logLevel : 'debug',
+                        transport : 'long-polling',
+                        headers : { "SwaggerSocket": "1.0"},
+                        method : "POST",
+                        fallbackTransport : 'long-polling',
+                        data: c.toJSON()
+                    });
+                }
+            };
+
             /**
              * Global callback. Used for logging.
              * @param response
@@ -511,6 +610,11 @@ jQuery.swaggersocket = function() {
                         options = jQuery.extend(options, jQuery.swaggersocket.Options);
                     }
 
+                    // Pace the responses by the credit granted as they are handled, e.g. { responses : 16, bytes : 65536 }
+                    if (options.credit) {
+                        _handshake.credit(options.credit);
+                    }
+
                     var _incompleteMessage = "";
                     _socket = jQuery.atmosphere.subscribe(request.getPath(), _loggingCallback, jQuery.atmosphere.request = {
                         logLevel : jQuery.swaggersocket._logLevel,
@@ -552,6 +656,9 @@ jQuery.swaggersocket = function() {
                                         r.statusCode(messageData.status.statusCode).reasonPhrase(messageData.status.reasonPhrase);
                                         if (r.getStatusCode() == 200) {
                                             _identity = messageData.identity;
+                                            _credit = messageData.credit ? messageData.credit : null;
+                                            _consumedResponses = 0;
+                                            _consumedBytes = 0;
                                             if (typeof(listener.onOpen) != 'undefined') {
                                                 listener.onOpen(r);
                                             }
@@ -583,6 +690,7 @@ jQuery.swaggersocket = function() {
                                             r = new jQuery.swaggersocket.Response();
                                         });
                                         _pushResponse(_responses, response.state, listener)
+                                        _consumed(data.replace(/^\d+<->/, ''));
                                     }
                                 } else if (response.state == 're-opening') {
                                     response.request.method = 'GET';
@@ -72,7 +72,7 @@ var swaggersocket = function() {
          * @private
          */
         _Handshake : function() {
-            var _protocolVersion = "1.0", _protocolName = "SwaggerSocket", _dataFormat = "application/json", _method = "POST", _uuid = 0, _path = "/", _headers = null, _queryString = null, _self = {
+            var _protocolVersion = "1.0", _protocolName = "SwaggerSocket", _dataFormat = "application/json", _method = "POST", _uuid = 0, _path = "/", _headers = null, _queryString = null, _credit = null, _self = {
                 protocolVersion : function(protocolVersion) {
                     _protocolVersion = protocolVersion;
                     return this;
@@ -131,6 +131,14 @@ var swaggersocket = function() {
                     return this;
                 },
 
+                /**
+                 * The initial credit, as { responses : n, bytes : n }, a zero count leaving that dimension unbounded.
+                 */
+                credit : function(credit) {
+                    _credit = credit;
+                    return this;
+                },
+
                 toJSON : function() {
                     var s = "{ \"handshake\" : { \"protocolVersion\" : \""
                         + _protocolVersion
@@ -150,6 +158,10 @@ var swaggersocket = function() {
                         s += ",\"queryString\" : " + atmosphere.util.stringifyJSON(_queryString);
                     }
 
+                    if (_credit != null) {
+                        s += ",\"credit\" : " + atmosphere.util.stringifyJSON(_credit);
+                    }
+
                     s += "}}";
                     return s;
                 }
@@ -282,6 +294,58 @@ var swaggersocket = function() {
             return _self;
         },
 
+        /**
+         * Grants the server more credit for the responses it sends.
+         */
+        CreditMessage : function() {
+            var _identity, _responses = 0, _bytes = 0, _self = {
+
+                identity : function(identity) {
+                    _identity = identity;
+                    return this;
+                },
+
+                responses : function(responses) {
+                    _responses = responses;
+                    return this;
+                },
+
+                bytes : function(bytes) {
+                    _bytes = bytes;
+                    return this;
+                },
+
+                toJSON : function() {
+                    return "{ \"credit\" : { \"identity\" : \"" + _identity
+                        + "\",\"responses\" : " + _responses
+                        + ",\"bytes\" : " + _bytes + " }}";
+                }
+            };
+            return _self;
+        },
+
+        /**
+         * The length of the string encoded in UTF-8, which is what the server counts.
+         * @private
+         */
+        _utf8Length : function(s) {
+            var length = 0;
+            for (var i = 0; i < s.length; i++) {
+                var c = s.charCodeAt(i);
+                if (c < 0x80) {
+                    length++;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (c >= 0xD800 && c <= 0xDBFF) {
+                    length += 4;
+                    i++;
+                } else {
+                    length += 3;
+                }
+            }
+            return length;
+        },
+
         CloseMessage : function() {
             var _reason, _identity, _self = {
 
@@ -417,6 +481,41 @@ var swaggersocket = function() {
              */
             var _requestsMap = new HashMap();
 
+            /**
+             * The credit window accepted by the server, and what was consumed since the last grant.
+             * @private
+             */
+            var _credit = null, _consumedResponses = 0, _consumedBytes = 0;
+
+            /**
+             * Count a handled response message, and grant the credit consumed since the last grant once it reaches
+             * half of the window.
+             * @param message
+             * @private
+             */
+            var _consumed = function(message) {
+                if (_credit == null) {
+                    return;
+                }
+
+                _consumedResponses++;
+                _consumedBytes += swaggersocket._utf8Length(message);
+                if ((_credit.responses > 0 && _consumedResponses * 2 >= _credit.responses)
+                    || (_credit.bytes > 0 && _consumedBytes * 2 >= _credit.bytes)) {
+                    var c = new swaggersocket.CreditMessage().identity(swaggersocket._identity).responses(_consumedResponses).bytes(_consumedBytes);
+                    _consumedResponses = 0;
+                    _consumedBytes = 0;
+                    _socket.push(atmosphere.request = {
+                        logLevel : 'debug',
+                        transport : 'long-polling',
+                        headers : { "SwaggerSocket": "1.0"},
+                        method : "POST",
+                        fallbackTransport : 'long-polling',
+                        data: c.toJSON()
+                    });
+                }
+            };
+
             /**
              * Global callback. Used for logging.
              * @param response
@@ -519,6 +618,11 @@ var swaggersocket = function() {
                         options = atmosphere.util.extend(options, swaggersocket.Options);
                     }
 
+                    // Pace the responses by the credit granted as they are handled, e.g. { responses : 16, bytes : 65536 }
+                    if (options.credit) {
+                        _handshake.credit(options.credit);
+                    }
+
                     var _incompleteMessage = "";
                     _socket = atmosphere.subscribe(request.getPath(), _loggingCallback, atmosphere.request = {
                         logLevel : swaggersocket._logLevel,
@@ -560,6 +664,9 @@ var swaggersocket = function() {
                                         r.statusCode(messageData.status.statusCode).reasonPhrase(messageData.status.reasonPhrase);
                                         if (r.getStatusCode() == 200) {
                                             swaggersocket._identity = messageData.identity;
+                                            _credit = messageData.credit ? messageData.credit : null;
+                                            _consumedResponses = 0;
+                                            _consumedBytes = 0;
                                             if (typeof(listener.onOpen) != 'undefined') {
                                                 listener.onOpen(r);
                                             }
@@ -591,6 +698,7 @@ var swaggersocket = function() {
                                             r = new swaggersocket.Response();
                                         });
                                         _pushResponse(_responses, response.state, listener)
+                                        _consumed(data.replace(/^\d+<->/, ''));
                                     }
                                 } else if (response.state == 're-opening') {
                                     response.request.method = 'GET';